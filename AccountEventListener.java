@@ -0,0 +1,29 @@
+// Receives every state change of a registered account. Callbacks run on the thread making the
+// change while it holds that account's balance lock, so they see changes to one account in order
+// and must not block for long or touch other accounts' locks; waiting belongs in afterChanges.
+interface AccountEventListener {
+    default void onAccountCreated(BankAccount account) {
+    }
+
+    default void onTransaction(BankAccount account, TransactionType type, long amount, long balanceAfter,
+                               long timestampNanos, String description) {
+    }
+
+    default void onCredentialsChanged(BankAccount account) {
+    }
+
+    // Events published between these two calls on one thread belong together (e.g. both legs of a
+    // transfer) and should be treated as a unit. Groups may nest; only the outermost end counts.
+    default void onAtomicBegin() {
+    }
+
+    default void onAtomicEnd() {
+    }
+
+    // Called on the thread that published events once it holds no account lock for them any more
+    // (and no atomic group is open), so it may block, e.g. until the events are durable. Throws
+    // UncheckedIOException if they could not be saved: the change is then visible in memory but may
+    // be lost on restart, so callers report it and stop making changes.
+    default void afterChanges() {
+    }
+}
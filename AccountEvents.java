@@ -0,0 +1,67 @@
+// Static fan-out of account events to the registered listeners (journal, replication, metrics...).
+final class AccountEvents {
+    private static final AccountEventListener[] NONE = new AccountEventListener[0];
+    private static volatile AccountEventListener[] listeners = NONE;
+
+    private AccountEvents() {
+    }
+
+    public static synchronized void addListener(AccountEventListener listener) {
+        AccountEventListener[] current = listeners;
+        AccountEventListener[] updated = new AccountEventListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    public static synchronized void removeListener(AccountEventListener listener) {
+        AccountEventListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                AccountEventListener[] updated = new AccountEventListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    static void accountCreated(BankAccount account) {
+        for (AccountEventListener listener : listeners) {
+            listener.onAccountCreated(account);
+        }
+    }
+
+    static void transactionRecorded(BankAccount account, TransactionType type, long amount, long balanceAfter,
+                                    long timestampNanos, String description) {
+        for (AccountEventListener listener : listeners) {
+            listener.onTransaction(account, type, amount, balanceAfter, timestampNanos, description);
+        }
+    }
+
+    static void beginAtomic() {
+        for (AccountEventListener listener : listeners) {
+            listener.onAtomicBegin();
+        }
+    }
+
+    static void endAtomic() {
+        for (AccountEventListener listener : listeners) {
+            listener.onAtomicEnd();
+        }
+    }
+
+    static void credentialsChanged(BankAccount account) {
+        for (AccountEventListener listener : listeners) {
+            listener.onCredentialsChanged(account);
+        }
+    }
+
+    // Called by whoever published events after releasing the account locks, see AccountEventListener
+    static void afterChanges() {
+        for (AccountEventListener listener : listeners) {
+            listener.afterChanges();
+        }
+    }
+}
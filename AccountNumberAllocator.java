@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Hands out 8-digit account numbers without random retries. Number i is built from the counter
+// value i: a Feistel permutation over the 9,000,000 seven-digit payloads (3000 x 3000 halves, so
+// no cycle walking is needed) makes consecutive accounts look unrelated, and a Luhn check digit is
+// appended so a mistyped number can be caught before lookup. Because the permutation is a bijection, two counter
+// values never give the same number; the registry is still asked to reserve each one, which only
+// fails for numbers issued before this allocator existed.
+//
+// The counter is handed out in blocks of BLOCK to a fixed set of stripes chosen by thread id, so
+// concurrent creators rarely touch the same lock, and the shared counter is read once per block.
+// With persistence on, the counter's high-water mark is leased LEASE values ahead into
+// allocator.lease in the data directory; after a restart numbering resumes from the lease, so at
+// most LEASE numbers are skipped per restart.
+//
+// Configured with system properties:
+//   bank.accounts.seed  permutation key (default fixed); changing it for an existing data
+//                       directory keeps numbers unique but makes reserve() collisions more likely
+final class AccountNumberAllocator {
+    static final long CAPACITY = 9_000_000L; // payloads 1,000,000..9,999,999
+    private static final int SIDE = 3000; // CAPACITY = SIDE * SIDE
+    private static final long FIRST_PAYLOAD = 1_000_000L;
+    private static final int ROUNDS = 4;
+    private static final int BLOCK = 64;
+    private static final long LEASE = 1 << 14;
+
+    private static final AccountNumberAllocator GLOBAL = new AccountNumberAllocator(AccountRegistry.global(),
+            Long.getLong("bank.accounts.seed", 0x6a09e667f3bcc908L));
+
+    private final AccountRegistry registry;
+    private final long[] keys = new long[ROUNDS];
+    private final Stripe[] stripes;
+    private long next; // first counter value not yet given to a stripe; guarded by this
+    private long leased = Long.MAX_VALUE; // counter values below this are covered by the lease file
+    private Path leaseFile;
+
+    // A block of counter values owned by one stripe; guarded by the stripe
+    private static final class Stripe {
+        long next;
+        long end;
+    }
+
+    AccountNumberAllocator(AccountRegistry registry, long seed) {
+        this.registry = registry;
+        long s = seed;
+        for (int i = 0; i < ROUNDS; i++) {
+            s += 0x9e3779b97f4a7c15L;
+            keys[i] = mix(s);
+        }
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1) << 1;
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public static AccountNumberAllocator global() {
+        return GLOBAL;
+    }
+
+    // Reserves and returns an unused account number
+    public long allocate() {
+        while (true) {
+            long number = numberAt(nextIndex());
+            if (registry.reserve(number)) return number;
+        }
+    }
+
+    // Resumes numbering from the lease file (if any) and keeps it ahead of the counter from now on
+    public void useLeaseFile(Path file) throws IOException {
+        synchronized (this) {
+            if (Files.exists(file)) {
+                ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+                if (buf.remaining() == Long.BYTES) next = Math.max(next, buf.getLong());
+            }
+            leaseFile = file;
+            leased = next;
+        }
+        // outside the allocator lock: nextIndex() takes a stripe lock, then the allocator lock
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.next = stripe.end; // blocks handed out before the lease are not covered by it
+            }
+        }
+    }
+
+    // The account number for counter value index (0 <= index < CAPACITY)
+    long numberAt(long index) {
+        long payload = FIRST_PAYLOAD + permute(index);
+        return payload * 10 + checkDigit(payload);
+    }
+
+    // Luhn check digit for the payload's digits
+    static int checkDigit(long payload) {
+        int sum = 0;
+        boolean doubled = true; // the digit next to the check digit is doubled
+        for (int p = (int) payload; p > 0; p /= 10) {
+            int d = p % 10;
+            if (doubled) {
+                d *= 2;
+                if (d > 9) d -= 9;
+            }
+            sum += d;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    private long nextIndex() {
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+        synchronized (stripe) {
+            if (stripe.next == stripe.end) {
+                stripe.next = takeBlock();
+                stripe.end = stripe.next + BLOCK;
+            }
+            return stripe.next++;
+        }
+    }
+
+    private synchronized long takeBlock() {
+        if (next + BLOCK > CAPACITY) throw new IllegalStateException("Account numbers exhausted");
+        if (leaseFile != null && next + BLOCK > leased) {
+            long until = Math.min(CAPACITY, next + LEASE);
+            try {
+                writeLease(until);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not extend account number lease", ex);
+            }
+            leased = until;
+        }
+        long start = next;
+        next += BLOCK;
+        return start;
+    }
+
+    private void writeLease(long until) throws IOException {
+        Path tmp = leaseFile.resolveSibling(leaseFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(Long.BYTES).putLong(until);
+            buf.flip();
+            while (buf.hasRemaining()) out.write(buf);
+            out.force(true);
+        }
+        Files.move(tmp, leaseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Balanced Feistel network on (index / SIDE, index % SIDE) with addition mod SIDE
+    private long permute(long index) {
+        int i = (int) index;
+        int left = i / SIDE;
+        int right = i - left * SIDE;
+        for (int r = 0; r < ROUNDS; r++) {
+            int nextRight = left + round(right, r);
+            if (nextRight >= SIDE) nextRight -= SIDE;
+            left = right;
+            right = nextRight;
+        }
+        return (long) left * SIDE + right;
+    }
+
+    // Round function: a hash of the half and the round key, mapped to 0..SIDE-1 by multiply-shift
+    private int round(int half, int r) {
+        return (int) (((mix(half ^ keys[r]) >>> 32) * SIDE) >>> 32);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
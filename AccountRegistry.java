@@ -0,0 +1,165 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Account lookup by account number using an open-addressing hash table keyed on primitive long.
+// Numbers are first reserved (so AccountNumberAllocator never hands out a taken number)
+// and later bound to the account object once it is fully set up.
+//
+// Writers serialize on the registry; find() takes no lock. The table is replaced, never resized in
+// place, and published through a volatile field, and slots are written with volatile stores (the
+// account before its key), so a reader that sees a key also sees the fully set up account.
+class AccountRegistry {
+    private static final AccountRegistry GLOBAL = new AccountRegistry();
+    private static final long EMPTY = 0L; // account numbers are 8 digits, so 0 never occurs
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private volatile Table table;
+    private int reserved; // numbers handed out (registered or not)
+    private int registered; // numbers bound to an account
+
+    public AccountRegistry() {
+        this(16);
+    }
+
+    public AccountRegistry(int expectedAccounts) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedAccounts / LOAD_FACTOR)) - 1) << 1;
+        table = new Table(capacity);
+    }
+
+    public static AccountRegistry global() {
+        return GLOBAL;
+    }
+
+    private static final class Table {
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<BankAccount> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+
+        // Returns the slot holding the key, or the empty slot where it would be inserted.
+        int slotOf(long key) {
+            int slot = mix(key) & mask;
+            long k;
+            while ((k = keys.get(slot)) != EMPTY && k != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    // Claims a number for a new account. Returns false if it is already taken.
+    public synchronized boolean reserve(long accountNumber) {
+        if (accountNumber == EMPTY) throw new IllegalArgumentException("Invalid account number: 0");
+        int slot = table.slotOf(accountNumber);
+        if (table.keys.get(slot) == accountNumber) return false;
+        insertAt(slot, accountNumber, null);
+        return true;
+    }
+
+    // Binds an account to its (previously reserved) number and announces it to event listeners.
+    public void register(BankAccount account) {
+        synchronized (this) {
+            long number = account.getAccountNumber();
+            Table t = table;
+            int slot = t.slotOf(number);
+            if (t.keys.get(slot) == number) {
+                BankAccount existing = t.values.get(slot);
+                if (existing == account) return;
+                if (existing != null) {
+                    throw new IllegalStateException("Account number already registered: " + number);
+                }
+                t.values.set(slot, account);
+            } else {
+                insertAt(slot, number, account);
+            }
+            registered++;
+        }
+        account.markRegistered();
+    }
+
+    public BankAccount find(long accountNumber) {
+        long start = Metrics.start();
+        BankAccount account = null;
+        if (accountNumber != EMPTY) {
+            Table t = table;
+            int slot = t.slotOf(accountNumber);
+            if (t.keys.get(slot) == accountNumber) account = t.values.get(slot);
+        }
+        Metrics.global().record(Metrics.Operation.LOOKUP, account, start);
+        return account;
+    }
+
+    public boolean isTaken(long accountNumber) {
+        if (accountNumber == EMPTY) return false;
+        Table t = table;
+        return t.keys.get(t.slotOf(accountNumber)) == accountNumber;
+    }
+
+    public synchronized int size() {
+        return registered;
+    }
+
+    public synchronized boolean isEmpty() {
+        return registered == 0;
+    }
+
+    // Copies the registered accounts so callers can iterate without holding the registry lock
+    public synchronized BankAccount[] toArray() {
+        BankAccount[] result = new BankAccount[registered];
+        AtomicReferenceArray<BankAccount> values = table.values;
+        int i = 0;
+        for (int slot = 0; slot < values.length(); slot++) {
+            BankAccount account = values.get(slot);
+            if (account != null) result[i++] = account;
+        }
+        return result;
+    }
+
+    public void forEach(Consumer<BankAccount> action) {
+        for (BankAccount account : toArray()) {
+            action.accept(account);
+        }
+    }
+
+    // Caller holds the registry lock
+    private void insertAt(int slot, long key, BankAccount account) {
+        Table t = table;
+        t.values.set(slot, account);
+        t.keys.set(slot, key);
+        reserved++;
+        if (reserved > t.keys.length() * LOAD_FACTOR) {
+            rehash(t.keys.length() << 1);
+        }
+    }
+
+    // Fills a new table and then publishes it; readers keep using the old one until they see it
+    private void rehash(int capacity) {
+        Table old = table;
+        Table t = new Table(capacity);
+        for (int i = 0; i < old.keys.length(); i++) {
+            long key = old.keys.get(i);
+            if (key != EMPTY) {
+                int slot = t.slotOf(key);
+                t.values.set(slot, old.values.get(i));
+                t.keys.set(slot, key);
+            }
+        }
+        table = t;
+    }
+
+    // Spreads the bits of a key (murmur3 finalizer) so sequential or clustered numbers don't collide.
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,387 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+// Bank-wide figures kept up to date as accounts change, so reading them never scans the accounts:
+// accounts and deposits held per account type, overdraft exposure (the amount by which accounts
+// are below zero, which only CurrentAccounts can be), minor accounts with a guardian, and how many
+// account holders fall into each age band.
+//
+// Every account creation and every balance change (deposit, withdrawal, interest, either leg of a
+// transfer) adds its difference to LongAdders, which spread concurrent updates over striped cells
+// instead of contending on one counter. Ages change with the date rather than with events, so
+// birth dates are counted instead, in Fenwick trees indexed by day; a query turns today's date into
+// one birth-date cut-off per band and reads each band as a difference of two prefix sums. A query
+// costs the same with ten accounts as with ten million.
+//
+// check() recomputes everything with a parallel scan of the registry and compares. A figure that
+// differs while it stayed the same for the whole scan is a real mismatch; one that moved during
+// the scan is only reported as in flight, since the scan sees each account at a different moment.
+//
+// Create it after accounts are recovered and before requests are served: it counts the registered
+// accounts once and then follows events, so changes made in between would be missed.
+//
+// Configured with system properties:
+//   bank.aggregates.checkSeconds  run check() this often and print what it finds (default 0, off)
+//
+//   java Aggregates [accounts] [queries]
+//   defaults:        10000000   1000000
+// feeds that many synthetic accounts and as many random balance changes through the same update
+// paths (without BankAccount objects, which would not fit in memory at that count), then times
+// queries against a full parallel recomputation over the same data.
+final class Aggregates implements AccountEventListener {
+    static final int[] BAND_STARTS = {0, 18, 26, 36, 51, 66}; // lower age of each band
+    static final String[] BAND_NAMES = {"under 18", "18-25", "26-35", "36-50", "51-65", "66+"};
+    static final int ADULT_AGE = 18;
+
+    private static final Metrics.AccountKind[] KINDS = Metrics.AccountKind.values();
+    private static final int FIRST_YEAR = 1900; // Validation rejects earlier birth dates
+    private static final int DAYS = 201 * 12 * 32; // day slots of FIRST_YEAR..2100, 32 per month
+
+    private final AccountRegistry registry;
+    private final LongAdder[] accounts = new LongAdder[KINDS.length];
+    private final LongAdder[] held = new LongAdder[KINDS.length]; // positive balances
+    private final LongAdder[] overdrawn = new LongAdder[KINDS.length]; // negated negative balances
+    private final LongAdder unknownAge = new LongAdder(); // unparseable dates of birth
+    private final BirthDays births = new BirthDays();
+    private final BirthDays guardedBirths = new BirthDays(); // accounts with a guardian
+
+    Aggregates(AccountRegistry registry) {
+        this.registry = registry;
+        for (int k = 0; k < KINDS.length; k++) {
+            accounts[k] = new LongAdder();
+            held[k] = new LongAdder();
+            overdrawn[k] = new LongAdder();
+        }
+        if (registry != null) {
+            for (BankAccount account : registry.toArray()) {
+                onAccountCreated(account);
+            }
+            AccountEvents.addListener(this);
+        }
+    }
+
+    // Starts the periodic consistency check when bank.aggregates.checkSeconds is set
+    void startChecksFromSystemProperties() {
+        long seconds = Long.getLong("bank.aggregates.checkSeconds", 0L);
+        if (seconds <= 0) return;
+        Thread checker = new Thread(() -> {
+            try {
+                while (true) {
+                    TimeUnit.SECONDS.sleep(seconds);
+                    System.out.print(check());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, "aggregates-check");
+        checker.setDaemon(true);
+        checker.start();
+    }
+
+    // ---- AccountEventListener: called while the account's balance lock is held ----
+
+    @Override
+    public void onAccountCreated(BankAccount account) {
+        long birth = Validation.parseDob(account.getDob());
+        opened(Metrics.AccountKind.of(account).ordinal(), account.getBalance(),
+                birth == Validation.INVALID_DATE ? -1 : day(birth), account.getGuardianName() != null);
+    }
+
+    @Override
+    public void onTransaction(BankAccount account, TransactionType type, long amount, long balanceAfter,
+                              long timestampNanos, String description) {
+        int sign = type.balanceSign();
+        if (sign != 0) {
+            balanceChanged(Metrics.AccountKind.of(account).ordinal(), balanceAfter - sign * amount, balanceAfter);
+        }
+    }
+
+    // Both updates take plain values, so the benchmark can drive them without BankAccount objects
+
+    void opened(int kind, long balance, int birthDay, boolean guardian) {
+        accounts[kind].increment();
+        balanceChanged(kind, 0, balance);
+        if (birthDay < 0) {
+            unknownAge.increment();
+            return;
+        }
+        births.add(birthDay, 1);
+        if (guardian) guardedBirths.add(birthDay, 1);
+    }
+
+    void balanceChanged(int kind, long before, long after) {
+        long heldChange = Math.max(after, 0) - Math.max(before, 0);
+        if (heldChange != 0) held[kind].add(heldChange);
+        long overdrawnChange = Math.max(-after, 0) - Math.max(-before, 0);
+        if (overdrawnChange != 0) overdrawn[kind].add(overdrawnChange);
+    }
+
+    // ---- queries ----
+
+    // Current figures, each read without a lock; figures that change while it runs may be from
+    // slightly different moments
+    Totals totals() {
+        Totals t = new Totals();
+        for (int k = 0; k < KINDS.length; k++) {
+            t.accounts[k] = accounts[k].sum();
+            t.held[k] = held[k].sum();
+            t.overdrawn[k] = overdrawn[k].sum();
+        }
+        long today = Validation.today();
+        // holders born on or before cutoffs[b] are at least BAND_STARTS[b] years old today
+        long older = births.upTo(day(today));
+        for (int b = 0; b < BAND_STARTS.length; b++) {
+            long atLeastNext = b + 1 < BAND_STARTS.length ? births.upTo(cutoff(today, BAND_STARTS[b + 1])) : 0;
+            t.ageBands[b] = older - atLeastNext;
+            older = atLeastNext;
+        }
+        t.minorsWithGuardian = guardedBirths.upTo(day(today)) - guardedBirths.upTo(cutoff(today, ADULT_AGE));
+        t.unknownAge = unknownAge.sum();
+        return t;
+    }
+
+    // The same figures computed from scratch by a parallel scan of the registry, reading each
+    // account under its lock
+    Totals recompute() {
+        final BankAccount[] all = registry.toArray();
+        return IntStream.range(0, all.length).parallel().collect(Totals::new, (t, i) -> {
+            BankAccount account = all[i];
+            long balance;
+            account.balanceLock().lock();
+            try {
+                balance = account.getBalance();
+            } finally {
+                account.balanceLock().unlock();
+            }
+            long birth = Validation.parseDob(account.getDob());
+            t.add(Metrics.AccountKind.of(account).ordinal(), balance,
+                    birth == Validation.INVALID_DATE ? -1 : Validation.age(birth), account.getGuardianName() != null);
+        }, Totals::merge);
+    }
+
+    // Compares the maintained figures with recompute(); see the class comment for what is reported
+    String check() {
+        long start = System.nanoTime();
+        long[] before = totals().values();
+        long[] scanned = recompute().values();
+        long[] after = totals().values();
+        String[] names = Totals.names();
+        StringBuilder sb = new StringBuilder();
+        int mismatches = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (scanned[i] == after[i]) continue;
+            boolean settled = before[i] == after[i];
+            if (settled) mismatches++;
+            sb.append(String.format("  %-30s maintained %d, recomputed %d%s%n", names[i], after[i], scanned[i],
+                    settled ? "" : " (changed during the check)"));
+        }
+        return String.format("Aggregates check: %s in %.1f ms%n", mismatches == 0 ? "consistent"
+                : mismatches + " mismatch(es)", (System.nanoTime() - start) / 1e6) + sb;
+    }
+
+    // Day slot of a packed date, ordered like the dates; days past the end of a month are unused
+    static int day(long packed) {
+        long year = packed >>> 9;
+        long slot = ((year - FIRST_YEAR) * 12 + ((packed >>> 5) & 15) - 1) * 32 + (packed & 31);
+        return (int) Math.max(0, Math.min(DAYS - 1, slot));
+    }
+
+    // Last birth day slot of someone at least `years` old today, matching Validation.age: the same
+    // month and day `years` years back
+    private static int cutoff(long today, int years) {
+        return day(today - ((long) years << 9));
+    }
+
+    // Fenwick tree of account counts by birth day slot. Updates only come with account creation,
+    // so plain atomic adds are contended far less than the balance figures.
+    private static final class BirthDays {
+        private final AtomicLongArray tree = new AtomicLongArray(DAYS + 1);
+
+        void add(int day, long delta) {
+            for (int i = day + 1; i <= DAYS; i += i & -i) {
+                tree.getAndAdd(i, delta);
+            }
+        }
+
+        // Accounts born on or before this day slot
+        long upTo(int day) {
+            long sum = 0;
+            for (int i = day + 1; i > 0; i -= i & -i) {
+                sum += tree.get(i);
+            }
+            return sum;
+        }
+    }
+
+    static final class Totals {
+        final long[] accounts = new long[KINDS.length];
+        final long[] held = new long[KINDS.length];
+        final long[] overdrawn = new long[KINDS.length];
+        final long[] ageBands = new long[BAND_STARTS.length];
+        long minorsWithGuardian;
+        long unknownAge;
+
+        void add(int kind, long balance, int age, boolean guardian) {
+            accounts[kind]++;
+            if (balance > 0) held[kind] += balance;
+            if (balance < 0) overdrawn[kind] -= balance;
+            if (age < 0) {
+                unknownAge++;
+                return;
+            }
+            int band = BAND_STARTS.length - 1;
+            while (age < BAND_STARTS[band]) band--;
+            ageBands[band]++;
+            if (guardian && age < ADULT_AGE) minorsWithGuardian++;
+        }
+
+        void merge(Totals other) {
+            for (int k = 0; k < KINDS.length; k++) {
+                accounts[k] += other.accounts[k];
+                held[k] += other.held[k];
+                overdrawn[k] += other.overdrawn[k];
+            }
+            for (int b = 0; b < ageBands.length; b++) {
+                ageBands[b] += other.ageBands[b];
+            }
+            minorsWithGuardian += other.minorsWithGuardian;
+            unknownAge += other.unknownAge;
+        }
+
+        // Every figure in a fixed order, named by names()
+        long[] values() {
+            long[] values = new long[3 * KINDS.length + ageBands.length + 2];
+            int i = 0;
+            for (int k = 0; k < KINDS.length; k++) {
+                values[i++] = accounts[k];
+                values[i++] = held[k];
+                values[i++] = overdrawn[k];
+            }
+            for (long band : ageBands) {
+                values[i++] = band;
+            }
+            values[i++] = minorsWithGuardian;
+            values[i] = unknownAge;
+            return values;
+        }
+
+        static String[] names() {
+            String[] names = new String[3 * KINDS.length + BAND_STARTS.length + 2];
+            int i = 0;
+            for (Metrics.AccountKind kind : KINDS) {
+                names[i++] = kind + " accounts";
+                names[i++] = kind + " held (paise)";
+                names[i++] = kind + " overdrawn (paise)";
+            }
+            for (String band : BAND_NAMES) {
+                names[i++] = "age " + band;
+            }
+            names[i++] = "minors with guardian";
+            names[i] = "unknown age";
+            return names;
+        }
+
+        long totalAccounts() {
+            long sum = 0;
+            for (long count : accounts) {
+                sum += count;
+            }
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(512);
+            sb.append("Accounts: ").append(totalAccounts()).append('\n');
+            for (Metrics.AccountKind kind : KINDS) {
+                int k = kind.ordinal();
+                if (accounts[k] == 0) continue;
+                sb.append(String.format("  %-8s %10d accounts, deposits held ₹", kind, accounts[k]));
+                Money.appendTo(sb, held[k]);
+                if (overdrawn[k] > 0) Money.appendTo(sb.append(", overdraft exposure ₹"), overdrawn[k]);
+                sb.append('\n');
+            }
+            sb.append("Minor accounts with a guardian: ").append(minorsWithGuardian).append('\n');
+            sb.append("Account holders by age:");
+            for (int b = 0; b < ageBands.length; b++) {
+                sb.append("  ").append(BAND_NAMES[b]).append(": ").append(ageBands[b]);
+            }
+            if (unknownAge > 0) sb.append("  unknown: ").append(unknownAge);
+            return sb.append('\n').toString();
+        }
+    }
+
+    // ---- benchmark ----
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        Aggregates aggregates = new Aggregates(null);
+        // the synthetic ledger: what recompute() would read from each account
+        byte[] kinds = new byte[count];
+        long[] balances = new long[count];
+        int[] ages = new int[count];
+        boolean[] guardians = new boolean[count];
+        SplittableRandom random = new SplittableRandom(42);
+        long today = Validation.today();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            kinds[i] = (byte) (random.nextInt(3) == 0 ? Metrics.AccountKind.CURRENT.ordinal()
+                    : Metrics.AccountKind.SAVINGS.ordinal());
+            balances[i] = Money.ofRupees(random.nextInt(50_000));
+            // birth dates spread over 0..89 years back, any day of the year
+            long birth = ((today >>> 9) - random.nextInt(90)) << 9 | (1 + random.nextInt(12)) << 5
+                    | (1 + random.nextInt(28));
+            if (birth > today) birth -= 1 << 9;
+            ages[i] = Validation.age(birth);
+            guardians[i] = ages[i] < ADULT_AGE && random.nextInt(10) != 0;
+            aggregates.opened(kinds[i], balances[i], day(birth), guardians[i]);
+        }
+        long created = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int n = 0; n < count; n++) {
+            int i = random.nextInt(count);
+            long before = balances[i];
+            long after = random.nextBoolean() ? before + Money.ofRupees(1 + random.nextInt(5000))
+                    : before - Money.ofRupees(1 + random.nextInt(5000));
+            if (kinds[i] != Metrics.AccountKind.CURRENT.ordinal() && after < 0) after = before; // savings can't go below zero
+            balances[i] = after;
+            aggregates.balanceChanged(kinds[i], before, after);
+        }
+        long changed = System.nanoTime() - start;
+        System.out.printf("%d accounts opened at %.0f ns each, %d balance changes at %.0f ns each%n",
+                count, (double) created / count, count, (double) changed / count);
+
+        long[] latencies = new long[queries];
+        Totals last = null;
+        for (int q = 0; q < queries; q++) {
+            long t = System.nanoTime();
+            last = aggregates.totals();
+            latencies[q] = System.nanoTime() - t;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("query: p50 %.2f us, p99 %.2f us, p99.9 %.2f us, max %.2f us over %d queries%n",
+                latencies[queries / 2] / 1e3, latencies[(int) (queries * 0.99)] / 1e3,
+                latencies[(int) (queries * 0.999)] / 1e3, latencies[queries - 1] / 1e3, queries);
+
+        Totals scanned = null;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            start = System.nanoTime();
+            scanned = IntStream.range(0, count).parallel().collect(Totals::new,
+                    (t, i) -> t.add(kinds[i], balances[i], ages[i], guardians[i]), Totals::merge);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("full parallel recomputation: %.1f ms (best of 5, %d threads)%n",
+                best / 1e6, Runtime.getRuntime().availableProcessors());
+        System.out.print(last);
+        System.out.println(Arrays.equals(last.values(), scanned.values())
+                ? "maintained figures match the recomputation" : "MISMATCH with the recomputation:\n" + scanned);
+    }
+}
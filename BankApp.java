@@ -1,8 +1,8 @@
 import java.util.*;
-import java.time.*;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 interface BankServices {
     void changePassword(Scanner sc);
@@ -17,16 +17,22 @@ abstract class BankAccount implements BankServices {
     private int age;
     private String guardianName;
     private String guardianRelation;
-    private double balance;
-    private String password; // Master password (complex)
-    private String pin; // 4-digit pin stored as String to preserve leading zeros
-    private List<String> transactions = new ArrayList<>();
-    protected static int accountCount = 0; // static variable
+    private volatile long balance; // in paise; written only while holding balanceLock
+    private String passwordHash; // salted hash of the master password, see Credentials
+    private String pinHash; // salted hash of the 4-digit PIN
+    private TransactionLog transactions; // created on first use, guarded by balanceLock
+    private HistoryFile.Region pendingHistory; // fast-start history not read yet, guarded by balanceLock
+    private final ReentrantLock balanceLock = new ReentrantLock(); // per-account lock, no global lock
+    private boolean registered; // events are published only once the account is in the registry
+    private long journalSequence; // last journal record reflected in this account's state
+    private long replicationSequence; // last replication event reflected in it, see Replicator
+    private RiskScorer.Profile riskProfile; // guarded by balanceLock; created by the first scored operation
+    private static final AtomicInteger accountCount = new AtomicInteger(); // static variable, shared by all threads
 
     // Constructors
     public BankAccount() {
         this.accountNumber = generateAccountNumber();
-        accountCount++;
+        accountCount.incrementAndGet();
     }
 
     public BankAccount(String fullName, String dob) {
@@ -38,13 +44,26 @@ abstract class BankAccount implements BankServices {
         if (this.age < 18) {
             // guardian will be set by caller
         }
-        this.balance = 0.0;
+        this.balance = 0L;
+    }
+
+    // Used when rebuilding an account from persisted state: keeps the stored account number
+    protected BankAccount(long accountNumber, String fullName, String dob) {
+        if (!AccountRegistry.global().reserve(accountNumber)) {
+            throw new IllegalStateException("Account number already in use: " + accountNumber);
+        }
+        this.accountNumber = accountNumber;
+        accountCount.incrementAndGet();
+        this.fullName = fullName.trim();
+        this.firstName = extractFirstName(fullName);
+        this.dob = dob;
+        this.age = calculateAgeFromDOB(dob);
     }
 
     // Helper methods
     protected long generateAccountNumber() {
-        // generate 8-digit random account number
-        return ThreadLocalRandom.current().nextLong(10000000L, 100000000L);
+        // unique 8-digit number, already reserved in the registry
+        return AccountNumberAllocator.global().allocate();
     }
 
     private String extractFirstName(String fullName) {
@@ -53,36 +72,119 @@ abstract class BankAccount implements BankServices {
     }
 
     private int calculateAgeFromDOB(String dob) {
+        long birth = Validation.parseDob(dob);
+        return birth == Validation.INVALID_DATE ? 0 : Validation.age(birth); // caller should ensure valid DOB
+    }
+
+    protected void record(TransactionType type) {
+        record(type, 0L, null);
+    }
+
+    protected void record(TransactionType type, long amount, String description) {
+        balanceLock.lock();
         try {
-            DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-            LocalDate birth = LocalDate.parse(dob, fmt);
-            LocalDate now = LocalDate.now();
-            return (int) ChronoUnit.YEARS.between(birth, now);
-        } catch (Exception ex) {
-            return 0; // invalid format, caller should ensure valid DOB
+            appendLocked(type, amount, description);
+        } finally {
+            balanceLock.unlock();
         }
+        finishChanges();
     }
 
-    protected void addTransaction(String txn) {
-        transactions.add(txn);
+    // Lets listeners finish what this thread published (the journal waits for durability here),
+    // unless the caller still holds the lock and will do it once it lets go
+    void finishChanges() {
+        if (!balanceLock.isHeldByCurrentThread()) AccountEvents.afterChanges();
+    }
+
+    enum DebitResult {
+        DONE,
+        INSUFFICIENT_FUNDS, // would go below the balance floor
+        DECLINED // refused by RiskScorer
+    }
+
+    // Atomically adds amount to the balance and records the transaction; returns false if a deposit
+    // is declined by RiskScorer (other credits are not scored). Throws ArithmeticException, leaving
+    // the balance unchanged, if the new balance would overflow.
+    protected boolean credit(long amount, TransactionType type, String description) {
+        long start = Metrics.start();
+        boolean done = false;
+        balanceLock.lock();
+        try {
+            long balanceAfter = Math.addExact(balance, amount);
+            if (type != TransactionType.DEPOSIT || !declinedByRisk(false, amount, balanceAfter)) {
+                balance = balanceAfter;
+                appendLocked(type, amount, description);
+                done = true;
+            }
+        } finally {
+            balanceLock.unlock();
+        }
+        finishChanges();
+        if (type == TransactionType.DEPOSIT) Metrics.global().record(Metrics.Operation.DEPOSIT, this, start);
+        return done;
+    }
+
+    // Atomically subtracts amount if the balance stays at or above floor and RiskScorer allows it
+    protected DebitResult debit(long amount, long floor, TransactionType type, String description) {
+        long start = Metrics.start();
+        DebitResult result;
+        balanceLock.lock();
+        try {
+            long after = balance - amount;
+            // after above balance: amount was negative, or the subtraction wrapped below Long.MIN_VALUE
+            if (after < floor || after > balance) {
+                result = DebitResult.INSUFFICIENT_FUNDS;
+            } else if (declinedByRisk(true, amount, after)) {
+                result = DebitResult.DECLINED;
+            } else {
+                balance = after;
+                appendLocked(type, amount, description);
+                result = DebitResult.DONE;
+            }
+        } finally {
+            balanceLock.unlock();
+        }
+        finishChanges();
+        if (result == DebitResult.INSUFFICIENT_FUNDS) Metrics.global().debitDenied(this);
+        if (type == TransactionType.WITHDRAW) Metrics.global().record(Metrics.Operation.WITHDRAW, this, start);
+        return result;
+    }
+
+    // Caller holds balanceLock
+    private boolean declinedByRisk(boolean debit, long amount, long balanceAfter) {
+        RiskScorer scorer = RiskScorer.global();
+        if (scorer == null) return false;
+        if (riskProfile == null) riskProfile = new RiskScorer.Profile();
+        return scorer.screen(this, riskProfile, debit, amount, balanceAfter) == RiskScorer.Verdict.DECLINE;
+    }
+
+    private void appendLocked(TransactionType type, long amount, String description) {
+        long now = TransactionLog.nowNanos();
+        recent().append(type, amount, now, description);
+        if (registered) {
+            AccountEvents.transactionRecorded(this, type, amount, balance, now, description);
+            SecurityEventIndex.global().record(accountNumber, type, now);
+            Metrics.global().transactionRecorded(type, this);
+        }
     }
 
-    // Abstract methods
-    public abstract void deposit(double amount);
+    // Abstract methods (amounts in paise, see Money); description/purpose may be null
+    public abstract void deposit(long amount, String description);
 
-    public abstract void withdraw(double amount);
+    public abstract void withdraw(long amount, String purpose);
 
     public abstract void checkBalance();
 
+    // Lowest balance a withdrawal or outgoing transfer may leave (negative when overdraft is allowed)
+    protected abstract long balanceFloor();
+
     // Overloaded methods (polymorphism overloading)
-    public void deposit(double amount, String description) {
-        deposit(amount);
-        addTransaction("Deposit: " + amount + " " + description + " | Date: " + LocalDateTime.now());
+    public void deposit(long amount) {
+        deposit(amount, null);
     }
 
-    public void withdraw(double amount, String purpose) {
-        withdraw(amount);
-        addTransaction("Withdraw: " + amount + " | Purpose: " + purpose + " | Date: " + LocalDateTime.now());
+    public void withdraw(long amount) {
+        withdraw(amount, null);
     }
 
     // Encapsulation: getters & setters with validations
@@ -114,36 +216,102 @@ abstract class BankAccount implements BankServices {
         return guardianRelation;
     }
 
-    public double getBalance() {
+    public long getBalance() {
         return balance;
     }
 
-    protected void setBalance(double balance) {
-        this.balance = balance;
+    protected void setBalance(long balance) {
+        balanceLock.lock();
+        try {
+            this.balance = balance;
+        } finally {
+            balanceLock.unlock();
+        }
+    }
+
+    protected ReentrantLock balanceLock() {
+        return balanceLock;
     }
 
-    public String getPassword() {
-        return password;
+    public String getPasswordHash() {
+        return passwordHash;
     }
 
+    // Only the salted hash is kept; it is computed before taking the lock because it is slow
     protected void setPassword(String password) {
-        this.password = password;
+        String hash = Credentials.hash(password);
+        balanceLock.lock();
+        try {
+            this.passwordHash = hash;
+            if (registered) AccountEvents.credentialsChanged(this);
+        } finally {
+            balanceLock.unlock();
+        }
+        finishChanges();
     }
 
-    public String getPin() {
-        return pin;
+    public String getPinHash() {
+        return pinHash;
     }
 
     protected void setPin(String pin) {
-        this.pin = pin;
+        String hash = Credentials.hash(pin);
+        balanceLock.lock();
+        try {
+            this.pinHash = hash;
+            if (registered) AccountEvents.credentialsChanged(this);
+        } finally {
+            balanceLock.unlock();
+        }
+        finishChanges();
+    }
+
+    public TransactionLog getTransactions() {
+        balanceLock.lock();
+        try {
+            return history();
+        } finally {
+            balanceLock.unlock();
+        }
     }
 
-    public List<String> getTransactions() {
+    // Caller holds balanceLock. The log new entries go to; a pending fast-start history is not read
+    private TransactionLog recent() {
+        if (transactions == null) transactions = new TransactionLog();
         return transactions;
     }
 
+    // Caller holds balanceLock. The whole history: a pending fast-start history is read first and
+    // the entries recorded since recovery are appended to it
+    private TransactionLog history() {
+        HistoryFile.Region pending = pendingHistory;
+        if (pending != null) {
+            TransactionLog loaded;
+            try {
+                loaded = pending.read();
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not read the history of account " + accountNumber, ex);
+            }
+            if (transactions != null) loaded.appendAll(transactions);
+            transactions = loaded;
+            pendingHistory = null;
+        }
+        return recent();
+    }
+
     public static int getAccountCount() {
-        return accountCount;
+        return accountCount.get();
+    }
+
+    // Sets hashes computed off this thread (see BulkImport) on an account that is not registered yet
+    void setCredentialHashes(String passwordHash, String pinHash) {
+        balanceLock.lock();
+        try {
+            this.passwordHash = passwordHash;
+            this.pinHash = pinHash;
+        } finally {
+            balanceLock.unlock();
+        }
     }
 
     public void setGuardian(String name, String relation) {
@@ -151,6 +319,101 @@ abstract class BankAccount implements BankServices {
         this.guardianRelation = relation;
     }
 
+    // Called by AccountRegistry once the account is fully set up; from here on changes are published
+    void markRegistered() {
+        balanceLock.lock();
+        try {
+            if (registered) return;
+            registered = true;
+            AccountEvents.accountCreated(this);
+        } finally {
+            balanceLock.unlock();
+        }
+        finishChanges();
+    }
+
+    // Journal sequence bookkeeping; callers hold balanceLock
+    long getJournalSequence() {
+        return journalSequence;
+    }
+
+    void setJournalSequence(long sequence) {
+        journalSequence = sequence;
+    }
+
+    // Replication sequence bookkeeping; callers hold balanceLock
+    long getReplicationSequence() {
+        return replicationSequence;
+    }
+
+    void setReplicationSequence(long sequence) {
+        replicationSequence = sequence;
+    }
+
+    // Replays a persisted transaction without publishing it again; stale records are skipped
+    void restoreTransaction(long sequence, TransactionType type, long amount, long balanceAfter,
+                            long timestampNanos, String description) {
+        balanceLock.lock();
+        try {
+            if (sequence != 0 && sequence <= journalSequence) return;
+            recent().append(type, amount, timestampNanos, description);
+            SecurityEventIndex.global().record(accountNumber, type, timestampNanos);
+            if (type == TransactionType.ACCOUNT_LOCKED) LoginGuard.global().restoreLock(accountNumber, timestampNanos, amount);
+            balance = balanceAfter;
+            if (sequence != 0) journalSequence = sequence;
+        } finally {
+            balanceLock.unlock();
+        }
+    }
+
+    // Recovery from a fast-start snapshot: the history stays on disk until it is first asked for,
+    // but its security events are restored now, as restoreTransaction would
+    void restorePendingHistory(HistoryFile.Region region) {
+        balanceLock.lock();
+        try {
+            pendingHistory = region;
+            long[] events = region.securityEvents;
+            for (int i = 0; events != null && i < events.length; i += 3) {
+                TransactionType type = TransactionType.fromCode((int) events[i]);
+                SecurityEventIndex.global().record(accountNumber, type, events[i + 2]);
+                if (type == TransactionType.ACCOUNT_LOCKED) LoginGuard.global().restoreLock(accountNumber, events[i + 2], events[i + 1]);
+            }
+        } finally {
+            balanceLock.unlock();
+        }
+    }
+
+    // For snapshots; caller holds balanceLock. The pending history if nothing was recorded since
+    // recovery, so it can be copied as it is, else null
+    HistoryFile.Region untouchedHistory() {
+        return transactions == null ? pendingHistory : null;
+    }
+
+    // Points a pending history at a copy of it in a newer file; false once it has been read
+    boolean movePendingHistory(HistoryFile.Region from, HistoryFile.Region to) {
+        balanceLock.lock();
+        try {
+            if (pendingHistory != from) return false;
+            pendingHistory = to;
+            return true;
+        } finally {
+            balanceLock.unlock();
+        }
+    }
+
+    void restoreCredentials(long sequence, String passwordHash, String pinHash) {
+        balanceLock.lock();
+        try {
+            if (sequence != 0 && sequence <= journalSequence) return;
+            // data written before credentials were hashed holds plaintext; hash it on the way in
+            this.passwordHash = Credentials.upgrade(passwordHash);
+            this.pinHash = Credentials.upgrade(pinHash);
+            if (sequence != 0) journalSequence = sequence;
+        } finally {
+            balanceLock.unlock();
+        }
+    }
+
     public void displayAccountDetails() {
         System.out.println("=== Account Details ===");
         System.out.println("Account Number: " + getAccountNumber());
@@ -160,20 +423,28 @@ abstract class BankAccount implements BankServices {
         if (getAge() < 18) {
             System.out.println("Guardian: " + getGuardianName() + " (" + getGuardianRelation() + ")");
         }
-        System.out.println("Balance: ₹" + String.format("%.2f", getBalance()));
+        System.out.println("Balance: ₹" + Money.format(getBalance()));
     }
 
     public void showLastNTransactions(int n) {
         System.out.println("=== Last " + n + " Transactions ===");
-        int size = transactions.size();
-        if (size == 0) {
+        StringBuilder out = new StringBuilder();
+        balanceLock.lock();
+        try {
+            TransactionLog log = history();
+            int size = log.size();
+            int start = Math.max(0, size - n);
+            for (int i = start; i < size; i++) {
+                log.renderTo(out, i).append(System.lineSeparator());
+            }
+        } finally {
+            balanceLock.unlock();
+        }
+        if (out.length() == 0) {
             System.out.println("No transactions yet.");
             return;
         }
-        int start = Math.max(0, size - n);
-        for (int i = start; i < size; i++) {
-            System.out.println(transactions.get(i));
-        }
+        System.out.print(out);
     }
 
     // Interface implementations
@@ -186,7 +457,7 @@ abstract class BankAccount implements BankServices {
             if (BankApp.isValidPassword(newPass)) {
                 setPassword(newPass);
                 System.out.println("Password updated successfully.");
-                addTransaction("Password changed on " + LocalDateTime.now());
+                record(TransactionType.PASSWORD_CHANGED);
                 break;
             } else {
                 System.out.println("Password does not meet complexity requirements. Try again.");
@@ -203,7 +474,7 @@ abstract class BankAccount implements BankServices {
             if (BankApp.isValidPin(newPin, this.getDob())) {
                 setPin(newPin);
                 System.out.println("PIN updated successfully.");
-                addTransaction("PIN changed on " + LocalDateTime.now());
+                record(TransactionType.PIN_CHANGED);
                 break;
             } else {
                 System.out.println("Invalid PIN. It must be 4 digits and not match DOB patterns (DDMM, MMDD, YYYY). Try again.");
@@ -214,8 +485,9 @@ abstract class BankAccount implements BankServices {
 
 // Savings account with minimum balance & interest
 class SavingsAccount extends BankAccount {
-    private static final double MIN_BALANCE = 500.0;
-    private double interestRate = 4.0; // simple annual percentage for demonstration
+    static final long MIN_BALANCE = Money.ofRupees(500);
+    static final long INTEREST_RATE_BASIS_POINTS = 400; // 4.00% simple annual, for demonstration
+    private long interestRateBasisPoints = INTEREST_RATE_BASIS_POINTS;
 
     public SavingsAccount() {
     }
@@ -224,36 +496,55 @@ class SavingsAccount extends BankAccount {
         super(fullName, dob);
     }
 
+    SavingsAccount(long accountNumber, String fullName, String dob) {
+        super(accountNumber, fullName, dob);
+    }
+
     @Override
-    public void deposit(double amount) {
+    public void deposit(long amount, String description) {
         if (amount <= 0) {
             System.out.println("Deposit amount must be positive.");
             return;
         }
-        setBalance(getBalance() + amount);
-        addTransaction("Deposit: " + amount + " | Date: " + LocalDateTime.now());
-        System.out.println("₹" + amount + " deposited. New balance: ₹" + String.format("%.2f", getBalance()));
+        try {
+            if (!credit(amount, TransactionType.DEPOSIT, description)) {
+                System.out.println("Deposit declined by fraud checks. Please contact the bank.");
+                return;
+            }
+        } catch (ArithmeticException ex) {
+            System.out.println("Deposit rejected. The balance would exceed the largest amount an account can hold.");
+            return;
+        }
+        System.out.println("₹" + Money.format(amount) + " deposited. New balance: ₹" + Money.format(getBalance()));
     }
 
     @Override
-    public void withdraw(double amount) {
+    public void withdraw(long amount, String purpose) {
         if (amount <= 0) {
             System.out.println("Withdraw amount must be positive.");
             return;
         }
-        if (getBalance() - amount < MIN_BALANCE) {
-            System.out.println("Withdrawal denied. Savings account must maintain minimum balance of ₹" + MIN_BALANCE);
+        DebitResult result = debit(amount, balanceFloor(), TransactionType.WITHDRAW, purpose);
+        if (result == DebitResult.INSUFFICIENT_FUNDS) {
+            System.out.println("Withdrawal denied. Savings account must maintain minimum balance of ₹" + Money.format(MIN_BALANCE));
             return;
         }
-        setBalance(getBalance() - amount);
-        addTransaction("Withdraw: " + amount + " | Date: " + LocalDateTime.now());
-        System.out.println("₹" + amount + " withdrawn. New balance: ₹" + String.format("%.2f", getBalance()));
+        if (result == DebitResult.DECLINED) {
+            System.out.println("Withdrawal declined by fraud checks. Please contact the bank.");
+            return;
+        }
+        System.out.println("₹" + Money.format(amount) + " withdrawn. New balance: ₹" + Money.format(getBalance()));
     }
 
     @Override
     public void checkBalance() {
-        System.out.println("Current Savings Balance: ₹" + String.format("%.2f", getBalance()));
-        addTransaction("Balance inquiry on " + LocalDateTime.now());
+        System.out.println("Current Savings Balance: ₹" + Money.format(getBalance()));
+        record(TransactionType.BALANCE_INQUIRY);
+    }
+
+    @Override
+    protected long balanceFloor() {
+        return MIN_BALANCE;
     }
 
     // Overriding toString for account type
@@ -264,17 +555,35 @@ class SavingsAccount extends BankAccount {
 
     public void applySimpleInterest(int years) {
         if (years <= 0) return;
-        double principal = getBalance();
-        double interest = (principal * interestRate * years) / 100.0;
-        setBalance(getBalance() + interest);
-        addTransaction("Interest applied: " + interest + " for " + years + " years");
-        System.out.println("Interest ₹" + String.format("%.2f", interest) + " added. New balance: ₹" + String.format("%.2f", getBalance()));
+        long interest = accrueInterest(years, years + " years");
+        System.out.println("Interest ₹" + Money.format(interest) + " added. New balance: ₹" + Money.format(getBalance()));
+    }
+
+    // Credits simple interest on the current balance without console output; returns the amount
+    long accrueInterest(int years, String description) {
+        long start = Metrics.start();
+        long interest;
+        balanceLock().lock();
+        try {
+            interest = simpleInterest(getBalance(), interestRateBasisPoints, years);
+            credit(interest, TransactionType.INTEREST, description);
+        } finally {
+            balanceLock().unlock();
+            Metrics.global().record(Metrics.Operation.INTEREST, this, start);
+        }
+        finishChanges();
+        return interest;
+    }
+
+    // principal * rate% * years, rounded half-up to the nearest paisa; throws ArithmeticException on overflow
+    static long simpleInterest(long principal, long basisPoints, int years) {
+        return (Math.multiplyExact(principal, basisPoints * years) + 5_000L) / 10_000L;
     }
 }
 
 // Current account with overdraft
 class CurrentAccount extends BankAccount {
-    private static final double OVERDRAFT_LIMIT = 5000.0;
+    static final long OVERDRAFT_LIMIT = Money.ofRupees(5000);
 
     public CurrentAccount() {
     }
@@ -283,36 +592,55 @@ class CurrentAccount extends BankAccount {
         super(fullName, dob);
     }
 
+    CurrentAccount(long accountNumber, String fullName, String dob) {
+        super(accountNumber, fullName, dob);
+    }
+
     @Override
-    public void deposit(double amount) {
+    public void deposit(long amount, String description) {
         if (amount <= 0) {
             System.out.println("Deposit amount must be positive.");
             return;
         }
-        setBalance(getBalance() + amount);
-        addTransaction("Deposit: " + amount + " | Date: " + LocalDateTime.now());
-        System.out.println("₹" + amount + " deposited. New balance: ₹" + String.format("%.2f", getBalance()));
+        try {
+            if (!credit(amount, TransactionType.DEPOSIT, description)) {
+                System.out.println("Deposit declined by fraud checks. Please contact the bank.");
+                return;
+            }
+        } catch (ArithmeticException ex) {
+            System.out.println("Deposit rejected. The balance would exceed the largest amount an account can hold.");
+            return;
+        }
+        System.out.println("₹" + Money.format(amount) + " deposited. New balance: ₹" + Money.format(getBalance()));
     }
 
     @Override
-    public void withdraw(double amount) {
+    public void withdraw(long amount, String purpose) {
         if (amount <= 0) {
             System.out.println("Withdraw amount must be positive.");
             return;
         }
-        if (getBalance() - amount < -OVERDRAFT_LIMIT) {
-            System.out.println("Withdrawal denied. Exceeds overdraft limit of ₹" + OVERDRAFT_LIMIT);
+        DebitResult result = debit(amount, balanceFloor(), TransactionType.WITHDRAW, purpose);
+        if (result == DebitResult.INSUFFICIENT_FUNDS) {
+            System.out.println("Withdrawal denied. Exceeds overdraft limit of ₹" + Money.format(OVERDRAFT_LIMIT));
+            return;
+        }
+        if (result == DebitResult.DECLINED) {
+            System.out.println("Withdrawal declined by fraud checks. Please contact the bank.");
             return;
         }
-        setBalance(getBalance() - amount);
-        addTransaction("Withdraw: " + amount + " | Date: " + LocalDateTime.now());
-        System.out.println("₹" + amount + " withdrawn. New balance: ₹" + String.format("%.2f", getBalance()));
+        System.out.println("₹" + Money.format(amount) + " withdrawn. New balance: ₹" + Money.format(getBalance()));
     }
 
     @Override
     public void checkBalance() {
-        System.out.println("Current Account Balance: ₹" + String.format("%.2f", getBalance()));
-        addTransaction("Balance inquiry on " + LocalDateTime.now());
+        System.out.println("Current Account Balance: ₹" + Money.format(getBalance()));
+        record(TransactionType.BALANCE_INQUIRY);
+    }
+
+    @Override
+    protected long balanceFloor() {
+        return -OVERDRAFT_LIMIT;
     }
 
     @Override
@@ -326,31 +654,12 @@ public class BankApp {
 
     // Password validation: min 8 chars, 1 uppercase, 1 lowercase, 1 digit, 1 special char
     public static boolean isValidPassword(String pwd) {
-        if (pwd == null || pwd.length() < 8) return false;
-        boolean upper = false, lower = false, digit = false, special = false;
-        for (char c : pwd.toCharArray()) {
-            if (Character.isUpperCase(c)) upper = true;
-            else if (Character.isLowerCase(c)) lower = true;
-            else if (Character.isDigit(c)) digit = true;
-            else special = true;
-        }
-        return upper && lower && digit && special;
+        return Validation.isValidPassword(pwd);
     }
 
     // PIN validation: 4 digits, not DDMM, not MMDD, not YYYY from DOB
     public static boolean isValidPin(String pin, String dob) {
-        if (pin == null || !pin.matches("\\d{4}")) return false;
-        if (dob == null || !dob.matches("\\d{2}/\\d{2}/\\d{4}")) return true; // if DOB not known, only check digits
-        String dd = dob.substring(0, 2);
-        String mm = dob.substring(3, 5);
-        String yyyy = dob.substring(6, 10);
-        String ddmm = dd + mm;
-        String mmdd = mm + dd;
-        String yy = yyyy.substring(2); // last two digits of the year
-        if (pin.equals(ddmm) || pin.equals(mmdd) || pin.equals(yyyy)) {
-            return false;
-        }
-        return true;
+        return Validation.isValidPin(pin, dob);
     }
 
     // Helper to read non-empty line
@@ -364,15 +673,16 @@ public class BankApp {
     }
 
     // DOB validation
-    private static boolean isValidDOB(String dob) {
-        try {
-            DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-            LocalDate birth = LocalDate.parse(dob, fmt);
-            // reasonable DOB check: not in future and year > 1900
-            return !birth.isAfter(LocalDate.now()) && birth.getYear() > 1900;
-        } catch (Exception ex) {
-            return false;
-        }
+    static boolean isValidDOB(String dob) {
+        // reasonable DOB check: not in future and year > 1900
+        return Validation.isValidDob(dob);
+    }
+
+    // Age in whole years for a DOB that passed isValidDOB
+    static int ageFromDob(String dob) {
+        long birth = Validation.parseDob(dob);
+        if (birth == Validation.INVALID_DATE) throw new IllegalArgumentException("Invalid DOB: " + dob);
+        return Validation.age(birth);
     }
 
     // Create account flow
@@ -385,10 +695,7 @@ public class BankApp {
             if (isValidDOB(dob)) break;
             System.out.println("Invalid DOB format or unrealistic date. Please enter again.");
         }
-        // Calculate age
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        LocalDate birth = LocalDate.parse(dob, fmt);
-        int age = (int) ChronoUnit.YEARS.between(birth, LocalDate.now());
+        int age = ageFromDob(dob);
         String accType;
         while (true) {
             System.out.print("Choose account type (1. Savings, 2. Current): ");
@@ -438,32 +745,43 @@ public class BankApp {
             }
         }
         System.out.println("Account successfully created!");
-        account.addTransaction("Account created on " + LocalDateTime.now());
+        AccountRegistry.global().register(account);
+        account.record(TransactionType.ACCOUNT_CREATED);
         account.displayAccountDetails();
         return account;
     }
 
-    // Authentication: allow 3 attempts for (password + pin)
+    // Authentication: password + pin, retried until LoginGuard locks the account
     private static boolean authenticate(BankAccount account) {
         if (account == null) return false;
-        int attempts = 0;
-        while (attempts < 3) {
-            System.out.print("Enter password: ");
-            String pwd = sc.nextLine();
-            System.out.print("Enter 4-digit PIN: ");
-            String pin = sc.nextLine().trim();
-            if (pwd.equals(account.getPassword()) && pin.equals(account.getPin())) {
-                account.addTransaction("Successful login on " + LocalDateTime.now());
+        LoginGuard guard = LoginGuard.global();
+        while (true) {
+            LoginGuard.Decision decision = guard.check(account, null);
+            if (decision != LoginGuard.Decision.ALLOWED) {
+                System.out.println((decision == LoginGuard.Decision.ATTEMPTS_PENDING
+                        ? "Other login attempts on this account are still being checked."
+                        : "Account locked due to failed attempts.") + " Try again in "
+                        + guard.retryAfterSeconds(account.getAccountNumber(), null) + " seconds.");
+                return false;
+            }
+            boolean verified;
+            try {
+                System.out.print("Enter password: ");
+                String pwd = sc.nextLine();
+                System.out.print("Enter 4-digit PIN: ");
+                String pin = sc.nextLine().trim();
+                verified = CredentialVerifier.global().verify(account, pwd, pin);
+            } catch (RuntimeException ex) {
+                guard.cancelled(account); // e.g. input closed
+                throw ex;
+            }
+            if (verified) {
+                guard.succeeded(account, null);
                 return true;
-            } else {
-                attempts++;
-                System.out.println("Invalid credentials. Attempts left: " + (3 - attempts));
-                account.addTransaction("Failed login attempt on " + LocalDateTime.now());
             }
+            guard.failed(account, null);
+            System.out.println("Invalid credentials. Attempts left: " + guard.attemptsLeft(account.getAccountNumber()));
         }
-        System.out.println("Account locked due to 3 failed attempts.");
-        account.addTransaction("Account locked after 3 failed attempts on " + LocalDateTime.now());
-        return false;
     }
 
     private static void showMenu(BankAccount account) {
@@ -478,14 +796,15 @@ public class BankApp {
             System.out.println("6. View Account Details (first name shown)");
             System.out.println("7. Show last 5 transactions");
             System.out.println("8. Apply interest (Savings only)");
-            System.out.println("9. Exit");
+            System.out.println("9. Transfer to another account");
+            System.out.println("10. Exit");
             System.out.print("Choose option: ");
             String opt = sc.nextLine().trim();
             switch (opt) {
                 case "1":
                     try {
                         System.out.print("Enter amount to deposit: ");
-                        double amt = Double.parseDouble(sc.nextLine());
+                        long amt = Money.parse(sc.nextLine());
                         System.out.print("Optional description (press enter to skip): ");
                         String desc = sc.nextLine();
                         if (desc.trim().isEmpty()) account.deposit(amt);
@@ -497,7 +816,7 @@ public class BankApp {
                 case "2":
                     try {
                         System.out.print("Enter amount to withdraw: ");
-                        double wamt = Double.parseDouble(sc.nextLine());
+                        long wamt = Money.parse(sc.nextLine());
                         System.out.print("Optional purpose (press enter to skip): ");
                         String purp = sc.nextLine();
                         if (purp.trim().isEmpty()) account.withdraw(wamt);
@@ -529,12 +848,47 @@ public class BankApp {
                             ((SavingsAccount) account).applySimpleInterest(yrs);
                         } catch (NumberFormatException nfe) {
                             System.out.println("Invalid number.");
+                        } catch (ArithmeticException ex) {
+                            System.out.println("Interest not applied. The balance would exceed the largest amount an account can hold.");
                         }
                     } else {
                         System.out.println("Interest application is only for Savings Account.");
                     }
                     break;
                 case "9":
+                    try {
+                        System.out.print("Enter destination account number: ");
+                        long target = Long.parseLong(sc.nextLine().trim());
+                        System.out.print("Enter amount to transfer: ");
+                        long amt = Money.parse(sc.nextLine());
+                        FundTransfer.Result result =
+                                FundTransfer.transfer(account, AccountRegistry.global().find(target), amt);
+                        switch (result) {
+                            case COMPLETED:
+                                System.out.println("₹" + Money.format(amt) + " transferred to account " + target
+                                        + ". New balance: ₹" + Money.format(account.getBalance()));
+                                break;
+                            case INVALID_AMOUNT:
+                                System.out.println("Amount must be positive and fit in the destination balance.");
+                                break;
+                            case SAME_ACCOUNT:
+                                System.out.println("Cannot transfer to the same account.");
+                                break;
+                            case UNKNOWN_ACCOUNT:
+                                System.out.println("Destination account not found.");
+                                break;
+                            case DECLINED:
+                                System.out.println("Transfer declined by fraud checks. Please contact the bank.");
+                                break;
+                            default:
+                                System.out.println("Insufficient funds for this transfer.");
+                                break;
+                        }
+                    } catch (NumberFormatException ex) {
+                        System.out.println("Invalid number.");
+                    }
+                    break;
+                case "10":
                     System.out.println("Exiting. Thank you!");
                     exit = true;
                     break;
@@ -544,59 +898,92 @@ public class BankApp {
         }
     }
 
+    private static void closeQuietly(Persistence persistence) {
+        if (persistence == null) return;
+        try {
+            persistence.close();
+        } catch (IOException | RuntimeException ex) {
+            System.out.println("Failed to save accounts: " + ex.getMessage());
+        }
+    }
+
     public static void main(String[] args) {
         System.out.println("Welcome to the Bank Account Management System (Demo)\n");
-        List<BankAccount> accounts = new ArrayList<>();
-        while (true) {
-            System.out.println("\nMain Menu:");
-            System.out.println("1. Create Account");
-            System.out.println("2. Login to Account");
-            System.out.println("3. Show total accounts created");
-            System.out.println("4. Exit");
-            System.out.print("Choose option: ");
-            String choice = sc.nextLine().trim();
-            switch (choice) {
-                case "1":
-                    BankAccount acc = createAccount();
-                    accounts.add(acc);
-                    break;
-                case "2":
-                    if (accounts.isEmpty()) {
-                        System.out.println("No accounts found. Please create an account first.");
+        AccountRegistry accounts = AccountRegistry.global();
+        Persistence persistence;
+        try {
+            persistence = Persistence.fromSystemProperties(accounts);
+        } catch (IOException | RuntimeException ex) {
+            System.out.println("Could not load saved accounts: " + ex.getMessage());
+            return;
+        }
+        if (persistence != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> closeQuietly(persistence)));
+        }
+        try {
+            Replicator replicator = Replicator.fromSystemProperties(accounts);
+            if (replicator != null) System.out.println("Replicating to followers on port " + replicator.port());
+        } catch (IOException ex) {
+            System.out.println("Could not start replication: " + ex.getMessage());
+        }
+        Aggregates aggregates = new Aggregates(accounts);
+        aggregates.startChecksFromSystemProperties();
+        Metrics.startSnapshotsFromSystemProperties();
+        try {
+            while (true) {
+                System.out.println("\nMain Menu:");
+                System.out.println("1. Create Account");
+                System.out.println("2. Login to Account");
+                System.out.println("3. Show bank totals");
+                System.out.println("4. Show operation metrics");
+                System.out.println("5. Exit");
+                System.out.print("Choose option: ");
+                String choice = sc.nextLine().trim();
+                switch (choice) {
+                    case "1":
+                        createAccount();
                         break;
-                    }
-                    System.out.print("Enter account number to login: ");
-                    String accNumStr = sc.nextLine().trim();
-                    try {
-                        long accNum = Long.parseLong(accNumStr);
-                        BankAccount found = null;
-                        for (BankAccount a : accounts) {
-                            if (a.getAccountNumber() == accNum) {
-                                found = a;
-                                break;
-                            }
-                        }
-                        if (found == null) {
-                            System.out.println("Account not found.");
+                    case "2":
+                        if (accounts.isEmpty()) {
+                            System.out.println("No accounts found. Please create an account first.");
                             break;
                         }
-                        if (authenticate(found)) {
-                            // After successful auth -> show menu
-                            showMenu(found);
+                        System.out.print("Enter account number to login: ");
+                        String accNumStr = sc.nextLine().trim();
+                        try {
+                            long accNum = Long.parseLong(accNumStr);
+                            BankAccount found = accounts.find(accNum);
+                            if (found == null) {
+                                System.out.println("Account not found.");
+                                break;
+                            }
+                            if (authenticate(found)) {
+                                // After successful auth -> show menu
+                                showMenu(found);
+                            }
+                        } catch (NumberFormatException nfe) {
+                            System.out.println("Invalid account number format.");
                         }
-                    } catch (NumberFormatException nfe) {
-                        System.out.println("Invalid account number format.");
-                    }
-                    break;
-                case "3":
-                    System.out.println("Total accounts created: " + BankAccount.getAccountCount());
-                    break;
-                case "4":
-                    System.out.println("Application terminating. Goodbye.");
-                    return;
-                default:
-                    System.out.println("Invalid option. Try again.");
+                        break;
+                    case "3":
+                        System.out.print(aggregates.totals());
+                        break;
+                    case "4":
+                        System.out.print(Metrics.global().dump());
+                        break;
+                    case "5":
+                        closeQuietly(persistence);
+                        System.out.println("Application terminating. Goodbye.");
+                        return;
+                    default:
+                        System.out.println("Invalid option. Try again.");
+                }
             }
+        } catch (UncheckedIOException ex) {
+            // the journal could not save a change (or a saved history could not be read): what is in
+            // memory no longer matches the disk, so stop instead of building on it
+            System.out.println(ex.getMessage() + ": " + ex.getCause().getMessage());
+            System.out.println("Stopping. Changes that were not saved are lost; restart to continue from the saved state.");
         }
     }
 }
\ No newline at end of file
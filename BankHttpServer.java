@@ -0,0 +1,378 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+// HTTP/JSON front end over CommandEngine, built on the JDK's com.sun.net.httpserver. Connections
+// are multiplexed by the server's selector thread, so idle keep-alive connections cost no thread;
+// each request then runs on a virtual thread when the JVM has them (Java 21+) and on a fixed pool
+// of platform threads otherwise.
+//
+//   POST /accounts                         {"type":"SAVINGS|CURRENT","fullName","dob","password","pin",
+//                                           "guardianName","guardianRelation"}  -> 201 {"accountNumber",...}
+//   POST /accounts/{n}/login               {"password","pin"}  -> {"token"}
+//   POST /accounts/{n}/deposit             {"amount","description"}
+//   POST /accounts/{n}/withdraw            {"amount","purpose"}
+//   POST /accounts/{n}/interest            {"years"}
+//   GET  /accounts/{n}/balance
+//   GET  /accounts/{n}/transactions?last=5[&type=WITHDRAW][&from=2026-01-01T00:00][&to=...][&min=500]
+//                                          newest `last` entries matching every given filter; from/to
+//                                          are local date-times (to exclusive), min an amount
+//   GET  /metrics                          operation latencies and failure counts (text, see Metrics)
+//   GET  /totals                           bank-wide account and deposit totals (text, see Aggregates)
+// Everything under /accounts/{n} except login needs "Authorization: Bearer <token>".
+//
+// Configured with system properties:
+//   bank.http.port            listening port (default 8080)
+//   bank.http.backlog         pending connection queue (default 4096)
+//   bank.http.threads         request threads when virtual threads are unavailable (default 256)
+//   bank.http.sessionSeconds  lifetime of login tokens (default 900)
+final class BankHttpServer {
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int MAX_TRANSACTIONS = 1000;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CommandEngine engine = new CommandEngine();
+    private final AccountRegistry registry = AccountRegistry.global();
+    private final Aggregates aggregates;
+    private final long sessionSeconds;
+    private volatile String saveFailure; // set once a change could not be journaled; later requests get 503
+
+    BankHttpServer(InetSocketAddress address, int backlog, int platformThreads, long sessionSeconds,
+                   Aggregates aggregates) throws IOException {
+        this.sessionSeconds = sessionSeconds;
+        this.aggregates = aggregates;
+        this.executor = requestExecutor(platformThreads);
+        this.server = HttpServer.create(address, backlog);
+        server.setExecutor(executor);
+        server.createContext("/accounts", this::handle);
+        server.createContext("/metrics", exchange -> text(exchange, Metrics.global().dump()));
+        server.createContext("/totals", exchange -> text(exchange, aggregates.totals().toString()));
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    // Virtual-thread-per-request when the runtime supports it; looked up reflectively so the
+    // code still compiles and runs on Java 17
+    static ExecutorService requestExecutor(int platformThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(platformThreads, r -> {
+                Thread t = new Thread(r, "http-request");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    static boolean usesVirtualThreads(ExecutorService executor) {
+        return !(executor instanceof ThreadPoolExecutor);
+    }
+
+    // ---- routing ----
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (saveFailure != null) {
+                send(exchange, 503, error("NOT_SAVED", saveFailure));
+                return;
+            }
+            route(exchange);
+        } catch (UncheckedIOException ex) {
+            // the journal could not save a change that is already in memory; refuse everything from
+            // here on so nothing builds on it, and let a restart recover the saved state
+            saveFailure = ex.getMessage() + ": " + ex.getCause().getMessage() + "; restart the server";
+            send(exchange, 503, error("NOT_SAVED", saveFailure));
+        } catch (IllegalArgumentException ex) {
+            // malformed JSON, number or amount
+            send(exchange, 400, error("INVALID_INPUT", ex.getMessage()));
+        } catch (RejectedExecutionException ex) {
+            send(exchange, 503, error("BUSY", "Too many logins in progress, retry later"));
+        } catch (RuntimeException ex) {
+            send(exchange, 500, error("INTERNAL_ERROR", ex.getClass().getSimpleName()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        // "", "accounts"[, number, action]
+        if (parts.length == 2) {
+            if (!method.equals("POST")) {
+                send(exchange, 405, error("METHOD_NOT_ALLOWED", method));
+                return;
+            }
+            createAccount(exchange, Json.parseObject(body(exchange)));
+            return;
+        }
+        if (parts.length != 4) {
+            send(exchange, 404, error("NOT_FOUND", exchange.getRequestURI().getPath()));
+            return;
+        }
+        long accountNumber = Long.parseLong(parts[2]);
+        String action = parts[3];
+        boolean post = method.equals("POST");
+        if (action.equals("login") && post) {
+            login(exchange, accountNumber, Json.parseObject(body(exchange)));
+            return;
+        }
+        BankAccount account = registry.find(accountNumber);
+        if (account == null) {
+            send(exchange, 404, error("UNKNOWN_ACCOUNT", null));
+            return;
+        }
+        if (!CredentialVerifier.global().checkSession(account, bearerToken(exchange))) {
+            send(exchange, 401, error("UNAUTHENTICATED", "Log in and pass the token as Authorization: Bearer"));
+            return;
+        }
+        if (post && action.equals("deposit")) {
+            Map<String, String> req = Json.parseObject(body(exchange));
+            send(exchange, engine.deposit(accountNumber, amount(req), req.get("description")));
+        } else if (post && action.equals("withdraw")) {
+            Map<String, String> req = Json.parseObject(body(exchange));
+            send(exchange, engine.withdraw(accountNumber, amount(req), req.get("purpose")));
+        } else if (post && action.equals("interest")) {
+            Map<String, String> req = Json.parseObject(body(exchange));
+            send(exchange, engine.applyInterest(accountNumber, Integer.parseInt(required(req, "years"))));
+        } else if (!post && action.equals("balance")) {
+            send(exchange, engine.balance(accountNumber));
+        } else if (!post && action.equals("transactions")) {
+            transactions(exchange, account, queryInt(exchange, "last", 5), query(exchange, "type"),
+                    query(exchange, "from"), query(exchange, "to"), query(exchange, "min"));
+        } else {
+            send(exchange, 404, error("NOT_FOUND", action));
+        }
+    }
+
+    private void createAccount(HttpExchange exchange, Map<String, String> req) throws IOException {
+        String type = required(req, "type");
+        if (!type.equals("SAVINGS") && !type.equals("CURRENT")) {
+            throw new IllegalArgumentException("type must be SAVINGS or CURRENT");
+        }
+        CommandEngine.Result result = engine.createAccount(type.equals("SAVINGS"), req.get("fullName"),
+                req.get("dob"), req.get("password"), req.get("pin"), req.get("guardianName"),
+                req.get("guardianRelation"));
+        send(exchange, result.isOk() ? 201 : statusCode(result.status), json(result));
+    }
+
+    private void login(HttpExchange exchange, long accountNumber, Map<String, String> req) throws IOException {
+        String source = exchange.getRemoteAddress().getAddress().getHostAddress();
+        CommandEngine.Result result = engine.authenticate(accountNumber, req.get("password"), req.get("pin"), source);
+        if (result.status == CommandEngine.Status.LOCKED) {
+            exchange.getResponseHeaders().set("Retry-After",
+                    String.valueOf(LoginGuard.global().retryAfterSeconds(accountNumber, source)));
+        }
+        if (!result.isOk()) {
+            send(exchange, result);
+            return;
+        }
+        String token = CredentialVerifier.global().issueSession(registry.find(accountNumber), sessionSeconds);
+        StringBuilder sb = new StringBuilder("{\"token\":");
+        Json.quote(sb, token).append(",\"expiresInSeconds\":").append(sessionSeconds).append('}');
+        send(exchange, 200, sb.toString());
+    }
+
+    private static void transactions(HttpExchange exchange, BankAccount account, int last, String typeName,
+                                     String from, String to, String min) throws IOException {
+        if (last < 0 || last > MAX_TRANSACTIONS) {
+            throw new IllegalArgumentException("last must be between 0 and " + MAX_TRANSACTIONS);
+        }
+        boolean filtered = typeName != null || from != null || to != null || min != null;
+        TransactionType typeFilter = typeName == null ? null : TransactionType.valueOf(typeName);
+        long fromNanos = from == null ? Long.MIN_VALUE : epochNanos(from);
+        long toNanos = to == null ? Long.MAX_VALUE : epochNanos(to);
+        long minAmount = min == null ? Long.MIN_VALUE : Money.parse(min);
+        StringBuilder sb = new StringBuilder(64 + last * 96).append("{\"accountNumber\":")
+                .append(account.getAccountNumber()).append(",\"transactions\":[");
+        account.balanceLock().lock();
+        try {
+            TransactionLog log = account.getTransactions();
+            int[] matches = filtered ? log.find(typeFilter, fromNanos, toNanos, minAmount) : null;
+            int count = filtered ? matches.length : log.size();
+            for (int k = Math.max(0, count - last); k < count; k++) {
+                int i = filtered ? matches[k] : k;
+                TransactionType type = log.typeAt(i);
+                if (sb.charAt(sb.length() - 1) != '[') sb.append(',');
+                sb.append("{\"type\":\"").append(type.name()).append('"');
+                if (type.isMonetary()) Money.appendTo(sb.append(",\"amount\":"), log.amountAt(i));
+                if (log.descriptionAt(i) != null) Json.quote(sb.append(",\"description\":"), log.descriptionAt(i));
+                sb.append(",\"time\":\"").append(TransactionLog.toDateTime(log.timestampAt(i))).append("\"}");
+            }
+        } finally {
+            account.balanceLock().unlock();
+        }
+        send(exchange, 200, sb.append("]}").toString());
+    }
+
+    private static void text(HttpExchange exchange, String text) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, error("METHOD_NOT_ALLOWED", exchange.getRequestMethod()));
+                return;
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ---- helpers ----
+
+    private static String body(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) throw new IllegalArgumentException("Request body too large");
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.startsWith("Bearer ") ? header.substring(7).trim() : null;
+    }
+
+    private static long amount(Map<String, String> req) {
+        return Money.parse(required(req, "amount"));
+    }
+
+    private static String required(Map<String, String> req, String field) {
+        String value = req.get(field);
+        if (value == null) throw new IllegalArgumentException("Missing field: " + field);
+        return value;
+    }
+
+    private static int queryInt(HttpExchange exchange, String name, int defaultValue) {
+        String value = query(exchange, name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static long epochNanos(String dateTime) {
+        try {
+            return TransactionLog.toEpochNanos(LocalDateTime.parse(dateTime));
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Expected a date-time like 2026-01-31T09:30: " + dateTime);
+        }
+    }
+
+    private static String query(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            if (pair.startsWith(name + "=")) return URLDecoder.decode(pair.substring(name.length() + 1), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    private static int statusCode(CommandEngine.Status status) {
+        switch (status) {
+            case OK:
+                return 200;
+            case UNKNOWN_ACCOUNT:
+                return 404;
+            case AUTH_FAILED:
+                return 401;
+            case LOCKED:
+                return 429;
+            case DECLINED:
+                return 403;
+            case INSUFFICIENT_FUNDS:
+            case NOT_SAVINGS:
+                return 409;
+            default:
+                return 400;
+        }
+    }
+
+    private static String json(CommandEngine.Result result) {
+        StringBuilder sb = new StringBuilder(80).append("{\"status\":\"").append(result.status).append('"');
+        if (result.accountNumber != 0) {
+            sb.append(",\"accountNumber\":").append(result.accountNumber);
+            Money.appendTo(sb.append(",\"balance\":"), result.balance);
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String error(String status, String message) {
+        StringBuilder sb = new StringBuilder("{\"status\":\"").append(status).append('"');
+        if (message != null) Json.quote(sb.append(",\"message\":"), message);
+        return sb.append('}').toString();
+    }
+
+    private static void send(HttpExchange exchange, CommandEngine.Result result) throws IOException {
+        send(exchange, statusCode(result.status), json(result));
+    }
+
+    private static void send(HttpExchange exchange, int code, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        AccountRegistry registry = AccountRegistry.global();
+        Persistence persistence = Persistence.fromSystemProperties(registry);
+        Replicator replicator = Replicator.fromSystemProperties(registry);
+        Aggregates aggregates = new Aggregates(registry);
+        aggregates.startChecksFromSystemProperties();
+        BankHttpServer server = new BankHttpServer(new InetSocketAddress(Integer.getInteger("bank.http.port", 8080)),
+                Integer.getInteger("bank.http.backlog", 4096), Integer.getInteger("bank.http.threads", 256),
+                Long.getLong("bank.http.sessionSeconds", 900L), aggregates);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (replicator != null) {
+                try {
+                    replicator.close();
+                } catch (IOException ex) {
+                    System.err.println("Could not stop replication: " + ex.getMessage());
+                }
+            }
+            if (persistence != null) {
+                try {
+                    persistence.close();
+                } catch (IOException ex) {
+                    System.err.println("Could not save accounts: " + ex.getMessage());
+                }
+            }
+        }));
+        Metrics.startSnapshotsFromSystemProperties();
+        server.start();
+        System.out.println("Listening on port " + server.port() + (usesVirtualThreads(server.executor)
+                ? " (virtual thread per request)" : " (platform request threads)"));
+        if (replicator != null) System.out.println("Replicating to followers on port " + replicator.port());
+    }
+}
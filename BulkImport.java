@@ -0,0 +1,375 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Streaming bulk account import for migrations. Each input line is one account, either a CSV
+// record or an NDJSON object with the same field names:
+//   type,fullName,dob,password,pin,guardianName,guardianRelation
+//   SAVINGS,Asha Rao,15/08/1990,Secret@123,4821,,
+//   {"type":"CURRENT","fullName":"Ravi Rao","dob":"01/02/2012","password":"Secret@123","pin":"7310",
+//    "guardianName":"Asha Rao","guardianRelation":"Mother"}
+// type is SAVINGS or CURRENT; minors need the guardian fields. CSV fields may be quoted ("" inside
+// quotes is a quote), and a first line starting with "type," is a header.
+//
+// The import runs as three stages joined by bounded queues, so memory stays flat however large the
+// file is: the calling thread reads lines into batches, worker threads parse and validate each row
+// and hash its password and PIN (the slow part), and one ingest thread creates and registers the
+// accounts, journaling each batch as one atomic group. Rows that fail are written to the rejects
+// file as "lineNumber<TAB>reason", in completion order; the line itself is left out because it
+// holds a plaintext password.
+//
+// Configured with system properties:
+//   bank.import.workers    parse/validate/hash threads (default: available processors)
+//   bank.import.batchSize  rows handed from stage to stage at a time (default 256)
+//   bank.import.queue      batches that may wait between two stages (default 2 per worker)
+// Hashing runs at bank.kdf.cost (see Credentials), which bounds the import rate.
+//
+//   java BulkImport <file> [rejectsFile]    rejects default to <file>.rejects
+final class BulkImport {
+    private static final Batch END = new Batch(0); // one per worker marks the end of the input
+
+    private final AccountRegistry registry = AccountRegistry.global(); // where BankAccount reserves numbers
+    private final int workers;
+    private final int batchSize;
+    private final BlockingQueue<Batch> lines;
+    private final BlockingQueue<Batch> prepared;
+    private volatile Throwable failure; // first error that stops the import; stages then only drain
+    private long imported; // written by the ingest thread, read after it is joined
+    private long rejected;
+
+    static final class Summary {
+        final long rows;
+        final long imported;
+        final long rejected;
+        final long elapsedNanos;
+        final int workers;
+
+        Summary(long rows, long imported, long rejected, long elapsedNanos, int workers) {
+            this.rows = rows;
+            this.imported = imported;
+            this.rejected = rejected;
+            this.elapsedNanos = elapsedNanos;
+            this.workers = workers;
+        }
+
+        double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Imported " + imported + " of " + rows + " rows (" + rejected + " rejected) in "
+                    + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms on " + workers + " workers ("
+                    + Math.round(rowsPerSecond()) + " rows/s)";
+        }
+    }
+
+    // Input lines on the way to the workers, then the rows prepared from them
+    private static final class Batch {
+        final long[] lineNumbers;
+        final String[] lines;
+        final Row[] rows; // null where the row was rejected
+        final String[] reasons;
+        int size;
+
+        Batch(int capacity) {
+            lineNumbers = new long[capacity];
+            lines = new String[capacity];
+            rows = new Row[capacity];
+            reasons = new String[capacity];
+        }
+
+        boolean isFull() {
+            return size == lines.length;
+        }
+
+        void add(long lineNumber, String line) {
+            lineNumbers[size] = lineNumber;
+            lines[size++] = line;
+        }
+    }
+
+    // A validated account with its credentials already hashed
+    private static final class Row {
+        boolean savings;
+        String fullName;
+        String dob;
+        String guardianName;
+        String guardianRelation;
+        String passwordHash;
+        String pinHash;
+    }
+
+    BulkImport(int workers, int batchSize, int queueCapacity) {
+        this.workers = Math.max(1, workers);
+        this.batchSize = Math.max(1, batchSize);
+        this.lines = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.prepared = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    static BulkImport fromSystemProperties() {
+        int workers = Integer.getInteger("bank.import.workers", Runtime.getRuntime().availableProcessors());
+        return new BulkImport(workers, Integer.getInteger("bank.import.batchSize", 256),
+                Integer.getInteger("bank.import.queue", 2 * Math.max(1, workers)));
+    }
+
+    // Imports every row of the input; an instance runs one import
+    public Summary run(Path input, Path rejects) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long rows = 0;
+        List<Thread> threads = new ArrayList<>(workers + 1);
+        try (BufferedWriter rejectsOut = Files.newBufferedWriter(rejects, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < workers; i++) {
+                threads.add(start(this::prepareLoop, "import-worker-" + (i + 1)));
+            }
+            threads.add(start(() -> ingestLoop(rejectsOut), "import-ingest"));
+            try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                Batch batch = new Batch(batchSize);
+                long lineNumber = 0;
+                String line;
+                while (failure == null && (line = in.readLine()) != null) {
+                    lineNumber++;
+                    if (line.trim().isEmpty() || (lineNumber == 1 && isHeader(line))) continue;
+                    batch.add(lineNumber, line);
+                    rows++;
+                    if (batch.isFull()) {
+                        lines.put(batch);
+                        batch = new Batch(batchSize);
+                    }
+                }
+                if (batch.size > 0) lines.put(batch);
+            } finally {
+                for (int i = 0; i < workers; i++) {
+                    lines.put(END);
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            }
+        }
+        Throwable error = failure;
+        if (error instanceof IOException) throw (IOException) error;
+        if (error instanceof RuntimeException) throw (RuntimeException) error;
+        if (error != null) throw new IllegalStateException(error);
+        return new Summary(rows, imported, rejected, System.nanoTime() - start, workers);
+    }
+
+    private static Thread start(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private void fail(Throwable error) {
+        synchronized (this) {
+            if (failure == null) failure = error;
+        }
+    }
+
+    // ---- stages ----
+
+    private void prepareLoop() {
+        try {
+            Batch batch;
+            while ((batch = lines.take()) != END) {
+                if (failure == null) {
+                    try {
+                        prepare(batch);
+                    } catch (RuntimeException ex) {
+                        fail(ex);
+                    }
+                }
+                prepared.put(batch);
+            }
+            prepared.put(END);
+        } catch (InterruptedException ex) {
+            fail(ex);
+        }
+    }
+
+    private void prepare(Batch batch) {
+        for (int i = 0; i < batch.size; i++) {
+            try {
+                batch.rows[i] = prepare(batch.lines[i]);
+            } catch (IllegalArgumentException ex) {
+                batch.reasons[i] = ex.getMessage();
+            }
+            batch.lines[i] = null; // holds a plaintext password; not needed any more
+        }
+    }
+
+    private void ingestLoop(BufferedWriter rejectsOut) {
+        try {
+            int ended = 0;
+            while (ended < workers) {
+                Batch batch = prepared.take();
+                if (batch == END) {
+                    ended++;
+                } else if (failure == null) {
+                    try {
+                        ingest(batch, rejectsOut);
+                    } catch (IOException | RuntimeException ex) {
+                        fail(ex);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            fail(ex);
+        }
+    }
+
+    // Creates the batch's accounts and registers them as one atomic journal group
+    private void ingest(Batch batch, BufferedWriter rejectsOut) throws IOException {
+        BankAccount[] accounts = new BankAccount[batch.size];
+        int count = 0;
+        for (int i = 0; i < batch.size; i++) {
+            Row row = batch.rows[i];
+            if (row == null) {
+                rejectsOut.append(Long.toString(batch.lineNumbers[i])).append('\t').append(batch.reasons[i]);
+                rejectsOut.newLine();
+                rejected++;
+                continue;
+            }
+            BankAccount account = row.savings ? new SavingsAccount(row.fullName, row.dob)
+                    : new CurrentAccount(row.fullName, row.dob);
+            if (account.getAge() < 18) account.setGuardian(row.guardianName.trim(), row.guardianRelation.trim());
+            account.setCredentialHashes(row.passwordHash, row.pinHash);
+            accounts[count++] = account;
+        }
+        // nobody else can reach these accounts before they are registered, so lock order does not matter
+        int locked = 0;
+        try {
+            while (locked < count) {
+                accounts[locked++].balanceLock().lock();
+            }
+            AccountEvents.beginAtomic();
+            try {
+                for (int i = 0; i < count; i++) {
+                    registry.register(accounts[i]);
+                    accounts[i].record(TransactionType.ACCOUNT_CREATED);
+                }
+            } finally {
+                AccountEvents.endAtomic();
+            }
+        } finally {
+            while (locked > 0) {
+                accounts[--locked].balanceLock().unlock();
+            }
+        }
+        AccountEvents.afterChanges();
+        imported += count;
+    }
+
+    // ---- row format ----
+
+    private static boolean isHeader(String line) {
+        return line.regionMatches(true, 0, "type,", 0, 5);
+    }
+
+    // Parses and validates one line; IllegalArgumentException carries the reject reason
+    static Row prepare(String line) {
+        String type;
+        String fullName;
+        String dob;
+        String password;
+        String pin;
+        String guardianName;
+        String guardianRelation;
+        if (line.trim().startsWith("{")) {
+            Map<String, String> fields;
+            try {
+                fields = Json.parseObject(line);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("malformed JSON: " + ex.getMessage());
+            }
+            type = fields.get("type");
+            fullName = fields.get("fullName");
+            dob = fields.get("dob");
+            password = fields.get("password");
+            pin = fields.get("pin");
+            guardianName = fields.get("guardianName");
+            guardianRelation = fields.get("guardianRelation");
+        } else {
+            String[] fields = csvFields(line);
+            if (fields.length < 5) throw new IllegalArgumentException("expected at least 5 CSV fields");
+            type = fields[0];
+            fullName = fields[1];
+            dob = fields[2];
+            password = fields[3];
+            pin = fields[4];
+            guardianName = fields.length > 5 ? fields[5] : null;
+            guardianRelation = fields.length > 6 ? fields[6] : null;
+        }
+        Row row = new Row();
+        if ("SAVINGS".equalsIgnoreCase(type)) {
+            row.savings = true;
+        } else if (!"CURRENT".equalsIgnoreCase(type)) {
+            throw new IllegalArgumentException("type must be SAVINGS or CURRENT");
+        }
+        String problem = Validation.accountProblem(fullName, dob, password, pin, guardianName, guardianRelation);
+        if (problem != null) throw new IllegalArgumentException(problem);
+        row.fullName = fullName;
+        row.dob = dob;
+        row.guardianName = guardianName;
+        row.guardianRelation = guardianRelation;
+        row.passwordHash = Credentials.hash(password);
+        row.pinHash = Credentials.hash(pin);
+        return row;
+    }
+
+    static String[] csvFields(String line) {
+        List<String> fields = new ArrayList<>(8);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("unterminated quoted CSV field");
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: java BulkImport <file> [rejectsFile]");
+            return;
+        }
+        Path input = Paths.get(args[0]);
+        Path rejects = Paths.get(args.length > 1 ? args[1] : args[0] + ".rejects");
+        AccountRegistry registry = AccountRegistry.global();
+        Persistence persistence = Persistence.fromSystemProperties(registry);
+        try {
+            System.out.println(fromSystemProperties().run(input, rejects));
+        } finally {
+            if (persistence != null) persistence.close();
+        }
+    }
+}
@@ -0,0 +1,642 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Headless access to the banking operations: typed commands in, typed results out, and no console
+// I/O. The menu in BankApp stays for interactive use; scripts and bulk jobs use this instead.
+// Commands other than Authenticate do not check credentials, so callers are trusted.
+//
+// replay() runs a command stream in a compact tab-separated format, one command per line:
+//   N  S|C  fullName  dd/MM/yyyy  password  pin  [guardianName  guardianRelation]   create account
+//   A  account  password  pin               authenticate
+//   D  account  amount  [description]       deposit
+//   W  account  amount  [purpose]           withdraw
+//   T  fromAccount  toAccount  amount       transfer
+//   B  account                              balance inquiry
+//   P  account  newPassword                 change password
+//   K  account  newPin                      change PIN
+//   I  account  years                       apply simple interest (savings only)
+// Amounts are in rupees as accepted by Money.parse. Blank lines and lines starting with # are skipped.
+//
+//   java CommandEngine [file]    replays file (default stdin) and prints a summary
+final class CommandEngine {
+    // Commands applied per atomic journal group during replay
+    private static final int GROUP_SIZE = Math.max(1, Integer.getInteger("bank.replay.groupSize", 1024));
+
+    enum Status {
+        OK,
+        INVALID_INPUT,
+        INVALID_AMOUNT,
+        INSUFFICIENT_FUNDS,
+        UNKNOWN_ACCOUNT,
+        SAME_ACCOUNT,
+        AUTH_FAILED,
+        NOT_SAVINGS,
+        LOCKED, // refused by LoginGuard: account locked, too many failures from the source, or attempts pending
+        DECLINED // refused by RiskScorer
+    }
+
+    static final class Result {
+        final Status status;
+        final long accountNumber; // account acted on (the new one for CreateAccount), 0 if unknown
+        final long balance; // that account's balance afterwards
+
+        Result(Status status, long accountNumber, long balance) {
+            this.status = status;
+            this.accountNumber = accountNumber;
+            this.balance = balance;
+        }
+
+        boolean isOk() {
+            return status == Status.OK;
+        }
+
+        @Override
+        public String toString() {
+            return status + (accountNumber == 0 ? "" : " " + accountNumber + " " + Money.format(balance));
+        }
+    }
+
+    abstract static class Command {
+        abstract Result execute(CommandEngine engine);
+
+        // Existing accounts the command touches, 0 for none; replay locks them for the command's group
+        long account() {
+            return 0;
+        }
+
+        long counterparty() {
+            return 0;
+        }
+
+        // True if the command runs the password KDF; replay runs it with no locks held
+        boolean hashes() {
+            return false;
+        }
+    }
+
+    static final class CreateAccount extends Command {
+        final boolean savings;
+        final String fullName;
+        final String dob;
+        final String password;
+        final String pin;
+        final String guardianName; // required when the holder is under 18
+        final String guardianRelation;
+
+        CreateAccount(boolean savings, String fullName, String dob, String password, String pin,
+                      String guardianName, String guardianRelation) {
+            this.savings = savings;
+            this.fullName = fullName;
+            this.dob = dob;
+            this.password = password;
+            this.pin = pin;
+            this.guardianName = guardianName;
+            this.guardianRelation = guardianRelation;
+        }
+
+        @Override
+        Result execute(CommandEngine engine) {
+            return engine.createAccount(savings, fullName, dob, password, pin, guardianName, guardianRelation);
+        }
+
+        @Override
+        boolean hashes() {
+            return true;
+        }
+    }
+
+    static final class Authenticate extends Command {
+        final long accountNumber;
+        final String password;
+        final String pin;
+
+        Authenticate(long accountNumber, String password, String pin) {
+            this.accountNumber = accountNumber;
+            this.password = password;
+            this.pin = pin;
+        }
+
+        @Override
+        Result execute(CommandEngine engine) {
+            return engine.authenticate(accountNumber, password, pin);
+        }
+
+        @Override
+        long account() {
+            return accountNumber;
+        }
+
+        @Override
+        boolean hashes() {
+            return true;
+        }
+    }
+
+    static final class Deposit extends Command {
+        final long accountNumber;
+        final long amount;
+        final String description;
+
+        Deposit(long accountNumber, long amount, String description) {
+            this.accountNumber = accountNumber;
+            this.amount = amount;
+            this.description = description;
+        }
+
+        @Override
+        Result execute(CommandEngine engine) {
+            return engine.deposit(accountNumber, amount, description);
+        }
+
+        @Override
+        long account() {
+            return accountNumber;
+        }
+    }
+
+    static final class Withdraw extends Command {
+        final long accountNumber;
+        final long amount;
+        final String purpose;
+
+        Withdraw(long accountNumber, long amount, String purpose) {
+            this.accountNumber = accountNumber;
+            this.amount = amount;
+            this.purpose = purpose;
+        }
+
+        @Override
+        Result execute(CommandEngine engine) {
+            return engine.withdraw(accountNumber, amount, purpose);
+        }
+
+        @Override
+        long account() {
+            return accountNumber;
+        }
+    }
+
+    static final class Transfer extends Command {
+        final long from;
+        final long to;
+        final long amount;
+
+        Transfer(long from, long to, long amount) {
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+        }
+
+        @Override
+        Result execute(CommandEngine engine) {
+            return engine.transfer(from, to, amount);
+        }
+
+        @Override
+        long account() {
+            return from;
+        }
+
+        @Override
+        long counterparty() {
+            return to;
+        }
+    }
+
+    static final class Balance extends Command {
+        final long accountNumber;
+
+        Balance(long accountNumber) {
+            this.accountNumber = accountNumber;
+        }
+
+        @Override
+        Result execute(CommandEngine engine) {
+            return engine.balance(accountNumber);
+        }
+
+        @Override
+        long account() {
+            return accountNumber;
+        }
+    }
+
+    static final class ChangePassword extends Command {
+        final long accountNumber;
+        final String newPassword;
+
+        ChangePassword(long accountNumber, String newPassword) {
+            this.accountNumber = accountNumber;
+            this.newPassword = newPassword;
+        }
+
+        @Override
+        Result execute(CommandEngine engine) {
+            return engine.changePassword(accountNumber, newPassword);
+        }
+
+        @Override
+        long account() {
+            return accountNumber;
+        }
+
+        @Override
+        boolean hashes() {
+            return true;
+        }
+    }
+
+    static final class ChangePin extends Command {
+        final long accountNumber;
+        final String newPin;
+
+        ChangePin(long accountNumber, String newPin) {
+            this.accountNumber = accountNumber;
+            this.newPin = newPin;
+        }
+
+        @Override
+        Result execute(CommandEngine engine) {
+            return engine.changePin(accountNumber, newPin);
+        }
+
+        @Override
+        long account() {
+            return accountNumber;
+        }
+
+        @Override
+        boolean hashes() {
+            return true;
+        }
+    }
+
+    static final class ApplyInterest extends Command {
+        final long accountNumber;
+        final int years;
+
+        ApplyInterest(long accountNumber, int years) {
+            this.accountNumber = accountNumber;
+            this.years = years;
+        }
+
+        @Override
+        Result execute(CommandEngine engine) {
+            return engine.applyInterest(accountNumber, years);
+        }
+
+        @Override
+        long account() {
+            return accountNumber;
+        }
+    }
+
+    // Command counts by status for one replay
+    static final class Summary {
+        final long[] counts = new long[Status.values().length];
+        long commands;
+        long elapsedNanos;
+
+        long count(Status status) {
+            return counts[status.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Replayed ").append(commands).append(" commands in ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)).append(" ms (")
+                    .append(elapsedNanos == 0 ? 0 : Math.round(commands * 1e9 / elapsedNanos)).append(" commands/s)");
+            for (Status status : Status.values()) {
+                if (counts[status.ordinal()] > 0) {
+                    sb.append("\n  ").append(status).append(": ").append(counts[status.ordinal()]);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private final AccountRegistry registry = AccountRegistry.global(); // where BankAccount reserves numbers
+
+    public Result execute(Command command) {
+        return command.execute(this);
+    }
+
+    // ---- operations ----
+
+    public Result createAccount(boolean savings, String fullName, String dob, String password, String pin,
+                                String guardianName, String guardianRelation) {
+        if (Validation.accountProblem(fullName, dob, password, pin, guardianName, guardianRelation) != null) {
+            return failed(Status.INVALID_INPUT);
+        }
+        boolean minor = BankApp.ageFromDob(dob) < 18;
+        BankAccount account = savings ? new SavingsAccount(fullName, dob) : new CurrentAccount(fullName, dob);
+        if (minor) account.setGuardian(guardianName.trim(), guardianRelation.trim());
+        account.setPassword(password);
+        account.setPin(pin);
+        registry.register(account);
+        account.record(TransactionType.ACCOUNT_CREATED);
+        return ok(account);
+    }
+
+    public Result authenticate(long accountNumber, String password, String pin) {
+        return authenticate(accountNumber, password, pin, null);
+    }
+
+    // source identifies the client for per-source rate limiting (e.g. its address), null for none
+    public Result authenticate(long accountNumber, String password, String pin, String source) {
+        BankAccount account = registry.find(accountNumber);
+        if (account == null) return failed(Status.UNKNOWN_ACCOUNT);
+        LoginGuard guard = LoginGuard.global();
+        if (guard.check(account, source) != LoginGuard.Decision.ALLOWED) return failed(Status.LOCKED);
+        boolean verified;
+        try {
+            verified = CredentialVerifier.global().verify(account, password, pin);
+        } catch (RuntimeException ex) {
+            guard.cancelled(account);
+            throw ex;
+        }
+        if (!verified) {
+            guard.failed(account, source);
+            return failed(Status.AUTH_FAILED);
+        }
+        guard.succeeded(account, source);
+        return ok(account);
+    }
+
+    public Result deposit(long accountNumber, long amount, String description) {
+        BankAccount account = registry.find(accountNumber);
+        if (account == null) return failed(Status.UNKNOWN_ACCOUNT);
+        if (amount <= 0) return failed(Status.INVALID_AMOUNT, account);
+        try {
+            if (!account.credit(amount, TransactionType.DEPOSIT, description)) return failed(Status.DECLINED, account);
+        } catch (ArithmeticException ex) {
+            return failed(Status.INVALID_AMOUNT, account); // the balance would overflow
+        }
+        return ok(account);
+    }
+
+    public Result withdraw(long accountNumber, long amount, String purpose) {
+        BankAccount account = registry.find(accountNumber);
+        if (account == null) return failed(Status.UNKNOWN_ACCOUNT);
+        if (amount <= 0) return failed(Status.INVALID_AMOUNT, account);
+        switch (account.debit(amount, account.balanceFloor(), TransactionType.WITHDRAW, purpose)) {
+            case INSUFFICIENT_FUNDS:
+                return failed(Status.INSUFFICIENT_FUNDS, account);
+            case DECLINED:
+                return failed(Status.DECLINED, account);
+            default:
+                return ok(account);
+        }
+    }
+
+    public Result transfer(long fromAccount, long toAccount, long amount) {
+        BankAccount from = registry.find(fromAccount);
+        switch (FundTransfer.transfer(from, registry.find(toAccount), amount)) {
+            case COMPLETED:
+                return ok(from);
+            case INVALID_AMOUNT:
+                return failed(Status.INVALID_AMOUNT, from);
+            case SAME_ACCOUNT:
+                return failed(Status.SAME_ACCOUNT, from);
+            case UNKNOWN_ACCOUNT:
+                return failed(Status.UNKNOWN_ACCOUNT);
+            case DECLINED:
+                return failed(Status.DECLINED, from);
+            default:
+                return failed(Status.INSUFFICIENT_FUNDS, from);
+        }
+    }
+
+    public Result balance(long accountNumber) {
+        BankAccount account = registry.find(accountNumber);
+        if (account == null) return failed(Status.UNKNOWN_ACCOUNT);
+        account.record(TransactionType.BALANCE_INQUIRY);
+        return ok(account);
+    }
+
+    public Result changePassword(long accountNumber, String newPassword) {
+        BankAccount account = registry.find(accountNumber);
+        if (account == null) return failed(Status.UNKNOWN_ACCOUNT);
+        if (!BankApp.isValidPassword(newPassword)) return failed(Status.INVALID_INPUT, account);
+        account.setPassword(newPassword);
+        account.record(TransactionType.PASSWORD_CHANGED);
+        return ok(account);
+    }
+
+    public Result changePin(long accountNumber, String newPin) {
+        BankAccount account = registry.find(accountNumber);
+        if (account == null) return failed(Status.UNKNOWN_ACCOUNT);
+        if (!BankApp.isValidPin(newPin, account.getDob())) return failed(Status.INVALID_INPUT, account);
+        account.setPin(newPin);
+        account.record(TransactionType.PIN_CHANGED);
+        return ok(account);
+    }
+
+    public Result applyInterest(long accountNumber, int years) {
+        BankAccount account = registry.find(accountNumber);
+        if (account == null) return failed(Status.UNKNOWN_ACCOUNT);
+        if (!(account instanceof SavingsAccount)) return failed(Status.NOT_SAVINGS, account);
+        if (years <= 0) return failed(Status.INVALID_INPUT, account);
+        try {
+            ((SavingsAccount) account).accrueInterest(years, years + " years");
+        } catch (ArithmeticException ex) {
+            return failed(Status.INVALID_AMOUNT, account);
+        }
+        return ok(account);
+    }
+
+    private static Result ok(BankAccount account) {
+        return new Result(Status.OK, account.getAccountNumber(), account.getBalance());
+    }
+
+    private static Result failed(Status status) {
+        return new Result(status, 0, 0);
+    }
+
+    private static Result failed(Status status, BankAccount account) {
+        return new Result(status, account.getAccountNumber(), account.getBalance());
+    }
+
+    // ---- line format ----
+
+    // Parses one line of the replay format; returns null for blank and comment lines
+    static Command parse(String line) {
+        if (line.isEmpty() || line.charAt(0) == '#') return null;
+        String[] f = line.split("\t");
+        if (f[0].length() != 1) throw new IllegalArgumentException("Unknown command: " + f[0]);
+        switch (f[0].charAt(0)) {
+            case 'N':
+                require(f, 6);
+                if (!f[1].equals("S") && !f[1].equals("C")) {
+                    throw new IllegalArgumentException("Account type must be S or C");
+                }
+                return new CreateAccount(f[1].equals("S"), f[2], f[3], f[4], f[5],
+                        f.length > 6 ? f[6] : null, f.length > 7 ? f[7] : null);
+            case 'A':
+                require(f, 4);
+                return new Authenticate(Long.parseLong(f[1]), f[2], f[3]);
+            case 'D':
+                require(f, 3);
+                return new Deposit(Long.parseLong(f[1]), Money.parse(f[2]), f.length > 3 ? f[3] : null);
+            case 'W':
+                require(f, 3);
+                return new Withdraw(Long.parseLong(f[1]), Money.parse(f[2]), f.length > 3 ? f[3] : null);
+            case 'T':
+                require(f, 4);
+                return new Transfer(Long.parseLong(f[1]), Long.parseLong(f[2]), Money.parse(f[3]));
+            case 'B':
+                require(f, 2);
+                return new Balance(Long.parseLong(f[1]));
+            case 'P':
+                require(f, 3);
+                return new ChangePassword(Long.parseLong(f[1]), f[2]);
+            case 'K':
+                require(f, 3);
+                return new ChangePin(Long.parseLong(f[1]), f[2]);
+            case 'I':
+                require(f, 3);
+                return new ApplyInterest(Long.parseLong(f[1]), Integer.parseInt(f[2]));
+            default:
+                throw new IllegalArgumentException("Unknown command: " + f[0]);
+        }
+    }
+
+    private static void require(String[] fields, int count) {
+        if (fields.length < count) throw new IllegalArgumentException("Expected " + count + " fields for " + fields[0]);
+    }
+
+    // ---- replay ----
+
+    // Runs every command in the stream. Malformed lines count as INVALID_INPUT and are skipped.
+    // Commands run in groups: the accounts a group touches stay locked until all of the group's
+    // events have gone to the journal as one atomic record, and the durability wait comes once per
+    // group, after its locks are released, instead of once per command. An account that another
+    // thread holds ends the group early rather than being waited for while other locks are held, so
+    // lock order never matters. Commands that hash a password or PIN (account creation, login and
+    // credential changes) end the group and run on their own, so the KDF never runs while the
+    // group's accounts are locked.
+    public Summary replay(BufferedReader in) throws IOException {
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        Group group = new Group();
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                Command command;
+                try {
+                    command = parse(line);
+                } catch (IllegalArgumentException ex) {
+                    summary.counts[Status.INVALID_INPUT.ordinal()]++;
+                    summary.commands++;
+                    continue;
+                }
+                if (command == null) continue;
+                Result result;
+                if (command.hashes()) {
+                    group.close();
+                    result = command.execute(this);
+                } else {
+                    BankAccount a = registry.find(command.account());
+                    BankAccount b = registry.find(command.counterparty());
+                    if (!group.hold(a) || !group.hold(b)) {
+                        group.close();
+                        group.lockInOrder(a, b);
+                    }
+                    group.open();
+                    result = command.execute(this);
+                    if (++group.commands == GROUP_SIZE) group.close();
+                }
+                summary.counts[result.status.ordinal()]++;
+                summary.commands++;
+            }
+        } finally {
+            group.close();
+        }
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    // Locks held by the replay thread for the current atomic group
+    private static final class Group {
+        private BankAccount[] held = new BankAccount[64];
+        private int count;
+        private int commands;
+        private boolean open;
+
+        // True if the account (null for none) is now held; never blocks
+        boolean hold(BankAccount account) {
+            if (account == null || account.balanceLock().isHeldByCurrentThread()) return true;
+            if (!account.balanceLock().tryLock()) return false;
+            add(account);
+            return true;
+        }
+
+        // Blocking acquire of up to two accounts in account number order; only called with nothing held
+        void lockInOrder(BankAccount a, BankAccount b) {
+            if (a != null && b != null && b.getAccountNumber() < a.getAccountNumber()) {
+                BankAccount t = a;
+                a = b;
+                b = t;
+            }
+            if (a != null) {
+                a.balanceLock().lock();
+                add(a);
+            }
+            if (b != null && b != a) {
+                b.balanceLock().lock();
+                add(b);
+            }
+        }
+
+        void open() {
+            if (!open) {
+                AccountEvents.beginAtomic();
+                open = true;
+            }
+        }
+
+        void close() {
+            try {
+                if (open) {
+                    open = false;
+                    AccountEvents.endAtomic();
+                }
+            } finally {
+                while (count > 0) {
+                    held[--count].balanceLock().unlock();
+                    held[count] = null;
+                }
+                commands = 0;
+            }
+            AccountEvents.afterChanges();
+        }
+
+        private void add(BankAccount account) {
+            if (count == held.length) held = Arrays.copyOf(held, count * 2);
+            held[count++] = account;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        AccountRegistry registry = AccountRegistry.global();
+        Persistence persistence = Persistence.fromSystemProperties(registry);
+        Metrics.startSnapshotsFromSystemProperties();
+        try (BufferedReader in = args.length > 0
+                ? Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)
+                : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            System.out.println(new CommandEngine().replay(in));
+        } catch (UncheckedIOException ex) {
+            // a change could not be journaled; stop there, a restart recovers what was saved
+            System.out.println("Replay stopped. " + ex.getMessage() + ": " + ex.getCause().getMessage());
+        } finally {
+            if (persistence != null) persistence.close();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Checks a password and PIN against an account's stored hashes. The slow KDF work runs on a small
+// bounded pool so request threads are never all busy hashing; when the pool and its queue are full
+// the returned future fails with RejectedExecutionException instead of queueing without limit.
+// A successful check is remembered for a short time as an HMAC of the presented credentials (under
+// a per-process random key), so repeat operations with the same credentials skip the KDF. Failed
+// checks are never cached, and a cached entry stops matching as soon as the account's credentials change.
+//
+// Configured with system properties:
+//   bank.auth.threads     verification threads (default: available processors)
+//   bank.auth.queue       verifications that may wait for a thread (default 256)
+//   bank.auth.ttlSeconds  how long a successful check is remembered (default 120, 0 disables the cache)
+//   bank.auth.maxCached   accounts remembered at most, least recently used dropped first (default 10000)
+class CredentialVerifier {
+    private static final CredentialVerifier GLOBAL = new CredentialVerifier(
+            Integer.getInteger("bank.auth.threads", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("bank.auth.queue", 256),
+            Long.getLong("bank.auth.ttlSeconds", 120L),
+            Integer.getInteger("bank.auth.maxCached", 10_000));
+
+    private final ThreadPoolExecutor pool;
+    private final long ttlNanos;
+    private final Map<Long, Verified> cache;
+    private final ThreadLocal<Mac> macs;
+
+    // A remembered success: which credentials it was for and until when
+    private static final class Verified {
+        final String passwordHash;
+        final String pinHash;
+        final byte[] mac;
+        final long expiresAt;
+
+        Verified(String passwordHash, String pinHash, byte[] mac, long expiresAt) {
+            this.passwordHash = passwordHash;
+            this.pinHash = pinHash;
+            this.mac = mac;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    CredentialVerifier(int threads, int queueCapacity, long ttlSeconds, final int maxCached) {
+        AtomicInteger ids = new AtomicInteger();
+        pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "credential-verifier-" + ids.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, ttlSeconds));
+        cache = new LinkedHashMap<Long, Verified>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Verified> eldest) {
+                return size() > maxCached;
+            }
+        };
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        final SecretKeySpec macKey = new SecretKeySpec(key, "HmacSHA256");
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(macKey);
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("HmacSHA256 not available", ex);
+            }
+        });
+    }
+
+    public static CredentialVerifier global() {
+        return GLOBAL;
+    }
+
+    // Completes with the result; a cache hit completes immediately on the calling thread
+    public CompletableFuture<Boolean> verifyAsync(BankAccount account, String password, String pin) {
+        String passwordHash = account.getPasswordHash();
+        String pinHash = account.getPinHash();
+        byte[] mac = ttlNanos > 0 && password != null && pin != null ? mac(account, password, pin) : null;
+        if (mac != null && isCached(account.getAccountNumber(), passwordHash, pinHash, mac)) {
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            // both hashes are always checked so a wrong PIN costs as much as a wrong password
+            boolean ok = Credentials.verify(password, passwordHash) & Credentials.verify(pin, pinHash);
+            if (ok && mac != null) remember(account.getAccountNumber(), passwordHash, pinHash, mac);
+            return ok;
+        }, pool);
+    }
+
+    // Blocking form for callers that have nothing else to do meanwhile, such as the console
+    public boolean verify(BankAccount account, String password, String pin) {
+        long start = Metrics.start();
+        try {
+            return verifyAsync(account, password, pin).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        } finally {
+            Metrics.global().record(Metrics.Operation.AUTHENTICATE, account, start);
+        }
+    }
+
+    // Stateless session token "<account>.<expiresEpochSeconds>.<mac>" for an account whose
+    // credentials were just verified. The MAC also covers the account's current credential hashes,
+    // so changing the password or PIN invalidates every token issued before; nothing is stored.
+    public String issueSession(BankAccount account, long ttlSeconds) {
+        long expires = System.currentTimeMillis() / 1000 + ttlSeconds;
+        return account.getAccountNumber() + "." + expires + "."
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(sessionMac(account, expires));
+    }
+
+    public boolean checkSession(BankAccount account, String token) {
+        if (token == null) return false;
+        int first = token.indexOf('.');
+        int second = token.indexOf('.', first + 1);
+        if (first < 0 || second < 0) return false;
+        try {
+            if (Long.parseLong(token.substring(0, first)) != account.getAccountNumber()) return false;
+            long expires = Long.parseLong(token.substring(first + 1, second));
+            if (expires < System.currentTimeMillis() / 1000) return false;
+            byte[] mac = Base64.getUrlDecoder().decode(token.substring(second + 1));
+            return MessageDigest.isEqual(mac, sessionMac(account, expires));
+        } catch (IllegalArgumentException ex) {
+            return false; // malformed number or Base64
+        }
+    }
+
+    // Drops the remembered success for an account, e.g. on logout
+    public void forget(long accountNumber) {
+        synchronized (cache) {
+            cache.remove(accountNumber);
+        }
+    }
+
+    private boolean isCached(long accountNumber, String passwordHash, String pinHash, byte[] mac) {
+        Verified verified;
+        synchronized (cache) {
+            verified = cache.get(accountNumber);
+            if (verified != null && System.nanoTime() - verified.expiresAt >= 0) {
+                cache.remove(accountNumber);
+                return false;
+            }
+        }
+        return verified != null && verified.passwordHash.equals(passwordHash) && verified.pinHash.equals(pinHash)
+                && MessageDigest.isEqual(verified.mac, mac);
+    }
+
+    private void remember(long accountNumber, String passwordHash, String pinHash, byte[] mac) {
+        Verified verified = new Verified(passwordHash, pinHash, mac, System.nanoTime() + ttlNanos);
+        synchronized (cache) {
+            cache.put(accountNumber, verified);
+        }
+    }
+
+    private byte[] mac(BankAccount account, String password, String pin) {
+        Mac mac = macs.get();
+        updateLong(mac, account.getAccountNumber());
+        mac.update(password.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0); // separator, so ("ab","c") and ("a","bc") differ
+        return mac.doFinal(pin.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private byte[] sessionMac(BankAccount account, long expires) {
+        Mac mac = macs.get();
+        mac.update((byte) 1); // domain separation from the credential cache MACs
+        updateLong(mac, account.getAccountNumber());
+        updateLong(mac, expires);
+        String passwordHash = account.getPasswordHash();
+        String pinHash = account.getPinHash();
+        mac.update(String.valueOf(passwordHash).getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(String.valueOf(pinHash).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void updateLong(Mac mac, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            mac.update((byte) (value >>> shift));
+        }
+    }
+}
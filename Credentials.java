@@ -0,0 +1,96 @@
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Salted, deliberately slow hashes for passwords and PINs. A stored credential is encoded as
+//   pbkdf2-sha256$<cost>$<salt>$<key>
+// with PBKDF2-HMAC-SHA256 run for 2^cost iterations, a 16-byte random salt and a 24-byte derived
+// key (both Base64). The cost is stored with each hash, so raising -Dbank.kdf.cost (default 16)
+// only affects credentials set afterwards; existing hashes keep verifying at their own cost.
+final class Credentials {
+    static final int SALT_BYTES = 16;
+    static final int KEY_BYTES = 24;
+    static final int MIN_COST = 10;
+    static final int MAX_COST = 24;
+    static final int COST = Math.max(MIN_COST, Math.min(MAX_COST, Integer.getInteger("bank.kdf.cost", 16)));
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private Credentials() {
+    }
+
+    public static String hash(String secret) {
+        return hash(secret, COST);
+    }
+
+    public static String hash(String secret, int cost) {
+        if (cost < MIN_COST || cost > MAX_COST) throw new IllegalArgumentException("Invalid KDF cost: " + cost);
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return encode(cost, salt, derive(secret, salt, cost));
+    }
+
+    // True if secret matches the encoded hash. The key comparison takes the same time wherever the
+    // first differing byte is; a malformed or missing hash never matches.
+    public static boolean verify(String secret, String encoded) {
+        if (secret == null || !isHash(encoded)) return false;
+        int cost = cost(encoded);
+        if (cost < MIN_COST || cost > MAX_COST) return false;
+        return MessageDigest.isEqual(derive(secret, salt(encoded), cost), key(encoded));
+    }
+
+    static boolean isHash(String encoded) {
+        return encoded != null && encoded.startsWith(PREFIX);
+    }
+
+    // Hashes values written before credentials were hashed; already hashed values pass through
+    static String upgrade(String stored) {
+        return stored == null || isHash(stored) ? stored : hash(stored);
+    }
+
+    static int cost(String encoded) {
+        int start = PREFIX.length();
+        return Integer.parseInt(encoded.substring(start, encoded.indexOf('$', start)));
+    }
+
+    static byte[] salt(String encoded) {
+        return Base64.getDecoder().decode(part(encoded, 2));
+    }
+
+    static byte[] key(String encoded) {
+        return Base64.getDecoder().decode(part(encoded, 3));
+    }
+
+    // Rebuilds the encoded form from its parts
+    static String encode(int cost, byte[] salt, byte[] key) {
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + cost + '$' + b64.encodeToString(salt) + '$' + b64.encodeToString(key);
+    }
+
+    static byte[] derive(String secret, byte[] salt, int cost) {
+        char[] chars = secret.toCharArray();
+        PBEKeySpec spec = new PBEKeySpec(chars, salt, 1 << cost, KEY_BYTES * 8);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 not available", ex);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    // The n-th '$'-separated field of an encoded hash (0 is the algorithm)
+    private static String part(String encoded, int n) {
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            start = encoded.indexOf('$', start) + 1;
+        }
+        int end = encoded.indexOf('$', start);
+        return end < 0 ? encoded.substring(start) : encoded.substring(start, end);
+    }
+}
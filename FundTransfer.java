@@ -0,0 +1,124 @@
+import java.util.Arrays;
+
+// Moves money between accounts atomically. Both accounts' balance locks are held for the whole
+// move and are always taken in ascending account number order, so concurrent transfers in
+// opposite directions cannot deadlock. Both legs are published as one atomic event group, so the
+// journal never recovers half a transfer; its durability wait comes after both locks are released.
+final class FundTransfer {
+    enum Result {
+        COMPLETED,
+        INVALID_AMOUNT,
+        SAME_ACCOUNT,
+        UNKNOWN_ACCOUNT,
+        INSUFFICIENT_FUNDS, // would break the savings minimum balance or the current account overdraft limit
+        DECLINED // refused by RiskScorer
+    }
+
+    private FundTransfer() {
+    }
+
+    public static Result transfer(BankAccount from, BankAccount to, long amount) {
+        if (from == null || to == null) return Result.UNKNOWN_ACCOUNT;
+        if (amount <= 0) return Result.INVALID_AMOUNT;
+        if (from == to) return Result.SAME_ACCOUNT;
+        BankAccount first = from.getAccountNumber() < to.getAccountNumber() ? from : to;
+        BankAccount second = first == from ? to : from;
+        long start = Metrics.start();
+        Result result;
+        first.balanceLock().lock();
+        try {
+            second.balanceLock().lock();
+            try {
+                AccountEvents.beginAtomic();
+                try {
+                    result = move(from, to, amount);
+                } finally {
+                    AccountEvents.endAtomic();
+                }
+            } finally {
+                second.balanceLock().unlock();
+            }
+        } finally {
+            first.balanceLock().unlock();
+        }
+        AccountEvents.afterChanges(); // e.g. the journal's durability wait, with both locks released
+        Metrics.global().record(Metrics.Operation.TRANSFER, from, start);
+        return result;
+    }
+
+    // Applies many transfers while taking each distinct account's lock only once: all accounts in
+    // the batch are locked up front in ascending number order, the transfers run in the given order,
+    // and the whole batch is published as one atomic event group. results[i] belongs to transfer i.
+    // Each transfer that reaches the accounts is counted as a TRANSFER in Metrics, with an equal
+    // share of the batch's latency.
+    public static Result[] transferBatch(AccountRegistry registry, long[] from, long[] to, long[] amounts) {
+        int n = from.length;
+        if (to.length != n || amounts.length != n) {
+            throw new IllegalArgumentException("from, to and amounts must have the same length");
+        }
+        long[] numbers = new long[n * 2];
+        System.arraycopy(from, 0, numbers, 0, n);
+        System.arraycopy(to, 0, numbers, n, n);
+        Arrays.sort(numbers);
+        int distinct = 0;
+        for (int i = 0; i < numbers.length; i++) {
+            if (i == 0 || numbers[i] != numbers[i - 1]) numbers[distinct++] = numbers[i];
+        }
+        BankAccount[] accounts = new BankAccount[distinct];
+        for (int i = 0; i < distinct; i++) {
+            accounts[i] = registry.find(numbers[i]);
+        }
+
+        Result[] results = new Result[n];
+        BankAccount[] moved = new BankAccount[n]; // source of each transfer that got as far as move
+        long start = Metrics.start();
+        int locked = 0;
+        try {
+            for (; locked < distinct; locked++) {
+                if (accounts[locked] != null) accounts[locked].balanceLock().lock();
+            }
+            AccountEvents.beginAtomic();
+            try {
+                for (int i = 0; i < n; i++) {
+                    BankAccount source = accounts[Arrays.binarySearch(numbers, 0, distinct, from[i])];
+                    BankAccount target = accounts[Arrays.binarySearch(numbers, 0, distinct, to[i])];
+                    if (source == null || target == null) {
+                        results[i] = Result.UNKNOWN_ACCOUNT;
+                    } else if (amounts[i] <= 0) {
+                        results[i] = Result.INVALID_AMOUNT;
+                    } else if (source == target) {
+                        results[i] = Result.SAME_ACCOUNT;
+                    } else {
+                        results[i] = move(source, target, amounts[i]);
+                        moved[i] = source;
+                    }
+                }
+            } finally {
+                AccountEvents.endAtomic();
+            }
+        } finally {
+            while (--locked >= 0) {
+                if (accounts[locked] != null) accounts[locked].balanceLock().unlock();
+            }
+        }
+        AccountEvents.afterChanges();
+        Metrics.global().recordBatch(Metrics.Operation.TRANSFER, moved, start);
+        return results;
+    }
+
+    // Caller holds both accounts' balance locks
+    private static Result move(BankAccount from, BankAccount to, long amount) {
+        // checked before the debit, so the credit below cannot overflow after money has left
+        if (to.getBalance() > Long.MAX_VALUE - amount) return Result.INVALID_AMOUNT;
+        switch (from.debit(amount, from.balanceFloor(), TransactionType.TRANSFER_OUT, "to " + to.getAccountNumber())) {
+            case INSUFFICIENT_FUNDS:
+                return Result.INSUFFICIENT_FUNDS;
+            case DECLINED:
+                return Result.DECLINED;
+            default:
+                break;
+        }
+        to.credit(amount, TransactionType.TRANSFER_IN, "from " + from.getAccountNumber());
+        return Result.COMPLETED;
+    }
+}
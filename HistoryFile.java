@@ -0,0 +1,224 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Transaction histories of a fast-start snapshot (see Persistence), kept next to it as
+// snapshot-<sequence>.hist. The snapshot itself then holds only account headers, each pointing at
+// a Region of this file, so recovery creates accounts without reading any history; an account
+// reads its region the first time its history is asked for (see BankAccount.getTransactions).
+//
+// A region is the account's entries back to back, encoded as in a full snapshot record:
+// [byte type][long amount][long timestamp][string description]. Its CRC32 is kept in the header
+// record, so a damaged region is detected when it is read rather than at startup.
+final class HistoryFile implements Closeable {
+    private static final int HISTORY_ENTRY_BYTES = 21; // before the description
+
+    private final Path path;
+    private FileChannel channel; // opened on the first read, guarded by this
+
+    HistoryFile(Path path) {
+        this.path = path;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    // Where one account's history lives. Security events (logins, lockouts, credential changes) are
+    // also kept here as type/amount/timestamp triples, since recovery restores them eagerly into
+    // SecurityEventIndex and LoginGuard.
+    static final class Region {
+        final HistoryFile file;
+        final long offset;
+        final int bytes;
+        final int count;
+        final int crc;
+        final long[] securityEvents; // null if none
+
+        Region(HistoryFile file, long offset, int bytes, int count, int crc, long[] securityEvents) {
+            this.file = file;
+            this.offset = offset;
+            this.bytes = bytes;
+            this.count = count;
+            this.crc = crc;
+            this.securityEvents = securityEvents;
+        }
+
+        // Reads and checks the entries into a new log
+        TransactionLog read() throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(bytes);
+            file.read(buf, offset);
+            CRC32 check = new CRC32();
+            check.update(buf.array(), 0, bytes);
+            if ((int) check.getValue() != crc) {
+                throw new IOException("Transaction history at " + offset + " in " + file.path + " is corrupt");
+            }
+            buf.flip();
+            TransactionLog log = new TransactionLog();
+            for (int i = 0; i < count; i++) {
+                TransactionType type = TransactionType.fromCode(buf.get());
+                long amount = buf.getLong();
+                long timestamp = buf.getLong();
+                log.append(type, amount, timestamp, getString(buf));
+            }
+            return log;
+        }
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (channel == null) channel = FileChannel.open(path, StandardOpenOption.READ);
+        return channel;
+    }
+
+    // Fills buf from position on with positional reads, so concurrent loads of different accounts
+    // need no further locking
+    private void read(ByteBuffer buf, long position) throws IOException {
+        FileChannel in = channel();
+        while (buf.hasRemaining()) {
+            int n = in.read(buf, position);
+            if (n < 0) throw new IOException("Transaction history in " + path + " ends early");
+            position += n;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) channel.close();
+        channel = null;
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) return null;
+        String s = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return s;
+    }
+
+    // Writes the history file of a new snapshot, one region per account. Regions it returns become
+    // readable once finish() has returned.
+    static final class Writer implements Closeable {
+        private final HistoryFile file;
+        private final FileChannel out;
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+        private long written;
+        // read-ahead over the previous history file: untouched regions are copied in file order
+        private ByteBuffer window = ByteBuffer.allocate(1 << 20);
+        private HistoryFile windowFile;
+        private long windowStart = -1;
+
+        Writer(Path path) throws IOException {
+            file = new HistoryFile(path);
+            out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        // Encodes a loaded history; caller holds the account's balance lock
+        Region write(TransactionLog log) throws IOException {
+            if (log == null || log.size() == 0) return null;
+            int bytes = 0;
+            int securityCount = 0;
+            for (int i = 0; i < log.size(); i++) {
+                bytes += HISTORY_ENTRY_BYTES + JournalCodec.maxSize(log.descriptionAt(i));
+                if (log.typeAt(i).isSecurityEvent()) securityCount++;
+            }
+            reserve(bytes);
+            long[] security = securityCount == 0 ? null : new long[securityCount * 3];
+            int start = buf.position();
+            int s = 0;
+            for (int i = 0; i < log.size(); i++) {
+                TransactionType type = log.typeAt(i);
+                buf.put((byte) type.ordinal()).putLong(log.amountAt(i)).putLong(log.timestampAt(i));
+                putString(buf, log.descriptionAt(i));
+                if (type.isSecurityEvent()) {
+                    security[s++] = type.ordinal();
+                    security[s++] = log.amountAt(i);
+                    security[s++] = log.timestampAt(i);
+                }
+            }
+            return region(start, log.size(), security);
+        }
+
+        // Copies a region of the previous snapshot's history file without decoding it
+        Region copy(Region from) throws IOException {
+            reserve(from.bytes);
+            int start = buf.position();
+            if (from.bytes > window.capacity()) {
+                ByteBuffer slice = buf.duplicate();
+                slice.limit(start + from.bytes);
+                from.file.read(slice, from.offset);
+            } else {
+                if (windowFile != from.file || from.offset < windowStart
+                        || from.offset + from.bytes > windowStart + window.limit()) {
+                    window.clear();
+                    windowFile = from.file;
+                    windowStart = from.offset;
+                    // fill as much of the window as the file has, but at least this region
+                    while (window.position() < from.bytes) {
+                        if (from.file.channel().read(window, windowStart + window.position()) < 0) {
+                            throw new IOException("Transaction history in " + from.file.path + " ends early");
+                        }
+                    }
+                    window.flip();
+                }
+                int at = (int) (from.offset - windowStart);
+                buf.put(window.array(), at, from.bytes);
+            }
+            buf.position(start + from.bytes);
+            crc.reset();
+            crc.update(buf.array(), start, from.bytes);
+            if ((int) crc.getValue() != from.crc) {
+                throw new IOException("Transaction history at " + from.offset + " in " + from.file.path + " is corrupt");
+            }
+            return new Region(file, written + start, from.bytes, from.count, from.crc, from.securityEvents);
+        }
+
+        // Flushes and forces the file; the regions are readable afterwards
+        HistoryFile finish() throws IOException {
+            drain();
+            out.force(true);
+            return file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private Region region(int start, int count, long[] security) {
+            int bytes = buf.position() - start;
+            crc.reset();
+            crc.update(buf.array(), start, bytes);
+            return new Region(file, written + start, bytes, count, (int) crc.getValue(), security);
+        }
+
+        private void reserve(int bytes) throws IOException {
+            if (buf.remaining() >= bytes) return;
+            drain();
+            if (buf.capacity() < bytes) buf = ByteBuffer.allocate(Integer.highestOneBit(bytes - 1) << 1);
+        }
+
+        private void drain() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                written += out.write(buf);
+            }
+            buf.clear();
+        }
+
+        private static void putString(ByteBuffer buf, String s) {
+            if (s == null) {
+                buf.putInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            buf.putInt(bytes.length).put(bytes);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Closed-loop load generator for BankHttpServer. It creates and logs in a set of accounts, then
+// keeps a fixed number of requests in flight (each one is sent as soon as the previous one on its
+// "connection" completes) for a fixed duration and reports throughput and latency percentiles.
+// The mix is 50% deposit, 30% withdraw and 20% balance.
+//
+//   java HttpLoadGenerator [baseUrl] [concurrency] [seconds] [accounts]
+//   defaults:              http://localhost:8080  256  30  1000
+//
+// Account creation hashes credentials, so start the server with a low -Dbank.kdf.cost for large
+// account counts. Each account gets far more withdrawals than RiskScorer's velocity rule allows, so
+// start it with -Dbank.risk.enabled=false to measure the full mix rather than declines.
+final class HttpLoadGenerator {
+    private final HttpClient client;
+    private final String baseUrl;
+    private final long[] accounts;
+    private final String[] tokens;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicLong errors = new AtomicLong();
+    private long[] latencies = new long[1 << 20]; // nanoseconds, guarded by this
+    private int recorded;
+
+    private HttpLoadGenerator(String baseUrl, int accountCount) {
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10)).build();
+        this.accounts = new long[accountCount];
+        this.tokens = new String[accountCount];
+    }
+
+    private void setUp() throws Exception {
+        for (int i = 0; i < accounts.length; i++) {
+            Map<String, String> created = Json.parseObject(post("/accounts", "{\"type\":\""
+                    + (i % 2 == 0 ? "SAVINGS" : "CURRENT") + "\",\"fullName\":\"Load User " + i
+                    + "\",\"dob\":\"01/01/1990\",\"password\":\"Load@1234\",\"pin\":\"4821\"}", null).body());
+            accounts[i] = Long.parseLong(created.get("accountNumber"));
+            Map<String, String> login = Json.parseObject(post("/accounts/" + accounts[i] + "/login",
+                    "{\"password\":\"Load@1234\",\"pin\":\"4821\"}", null).body());
+            tokens[i] = login.get("token");
+            post("/accounts/" + accounts[i] + "/deposit", "{\"amount\":\"100000\"}", tokens[i]);
+        }
+    }
+
+    private HttpResponse<String> post(String path, String body, String token) throws Exception {
+        return client.send(request(path, token).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30)).header("Content-Type", "application/json");
+        if (token != null) builder.header("Authorization", "Bearer " + token);
+        return builder;
+    }
+
+    private HttpRequest randomRequest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(accounts.length);
+        String base = "/accounts/" + accounts[i];
+        int kind = random.nextInt(10);
+        if (kind < 5) {
+            return request(base + "/deposit", tokens[i]).POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"amount\":\"" + (1 + random.nextInt(500)) + ".25\",\"description\":\"load\"}")).build();
+        }
+        if (kind < 8) {
+            return request(base + "/withdraw", tokens[i]).POST(HttpRequest.BodyPublishers.ofString(
+                    "{\"amount\":\"" + (1 + random.nextInt(500)) + "\"}")).build();
+        }
+        return request(base + "/balance", tokens[i]).GET().build();
+    }
+
+    // One request chain: sends the next request whenever the previous one finishes
+    private void loop(CompletableFuture<Void> done) {
+        if (!running.get()) {
+            done.complete(null);
+            return;
+        }
+        long start = System.nanoTime();
+        client.sendAsync(randomRequest(), HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+            long elapsed = System.nanoTime() - start;
+            // 409 (insufficient funds) and 403 (declined by RiskScorer) are normal business outcomes
+            // for the random withdrawals
+            int status = failure == null ? response.statusCode() : 0;
+            if (status != 200 && status != 409 && status != 403) {
+                errors.incrementAndGet();
+            } else {
+                record(elapsed);
+            }
+            loop(done);
+        });
+    }
+
+    private synchronized void record(long nanos) {
+        if (recorded == latencies.length) latencies = Arrays.copyOf(latencies, recorded * 2);
+        latencies[recorded++] = nanos;
+    }
+
+    private String run(int concurrency, int seconds) throws Exception {
+        CompletableFuture<?>[] chains = new CompletableFuture<?>[concurrency];
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            chains[i] = done;
+            loop(done);
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        CompletableFuture.allOf(chains).get(60, TimeUnit.SECONDS);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(latencies, recorded);
+        }
+        Arrays.sort(sorted);
+        return String.format("%d requests in %.1f s: %.0f req/s, %d errors%n"
+                        + "latency p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms",
+                sorted.length, elapsed, sorted.length / elapsed, errors.get(),
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int accountCount = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        HttpLoadGenerator generator = new HttpLoadGenerator(baseUrl, accountCount);
+        generator.setUp();
+        System.out.println(generator.run(concurrency, seconds));
+    }
+}
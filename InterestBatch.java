@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+// End-of-day interest run over every savings account, without console output per account.
+// Accounts are sorted by number and split into contiguous ranges processed in parallel on a
+// fork-join pool. Each range appends one fixed-size audit record per account to its own file in
+// the run directory, and those files are also the checkpoint: running again with the same run id
+// skips every account already audited. An account that was credited just before a crash but not
+// yet audited is recognised by the run id in its latest interest entry, so no account is paid twice.
+//
+//   java InterestBatch <runId> [years] [parallelism]
+//
+// Accounts are loaded and saved through Persistence (see its bank.* properties); audit files go to
+// <bank.dataDir>/interest-<runId>/.
+final class InterestBatch {
+    static final int AUDIT_RECORD_BYTES = 28; // account number, interest, balance after, crc32
+    private static final String AUDIT_PREFIX = "part-";
+    private static final String AUDIT_SUFFIX = ".audit";
+    private static final int CHUNK = 256; // accounts locked and journaled together
+    private static final int RANGES_PER_THREAD = 4;
+
+    // Outcome of one run; accounts audited by an earlier, interrupted run count as resumed, and
+    // accounts whose interest would overflow the balance count as failed and are left unaudited
+    static final class Summary {
+        final int credited;
+        final int resumed;
+        final int failed;
+        final long totalInterest;
+        final long elapsedNanos;
+        final int parallelism;
+
+        Summary(int credited, int resumed, int failed, long totalInterest, long elapsedNanos, int parallelism) {
+            this.credited = credited;
+            this.resumed = resumed;
+            this.failed = failed;
+            this.totalInterest = totalInterest;
+            this.elapsedNanos = elapsedNanos;
+            this.parallelism = parallelism;
+        }
+
+        double accountsPerSecond() {
+            return elapsedNanos == 0 ? 0 : credited * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Interest credited to " + credited + " accounts (" + resumed + " already done"
+                    + (failed == 0 ? "" : ", " + failed + " failed: the interest would overflow the balance")
+                    + "), total ₹"
+                    + Money.format(totalInterest) + " in " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms on "
+                    + parallelism + " threads (" + Math.round(accountsPerSecond()) + " accounts/s)";
+        }
+    }
+
+    private final Path runDir;
+    private final String description;
+    private final int years;
+    private final long[] audited; // sorted account numbers already in the audit files
+    private final boolean resuming;
+    private final AtomicLong credited = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalInterest = new AtomicLong();
+
+    private InterestBatch(Path runDir, String runId, int years, long[] audited, boolean resuming) {
+        this.runDir = runDir;
+        this.description = years + " years, run " + runId;
+        this.years = years;
+        this.audited = audited;
+        this.resuming = resuming;
+    }
+
+    public static Summary run(AccountRegistry registry, Path baseDir, String runId, int years, int parallelism)
+            throws IOException {
+        if (years <= 0) throw new IllegalArgumentException("years must be positive");
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+        if (!runId.matches("[A-Za-z0-9_.-]+")) throw new IllegalArgumentException("Invalid run id: " + runId);
+        long start = System.nanoTime();
+        Path runDir = baseDir.resolve("interest-" + runId);
+        boolean resuming = Files.isDirectory(runDir);
+        Files.createDirectories(runDir);
+        long[] audited = loadCheckpoint(runDir);
+
+        BankAccount[] all = registry.toArray();
+        SavingsAccount[] savings = new SavingsAccount[all.length];
+        int n = 0;
+        for (BankAccount account : all) {
+            if (account instanceof SavingsAccount) savings[n++] = (SavingsAccount) account;
+        }
+        savings = Arrays.copyOf(savings, n);
+        // ascending order keeps each range's locks in the same order FundTransfer uses
+        Arrays.sort(savings, (a, b) -> Long.compare(a.getAccountNumber(), b.getAccountNumber()));
+
+        InterestBatch batch = new InterestBatch(runDir, runId, years, audited, resuming);
+        int rangeSize = Math.max(CHUNK, (n + parallelism * RANGES_PER_THREAD - 1) / (parallelism * RANGES_PER_THREAD));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(batch.new Range(savings, 0, n, rangeSize));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        return new Summary((int) batch.credited.get(), audited.length + (int) batch.recovered.get(),
+                (int) batch.failed.get(), batch.totalInterest.get(), System.nanoTime() - start, parallelism);
+    }
+
+    // Splits the sorted accounts in halves until a range is small enough to own one audit file
+    private final class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SavingsAccount[] accounts;
+        private final int from;
+        private final int to;
+        private final int rangeSize;
+
+        Range(SavingsAccount[] accounts, int from, int to, int rangeSize) {
+            this.accounts = accounts;
+            this.from = from;
+            this.to = to;
+            this.rangeSize = rangeSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= rangeSize) {
+                try {
+                    process(accounts, from, to);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Range(accounts, from, mid, rangeSize), new Range(accounts, mid, to, rangeSize));
+        }
+    }
+
+    private void process(SavingsAccount[] accounts, int from, int to) throws IOException {
+        if (from == to) return;
+        Path file = runDir.resolve(AUDIT_PREFIX + accounts[from].getAccountNumber() + AUDIT_SUFFIX);
+        ByteBuffer buf = ByteBuffer.allocate(CHUNK * AUDIT_RECORD_BYTES);
+        CRC32 crc = new CRC32();
+        long interestSum = 0;
+        int count = 0;
+        int alreadyPaid = 0;
+        int overflowed = 0;
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            for (int chunkStart = from; chunkStart < to; chunkStart += CHUNK) {
+                int chunkEnd = Math.min(to, chunkStart + CHUNK);
+                int locked = chunkStart;
+                try {
+                    for (; locked < chunkEnd; locked++) {
+                        accounts[locked].balanceLock().lock();
+                    }
+                    // one journal record and one durability wait for the whole chunk
+                    AccountEvents.beginAtomic();
+                    try {
+                        for (int i = chunkStart; i < chunkEnd; i++) {
+                            SavingsAccount account = accounts[i];
+                            if (Arrays.binarySearch(audited, account.getAccountNumber()) >= 0) continue;
+                            long interest = resuming ? paidInterest(account) : -1;
+                            if (interest < 0) {
+                                try {
+                                    interest = account.accrueInterest(years, description);
+                                } catch (ArithmeticException ex) {
+                                    // nothing was credited; no audit record, so a rerun tries it again
+                                    overflowed++;
+                                    continue;
+                                }
+                                interestSum += interest;
+                                count++;
+                            } else {
+                                alreadyPaid++;
+                            }
+                            putAuditRecord(buf, crc, account.getAccountNumber(), interest, account.getBalance());
+                        }
+                    } finally {
+                        AccountEvents.endAtomic();
+                    }
+                } finally {
+                    while (--locked >= chunkStart) {
+                        accounts[locked].balanceLock().unlock();
+                    }
+                }
+                AccountEvents.afterChanges();
+                // audited only after the credits are journaled, so the checkpoint never runs ahead of them
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                buf.clear();
+            }
+            out.force(false);
+        }
+        credited.addAndGet(count);
+        recovered.addAndGet(alreadyPaid);
+        failed.addAndGet(overflowed);
+        totalInterest.addAndGet(interestSum);
+    }
+
+    // Interest this run already paid to the account, or -1. Only the latest interest entry can be ours.
+    private long paidInterest(SavingsAccount account) {
+        TransactionLog log = account.getTransactions();
+        for (int i = log.size() - 1; i >= 0; i--) {
+            if (log.typeAt(i) == TransactionType.INTEREST) {
+                return description.equals(log.descriptionAt(i)) ? log.amountAt(i) : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static void putAuditRecord(ByteBuffer buf, CRC32 crc, long accountNumber, long interest,
+                                       long balanceAfter) {
+        int start = buf.position();
+        buf.putLong(accountNumber).putLong(interest).putLong(balanceAfter);
+        crc.reset();
+        crc.update(buf.array(), buf.arrayOffset() + start, AUDIT_RECORD_BYTES - 4);
+        buf.putInt((int) crc.getValue());
+    }
+
+    // Account numbers in the run's audit files, sorted. A torn record at the end of a file is cut
+    // off so that records appended by this run stay aligned.
+    private static long[] loadCheckpoint(Path runDir) throws IOException {
+        long[] numbers = new long[1024];
+        int n = 0;
+        CRC32 crc = new CRC32();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(runDir, AUDIT_PREFIX + "*" + AUDIT_SUFFIX)) {
+            for (Path file : stream) {
+                try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    ByteBuffer buf = ByteBuffer.allocate((int) in.size());
+                    while (buf.hasRemaining() && in.read(buf) >= 0) {
+                        // keep reading
+                    }
+                    buf.flip();
+                    int valid = 0;
+                    while (buf.remaining() >= AUDIT_RECORD_BYTES) {
+                        crc.reset();
+                        crc.update(buf.array(), valid, AUDIT_RECORD_BYTES - 4);
+                        if (buf.getInt(valid + AUDIT_RECORD_BYTES - 4) != (int) crc.getValue()) break;
+                        if (n == numbers.length) numbers = Arrays.copyOf(numbers, n * 2);
+                        numbers[n++] = buf.getLong(valid);
+                        valid += AUDIT_RECORD_BYTES;
+                        buf.position(valid);
+                    }
+                    if (valid < in.size()) in.truncate(valid);
+                }
+            }
+        }
+        numbers = Arrays.copyOf(numbers, n);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java InterestBatch <runId> [years] [parallelism]");
+            return;
+        }
+        String runId = args[0];
+        int years = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        AccountRegistry registry = AccountRegistry.global();
+        Persistence persistence = Persistence.fromSystemProperties(registry);
+        if (persistence == null) {
+            System.out.println("Persistence is disabled (-Dbank.dataDir=); nothing to run interest on.");
+            return;
+        }
+        try {
+            System.out.println(run(registry, Paths.get(System.getProperty("bank.dataDir", "bank-data")), runId, years,
+                    parallelism));
+        } finally {
+            persistence.close();
+        }
+    }
+}
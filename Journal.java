@@ -0,0 +1,369 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+// Append-only write-ahead log of account events, split into segment files named by the first
+// sequence number they may contain. Records are encoded into an in-memory buffer and written by
+// whichever thread flushes next, so concurrent writers share one write and one fsync.
+class Journal implements AccountEventListener, Closeable {
+    enum FsyncPolicy {
+        EVERY_WRITE,   // each event is written and fsynced before the operation returns
+        GROUP_COMMIT,  // a flusher fsyncs whatever has accumulated; operations wait for the fsync covering them
+        OS_MANAGED     // a flusher writes every window without fsync; the OS decides when data is durable
+    }
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final Path dir;
+    private final FsyncPolicy policy;
+    private final long windowMillis; // GROUP_COMMIT: extra time to gather a batch; OS_MANAGED: write interval
+    private final Object lock = new Object(); // guards active buffer and sequence numbers
+    private final Object ioLock = new Object(); // serializes writes to the channel; taken before lock
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer active = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer flushing = ByteBuffer.allocate(1 << 16);
+    private volatile long lastSequence; // last sequence number handed out; written under lock
+    private volatile long writtenThrough; // every record up to here is in a buffer or the file; written under lock
+    private volatile long durableSequence; // everything up to here has been written (and fsynced, if required)
+    private FileChannel channel;
+    private Path segment;
+    private volatile boolean closed;
+    private volatile IOException failure; // first write error; every later durability wait fails with it
+    private Thread flusher;
+    private final ThreadLocal<Batch> batches = ThreadLocal.withInitial(Batch::new);
+    private final List<Batch> openBatches = new ArrayList<>(); // groups holding unwritten sequences; guarded by lock
+
+    Journal(Path dir, FsyncPolicy policy, long windowMillis, long lastRecoveredSequence) throws IOException {
+        this.dir = dir;
+        this.policy = policy;
+        this.windowMillis = policy == FsyncPolicy.OS_MANAGED ? Math.max(1, windowMillis) : Math.max(0, windowMillis);
+        this.lastSequence = lastRecoveredSequence;
+        this.writtenThrough = lastRecoveredSequence;
+        this.durableSequence = lastRecoveredSequence;
+        openSegment(lastRecoveredSequence + 1);
+        if (policy != FsyncPolicy.EVERY_WRITE) {
+            flusher = new Thread(this::flushLoop, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    // ---- AccountEventListener: called while the account's balance lock is held; the durability
+    // wait for what a thread appended happens later, in afterChanges, once it has let go ----
+
+    @Override
+    public void onAccountCreated(BankAccount account) {
+        Batch batch = batches.get();
+        long sequence;
+        synchronized (lock) {
+            sequence = nextSequence(account);
+            ByteBuffer target = room(batch, JournalCodec.HEADER_BYTES + 16 + JournalCodec.accountHeaderSize(account));
+            JournalCodec.writeCreated(target, crc, sequence, account);
+            added(batch, sequence);
+        }
+    }
+
+    @Override
+    public void onTransaction(BankAccount account, TransactionType type, long amount, long balanceAfter,
+                              long timestampNanos, String description) {
+        Batch batch = batches.get();
+        long sequence;
+        synchronized (lock) {
+            sequence = nextSequence(account);
+            ByteBuffer target = room(batch, JournalCodec.HEADER_BYTES + 64 + JournalCodec.maxSize(description));
+            JournalCodec.writeTransaction(target, crc, sequence, account.getAccountNumber(), type, amount,
+                    balanceAfter, timestampNanos, description);
+            added(batch, sequence);
+        }
+    }
+
+    @Override
+    public void onCredentialsChanged(BankAccount account) {
+        Batch batch = batches.get();
+        long sequence;
+        synchronized (lock) {
+            sequence = nextSequence(account);
+            ByteBuffer target = room(batch, JournalCodec.HEADER_BYTES + 32
+                    + JournalCodec.maxSize(account.getPasswordHash()) + JournalCodec.maxSize(account.getPinHash()));
+            JournalCodec.writeCredentials(target, crc, sequence, account);
+            added(batch, sequence);
+        }
+    }
+
+    @Override
+    public void onAtomicBegin() {
+        batches.get().depth++;
+    }
+
+    // Writes the events collected since onAtomicBegin as one checksummed record, so recovery
+    // sees either all of them or none; afterChanges then waits for it once for the whole group.
+    // Until then the group's sequence numbers are held back from writtenThrough, so no flush can
+    // report them durable while the record is still in this thread's buffer.
+    @Override
+    public void onAtomicEnd() {
+        Batch batch = batches.get();
+        if (batch.depth == 0) return; // listener was added while a group was already open
+        if (--batch.depth > 0 || batch.count == 0) return;
+        synchronized (lock) {
+            active = JournalCodec.ensureRoom(active, JournalCodec.HEADER_BYTES + 16 + batch.buf.position());
+            JournalCodec.writeBatch(active, crc, batch.lastSequence, batch.count, batch.buf);
+            batch.awaiting = batch.lastSequence;
+            openBatches.remove(batch);
+            writtenThrough = oldestUnwritten() - 1;
+        }
+        batch.buf.clear();
+        batch.count = 0;
+    }
+
+    // Waits until everything this thread appended is durable (as the policy defines it)
+    @Override
+    public void afterChanges() {
+        Batch batch = batches.get();
+        if (batch.depth > 0 || batch.awaiting == 0) return;
+        long sequence = batch.awaiting;
+        batch.awaiting = 0;
+        awaitDurable(sequence);
+    }
+
+    private long nextSequence(BankAccount account) {
+        if (closed) throw new IllegalStateException("Journal is closed");
+        long sequence = ++lastSequence;
+        account.setJournalSequence(sequence);
+        return sequence;
+    }
+
+    // Buffer the next record goes to: the caller's open batch, or the shared active buffer
+    private ByteBuffer room(Batch batch, int maxBytes) {
+        if (batch.depth > 0) {
+            return batch.buf = JournalCodec.ensureRoom(batch.buf, maxBytes);
+        }
+        return active = JournalCodec.ensureRoom(active, maxBytes);
+    }
+
+    // Caller holds lock
+    private void added(Batch batch, long sequence) {
+        if (batch.depth > 0) {
+            if (batch.count++ == 0) {
+                batch.firstSequence = sequence;
+                openBatches.add(batch);
+            }
+            batch.lastSequence = sequence;
+        } else {
+            batch.awaiting = sequence;
+            if (openBatches.isEmpty()) writtenThrough = sequence;
+        }
+    }
+
+    // Lowest sequence number handed out but not yet in the active buffer; caller holds lock
+    private long oldestUnwritten() {
+        long oldest = lastSequence + 1;
+        for (Batch open : openBatches) {
+            oldest = Math.min(oldest, open.firstSequence);
+        }
+        return oldest;
+    }
+
+    // Events of one atomic group on the current thread, held back until the group ends, and the
+    // last sequence the thread has appended but not yet waited for
+    private static final class Batch {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+        int depth;
+        int count;
+        long firstSequence;
+        long lastSequence;
+        long awaiting;
+    }
+
+    private void wakeFlusher() {
+        if (policy == FsyncPolicy.GROUP_COMMIT) LockSupport.unpark(flusher);
+    }
+
+    private void awaitDurable(long sequence) {
+        if (failure != null) throw new UncheckedIOException("Journal write failed", failure);
+        if (policy == FsyncPolicy.OS_MANAGED) return;
+        if (policy == FsyncPolicy.EVERY_WRITE) {
+            if (durableSequence < sequence) flush(true);
+        } else {
+            wakeFlusher();
+        }
+        // an EVERY_WRITE flush falls short only while an older group is open; its own flush covers this one
+        synchronized (lock) {
+            while (durableSequence < sequence && failure == null && !closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (failure != null) throw new UncheckedIOException("Journal write failed", failure);
+        }
+    }
+
+    // ---- flushing ----
+
+    private void flushLoop() {
+        boolean groupCommit = policy == FsyncPolicy.GROUP_COMMIT;
+        while (!closed) {
+            try {
+                if (groupCommit) {
+                    // sleep until a writer is waiting; records arriving during the fsync form the next batch
+                    while (durableSequence == writtenThrough && !closed) {
+                        LockSupport.parkNanos(this, 1_000_000L);
+                    }
+                    if (windowMillis > 0) Thread.sleep(windowMillis);
+                } else {
+                    Thread.sleep(windowMillis);
+                }
+                flush(groupCommit);
+            } catch (InterruptedException ex) {
+                return;
+            } catch (UncheckedIOException ex) {
+                System.err.println("Journal flush failed: " + ex.getCause().getMessage());
+                return;
+            }
+        }
+    }
+
+    // Writes everything appended so far, optionally fsyncing it, and wakes waiting writers.
+    // Only sequences up to writtenThrough become durable: numbers an open group holds are not here yet.
+    void flush(boolean force) {
+        synchronized (ioLock) {
+            long target;
+            synchronized (lock) {
+                if (durableSequence == writtenThrough && active.position() == 0) return;
+                ByteBuffer full = active;
+                active = flushing;
+                flushing = full;
+                target = writtenThrough;
+            }
+            try {
+                flushing.flip();
+                while (flushing.hasRemaining()) {
+                    channel.write(flushing);
+                }
+                flushing.clear();
+                if (force) channel.force(false);
+            } catch (IOException ex) {
+                synchronized (lock) {
+                    failure = ex;
+                    lock.notifyAll();
+                }
+                throw new UncheckedIOException("Journal write failed", ex);
+            }
+            synchronized (lock) {
+                durableSequence = Math.max(durableSequence, target);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Flushes and fsyncs the current segment and starts a new one. Returns the last sequence
+    // number in the closed segment(s): every later event lands in the new segment.
+    long roll() throws IOException {
+        synchronized (ioLock) {
+            flush(true);
+            long boundary;
+            synchronized (lock) {
+                // nothing can be appended while we hold lock, so every record above boundary that is
+                // not in the old segment yet (including open groups) lands in the new one
+                boundary = writtenThrough;
+                if (active.position() > 0) {
+                    // appended between the flush above and taking lock; write it to the old segment
+                    flush(true);
+                    boundary = writtenThrough;
+                }
+                channel.close();
+                openSegment(boundary + 1);
+            }
+            return boundary;
+        }
+    }
+
+    // Deletes segments that only hold records up to and including sequence
+    void deleteSegmentsThrough(long sequence) throws IOException {
+        List<Path> segments = listSegments(dir);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            long nextStart = firstSequence(segments.get(i + 1));
+            if (nextStart - 1 <= sequence && !segments.get(i).equals(segment)) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    long lastSequence() {
+        synchronized (lock) {
+            return lastSequence;
+        }
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        segment = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            flush(true);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            closed = true;
+            if (flusher != null) flusher.interrupt();
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+            synchronized (ioLock) {
+                channel.close();
+            }
+        }
+    }
+
+    // ---- recovery ----
+
+    static List<Path> listSegments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : stream) {
+                segments.add(p);
+            }
+        }
+        Collections.sort(segments); // zero-padded names sort by first sequence
+        return segments;
+    }
+
+    static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Replays all records with a sequence above afterSequence; returns {lastSequence, recordsApplied}
+    static long[] replay(Path dir, long afterSequence, AccountRegistry registry) throws IOException {
+        long[] progress = {afterSequence, 0};
+        for (Path segment : listSegments(dir)) {
+            try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+                JournalCodec.Reader reader = new JournalCodec.Reader(in);
+                ByteBuffer payload;
+                while ((payload = reader.next()) != null) {
+                    JournalCodec.apply(payload, registry, afterSequence, progress);
+                }
+            }
+        }
+        return progress;
+    }
+}
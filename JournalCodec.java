@@ -0,0 +1,374 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+// Binary layout shared by the journal and snapshot files and the replication stream.
+// Every record is framed as [int payloadLength][int crc32(payload)][payload] so a torn write at
+// the tail of a file is detected and ignored on recovery. Payloads start with a kind byte.
+final class JournalCodec {
+    static final byte CREATED = 1;
+    static final byte TRANSACTION = 2;
+    static final byte CREDENTIALS = 3;
+    static final byte SNAPSHOT_ACCOUNT = 4;
+    static final byte BATCH = 5; // records that must be applied together, e.g. both legs of a transfer
+    static final byte HEARTBEAT = 6; // replication only: events up to a sequence sent, and when
+    static final byte CAUGHT_UP = 7; // replication only: end of the snapshot a new follower starts from
+    static final byte SNAPSHOT_HEADER = 8; // fast-start snapshot: account header, history in a HistoryFile
+
+    static final byte SAVINGS = 0;
+    static final byte CURRENT = 1;
+
+    static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 30;
+
+    private JournalCodec() {
+    }
+
+    // ---- writing ----
+
+    // Returns a buffer (possibly a larger copy) with at least extra bytes of room
+    static ByteBuffer ensureRoom(ByteBuffer buf, int extra) {
+        if (buf.remaining() >= extra) return buf;
+        int capacity = buf.capacity();
+        while (capacity - buf.position() < extra) capacity <<= 1;
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buf.flip();
+        grown.put(buf);
+        return grown;
+    }
+
+    // Upper bound on the encoded size of a string
+    static int maxSize(String s) {
+        return s == null ? 4 : 4 + s.length() * 3;
+    }
+
+    static int accountHeaderSize(BankAccount account) {
+        return 64 + maxSize(account.getFullName()) + maxSize(account.getDob())
+                + maxSize(account.getGuardianName()) + maxSize(account.getGuardianRelation())
+                + maxSize(account.getPasswordHash()) + maxSize(account.getPinHash());
+    }
+
+    static int begin(ByteBuffer buf) {
+        int start = buf.position();
+        buf.position(start + HEADER_BYTES);
+        return start;
+    }
+
+    static void end(ByteBuffer buf, int start, CRC32 crc) {
+        int length = buf.position() - start - HEADER_BYTES;
+        crc.reset();
+        crc.update(buf.array(), buf.arrayOffset() + start + HEADER_BYTES, length);
+        buf.putInt(start, length);
+        buf.putInt(start + 4, (int) crc.getValue());
+    }
+
+    static void writeCreated(ByteBuffer buf, CRC32 crc, long sequence, BankAccount account) {
+        int start = begin(buf);
+        buf.put(CREATED).putLong(sequence);
+        putAccountHeader(buf, account);
+        end(buf, start, crc);
+    }
+
+    static void writeTransaction(ByteBuffer buf, CRC32 crc, long sequence, long accountNumber, TransactionType type,
+                                 long amount, long balanceAfter, long timestampNanos, String description) {
+        int start = begin(buf);
+        buf.put(TRANSACTION).putLong(sequence).putLong(accountNumber).put((byte) type.ordinal())
+                .putLong(amount).putLong(balanceAfter).putLong(timestampNanos);
+        putString(buf, description);
+        end(buf, start, crc);
+    }
+
+    static void writeCredentials(ByteBuffer buf, CRC32 crc, long sequence, BankAccount account) {
+        int start = begin(buf);
+        buf.put(CREDENTIALS).putLong(sequence).putLong(account.getAccountNumber());
+        putString(buf, account.getPasswordHash());
+        putString(buf, account.getPinHash());
+        end(buf, start, crc);
+    }
+
+    // Wraps already-framed records in one outer record; the outer checksum makes the group all-or-nothing
+    static void writeBatch(ByteBuffer buf, CRC32 crc, long lastSequence, int count, ByteBuffer records) {
+        int start = begin(buf);
+        buf.put(BATCH).putLong(lastSequence).putInt(count);
+        records.flip();
+        buf.put(records);
+        end(buf, start, crc);
+    }
+
+    static void writeHeartbeat(ByteBuffer buf, CRC32 crc, long lastSequence, long nanoTime) {
+        int start = begin(buf);
+        buf.put(HEARTBEAT).putLong(lastSequence).putLong(nanoTime);
+        end(buf, start, crc);
+    }
+
+    static void writeCaughtUp(ByteBuffer buf, CRC32 crc, long sequence) {
+        int start = begin(buf);
+        buf.put(CAUGHT_UP).putLong(sequence);
+        end(buf, start, crc);
+    }
+
+    // Full account state including retained history; caller holds the account's balance lock
+    static ByteBuffer writeSnapshotAccount(ByteBuffer buf, CRC32 crc, BankAccount account) {
+        return writeSnapshotAccount(buf, crc, account, account.getJournalSequence());
+    }
+
+    // As above, stamped with the given sequence instead of the journal's (see Replicator)
+    static ByteBuffer writeSnapshotAccount(ByteBuffer buf, CRC32 crc, BankAccount account, long sequence) {
+        TransactionLog log = account.getTransactions();
+        int historyBytes = 4;
+        for (int i = 0; i < log.size(); i++) {
+            historyBytes += 25 + maxSize(log.descriptionAt(i));
+        }
+        buf = ensureRoom(buf, HEADER_BYTES + 16 + accountHeaderSize(account) + historyBytes);
+        int start = begin(buf);
+        buf.put(SNAPSHOT_ACCOUNT).putLong(sequence);
+        putAccountHeader(buf, account);
+        buf.putInt(log.size());
+        for (int i = 0; i < log.size(); i++) {
+            buf.put((byte) log.typeAt(i).ordinal()).putLong(log.amountAt(i)).putLong(log.timestampAt(i));
+            putString(buf, log.descriptionAt(i));
+        }
+        end(buf, start, crc);
+        return buf;
+    }
+
+    // Fast-start snapshot record: the account header and where its history is in the snapshot's
+    // HistoryFile (null for no history); caller holds the account's balance lock
+    static ByteBuffer writeSnapshotHeader(ByteBuffer buf, CRC32 crc, BankAccount account, HistoryFile.Region history) {
+        int events = history == null || history.securityEvents == null ? 0 : history.securityEvents.length / 3;
+        buf = ensureRoom(buf, HEADER_BYTES + 16 + accountHeaderSize(account) + 24 + events * 17);
+        int start = begin(buf);
+        buf.put(SNAPSHOT_HEADER).putLong(account.getJournalSequence());
+        putAccountHeader(buf, account);
+        if (history == null) {
+            buf.putInt(0);
+        } else {
+            buf.putInt(history.count).putLong(history.offset).putInt(history.bytes).putInt(history.crc).putInt(events);
+            long[] security = history.securityEvents;
+            for (int i = 0; i < events * 3; i += 3) {
+                buf.put((byte) security[i]).putLong(security[i + 1]).putLong(security[i + 2]);
+            }
+        }
+        end(buf, start, crc);
+        return buf;
+    }
+
+    private static void putAccountHeader(ByteBuffer buf, BankAccount account) {
+        buf.putLong(account.getAccountNumber())
+                .put(account instanceof SavingsAccount ? SAVINGS : CURRENT)
+                .putLong(account.getBalance());
+        putString(buf, account.getFullName());
+        putString(buf, account.getDob());
+        putString(buf, account.getGuardianName());
+        putString(buf, account.getGuardianRelation());
+        putString(buf, account.getPasswordHash());
+        putString(buf, account.getPinHash());
+    }
+
+    private static void putString(ByteBuffer buf, String s) {
+        if (s == null) {
+            buf.putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buf.putInt(bytes.length).put(bytes);
+    }
+
+    // ---- reading ----
+
+    // Reads framed records sequentially from a file or socket channel, refilling one reusable buffer
+    static final class Reader {
+        private final ReadableByteChannel channel;
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+        private boolean eof;
+
+        Reader(ReadableByteChannel channel) {
+            this.channel = channel;
+            buf.flip();
+        }
+
+        // Returns a buffer positioned at the next payload (limit = payload end), or null at end of
+        // data or at the first torn/corrupt record
+        ByteBuffer next() throws IOException {
+            if (!fill(HEADER_BYTES)) return null;
+            int length = buf.getInt(buf.position());
+            int checksum = buf.getInt(buf.position() + 4);
+            if (length <= 0 || length > MAX_RECORD_BYTES || !fill(HEADER_BYTES + length)) return null;
+            int payloadStart = buf.position() + HEADER_BYTES;
+            crc.reset();
+            crc.update(buf.array(), buf.arrayOffset() + payloadStart, length);
+            if ((int) crc.getValue() != checksum) return null;
+            ByteBuffer payload = buf.duplicate();
+            payload.position(payloadStart).limit(payloadStart + length);
+            buf.position(payloadStart + length);
+            return payload;
+        }
+
+        // True once every byte of the file has been consumed as valid records
+        boolean reachedEnd() {
+            return eof && !buf.hasRemaining();
+        }
+
+        private boolean fill(int needed) throws IOException {
+            if (buf.remaining() >= needed) return true;
+            if (eof) return false;
+            buf.compact();
+            if (buf.capacity() < needed) {
+                ByteBuffer grown = ByteBuffer.allocate(Integer.highestOneBit(needed - 1) << 1);
+                buf.flip();
+                grown.put(buf);
+                buf = grown;
+            }
+            while (buf.position() < needed) {
+                if (channel.read(buf) < 0) {
+                    eof = true;
+                    break;
+                }
+            }
+            buf.flip();
+            return buf.remaining() >= needed;
+        }
+    }
+
+    // Applies one payload to the registry, skipping journal records at or below afterSequence.
+    // progress[0] tracks the highest journal sequence seen and progress[1] the records applied.
+    static void apply(ByteBuffer payload, AccountRegistry registry, long afterSequence, long[] progress)
+            throws IOException {
+        apply(payload, registry, afterSequence, progress, null);
+    }
+
+    // As above for a snapshot whose SNAPSHOT_HEADER records point into history
+    static void apply(ByteBuffer payload, AccountRegistry registry, long afterSequence, long[] progress,
+                      HistoryFile history) throws IOException {
+        byte kind = payload.get(payload.position());
+        if (kind == SNAPSHOT_ACCOUNT || kind == SNAPSHOT_HEADER) {
+            applyOne(payload, registry, history);
+            return;
+        }
+        if (kind == BATCH) {
+            payload.position(payload.position() + 9); // kind + last sequence
+            int count = payload.getInt();
+            for (int i = 0; i < count; i++) {
+                int length = payload.getInt();
+                payload.getInt(); // nested checksum; the outer record's checksum already covers it
+                ByteBuffer nested = payload.duplicate();
+                nested.limit(payload.position() + length);
+                payload.position(payload.position() + length);
+                apply(nested, registry, afterSequence, progress, history);
+            }
+            return;
+        }
+        long sequence = payload.getLong(payload.position() + 1);
+        if (sequence <= afterSequence) return;
+        applyOne(payload, registry, history);
+        progress[0] = Math.max(progress[0], sequence);
+        progress[1]++;
+    }
+
+    private static void applyOne(ByteBuffer payload, AccountRegistry registry, HistoryFile history)
+            throws IOException {
+        byte kind = payload.get();
+        long sequence = payload.getLong();
+        switch (kind) {
+            case CREATED: {
+                long accountNumber = payload.getLong(payload.position());
+                if (registry.find(accountNumber) == null) {
+                    BankAccount account = readAccountHeader(payload);
+                    account.setJournalSequence(sequence);
+                    registry.register(account);
+                }
+                return;
+            }
+            case SNAPSHOT_ACCOUNT: {
+                BankAccount account = readAccountHeader(payload);
+                int count = payload.getInt();
+                for (int i = 0; i < count; i++) {
+                    TransactionType type = TransactionType.fromCode(payload.get());
+                    long amount = payload.getLong();
+                    long timestamp = payload.getLong();
+                    account.restoreTransaction(0, type, amount, account.getBalance(), timestamp, getString(payload));
+                }
+                account.setJournalSequence(sequence);
+                registry.register(account);
+                return;
+            }
+            case SNAPSHOT_HEADER: {
+                BankAccount account = readAccountHeader(payload);
+                int count = payload.getInt();
+                if (count > 0) {
+                    if (history == null) {
+                        throw new IOException("History of account " + account.getAccountNumber() + " is in a missing file");
+                    }
+                    long offset = payload.getLong();
+                    int bytes = payload.getInt();
+                    int checksum = payload.getInt();
+                    int events = payload.getInt();
+                    long[] security = events == 0 ? null : new long[events * 3];
+                    for (int i = 0; i < events * 3; i += 3) {
+                        security[i] = payload.get();
+                        security[i + 1] = payload.getLong();
+                        security[i + 2] = payload.getLong();
+                    }
+                    account.restorePendingHistory(new HistoryFile.Region(history, offset, bytes, count, checksum, security));
+                }
+                account.setJournalSequence(sequence);
+                registry.register(account);
+                return;
+            }
+            case TRANSACTION: {
+                BankAccount account = require(registry, payload.getLong());
+                TransactionType type = TransactionType.fromCode(payload.get());
+                long amount = payload.getLong();
+                long balanceAfter = payload.getLong();
+                long timestamp = payload.getLong();
+                account.restoreTransaction(sequence, type, amount, balanceAfter, timestamp, getString(payload));
+                return;
+            }
+            case CREDENTIALS: {
+                BankAccount account = require(registry, payload.getLong());
+                String password = getString(payload);
+                account.restoreCredentials(sequence, password, getString(payload));
+                return;
+            }
+            default:
+                throw new IOException("Unknown journal record kind: " + kind);
+        }
+    }
+
+    private static BankAccount require(AccountRegistry registry, long accountNumber) throws IOException {
+        BankAccount account = registry.find(accountNumber);
+        if (account == null) throw new IOException("Journal refers to unknown account " + accountNumber);
+        return account;
+    }
+
+    private static BankAccount readAccountHeader(ByteBuffer payload) {
+        long accountNumber = payload.getLong();
+        byte accountType = payload.get();
+        long balance = payload.getLong();
+        String fullName = getString(payload);
+        String dob = getString(payload);
+        BankAccount account = accountType == SAVINGS
+                ? new SavingsAccount(accountNumber, fullName, dob)
+                : new CurrentAccount(accountNumber, fullName, dob);
+        account.setBalance(balance);
+        String guardianName = getString(payload);
+        String guardianRelation = getString(payload);
+        if (guardianName != null || guardianRelation != null) {
+            account.setGuardian(guardianName, guardianRelation);
+        }
+        String passwordHash = getString(payload);
+        account.restoreCredentials(0, passwordHash, getString(payload));
+        return account;
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) return null;
+        String s = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return s;
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// Just enough JSON for the HTTP front end: flat objects whose values are strings, numbers,
+// booleans or null. Numbers are kept as their source text so amounts go through Money.parse
+// without a round trip through double.
+final class Json {
+    private Json() {
+    }
+
+    // Parses a flat object into field name -> value text (null for JSON null)
+    static Map<String, String> parseObject(String text) {
+        Parser p = new Parser(text);
+        Map<String, String> fields = new HashMap<>();
+        p.skipSpace();
+        p.expect('{');
+        p.skipSpace();
+        if (p.peek() == '}') {
+            p.pos++;
+        } else {
+            while (true) {
+                p.skipSpace();
+                String name = p.string();
+                p.skipSpace();
+                p.expect(':');
+                p.skipSpace();
+                fields.put(name, p.value());
+                p.skipSpace();
+                if (p.peek() == ',') {
+                    p.pos++;
+                } else {
+                    p.expect('}');
+                    break;
+                }
+            }
+        }
+        p.skipSpace();
+        if (p.pos != text.length()) throw new IllegalArgumentException("Trailing data after JSON object");
+        return fields;
+    }
+
+    // Appends s as a quoted JSON string, or null
+    static StringBuilder quote(StringBuilder sb, String s) {
+        if (s == null) return sb.append("null");
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        char peek() {
+            if (pos >= text.length()) throw new IllegalArgumentException("Unexpected end of JSON");
+            return text.charAt(pos);
+        }
+
+        void expect(char c) {
+            if (peek() != c) throw new IllegalArgumentException("Expected '" + c + "' at " + pos);
+            pos++;
+        }
+
+        void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+
+        String value() {
+            char c = peek();
+            if (c == '"') return string();
+            int start = pos;
+            while (pos < text.length() && isLiteralChar(text.charAt(pos))) pos++;
+            // nested objects and arrays are not needed by any endpoint
+            if (start == pos) throw new IllegalArgumentException("Unsupported JSON value at " + start);
+            String token = text.substring(start, pos);
+            return token.equals("null") ? null : token;
+        }
+
+        // Characters of numbers, true, false and null
+        private static boolean isLiteralChar(char c) {
+            return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || c == '-' || c == '+' || c == '.' || c == 'E';
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = null;
+            int start = pos;
+            while (true) {
+                char c = peek();
+                if (c == '"') {
+                    String s = sb == null ? text.substring(start, pos) : sb.append(text, start, pos).toString();
+                    pos++;
+                    return s;
+                }
+                if (c != '\\') {
+                    pos++;
+                    continue;
+                }
+                if (sb == null) sb = new StringBuilder();
+                sb.append(text, start, pos);
+                pos++;
+                char e = peek();
+                pos++;
+                switch (e) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) throw new IllegalArgumentException("Bad \\u escape");
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(e); // \" \\ \/
+                }
+                start = pos;
+            }
+        }
+    }
+}
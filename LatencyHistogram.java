@@ -0,0 +1,87 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free latency histogram with HDR-style log-linear buckets: values below 64 ns get a bucket
+// each, and every power of two above that is split into 32 equal buckets, so any recorded value
+// is reported within about 3% of its true value. Values above ~18 minutes (2^40 ns) land in the
+// top bucket. Recording is a few atomic adds and never allocates.
+final class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS; // direct buckets for 0..63
+    private static final int HALF = SUB_COUNT / 2; // buckets per power of two above that
+    private static final int MAX_BIT = 40;
+    private static final int BUCKETS = SUB_COUNT + (MAX_BIT - SUB_BITS + 1) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        counts.incrementAndGet(bucket(value));
+        total.add(value);
+        long seen;
+        while (value > (seen = max.get()) && !max.compareAndSet(seen, value)) {
+            // lost a race with another larger value; re-check
+        }
+    }
+
+    // Consistent enough for reporting: buckets are read one by one while recording continues
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, total.sum(), max.get());
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_COUNT) return (int) value;
+        if (value >= 1L << MAX_BIT) return BUCKETS - 1;
+        int bit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = bit - SUB_BITS + 1;
+        return SUB_COUNT + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    // Largest value that falls into the bucket
+    static long highestValue(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        int k = bucket - SUB_COUNT;
+        int shift = k / HALF + 1;
+        long mantissa = k % HALF + HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    static final class Snapshot {
+        final long count;
+        final long totalNanos;
+        final long maxNanos;
+        private final long[] counts;
+
+        Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        double meanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        // Value at or below which the fraction p (0..1) of recorded values fall
+        long percentile(double p) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(highestValue(i), maxNanos);
+            }
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Brute-force protection for logins, consulted before any credentials are hashed. An account is
+// locked after too many failed attempts within the window, and each further lockout in a row
+// doubles until a successful login (or a quiet spell as long as the longest lock) resets it. A
+// source (client address) is refused while it has too many failures within the window, whichever
+// accounts they were against.
+//
+// Configured with system properties:
+//   bank.login.maxFailures        failed attempts that lock an account (default 3)
+//   bank.login.windowSeconds      sliding window failures are counted over (default 900)
+//   bank.login.lockSeconds        first lockout; later ones double (default 60)
+//   bank.login.maxLockSeconds     longest lockout (default 86400)
+//   bank.login.sourceMaxFailures  failures within the window that block a source (default 20)
+//   bank.login.sourceSlots        size of the source table, a power of two (default 16384)
+//
+// Failure counts are sliding windows of WINDOW_BUCKETS time buckets, each a long holding the bucket
+// number and its count, so a check is a fixed number of array reads whatever the attack rate.
+// Sources are hashed (with a per-process random seed) into a fixed table of bank.login.sourceSlots
+// windows rather than kept individually: memory does not grow with the number of addresses, and a
+// collision can only make two sources share a limit.
+//
+// An allowed check reserves one of the account's remaining failures until the caller reports the
+// outcome with failed, succeeded or cancelled, so concurrent attempts cannot all pass the check
+// before any of them has failed: at most maxFailures passwords are verified per lockout.
+//
+// An account's history gets one LOGIN_FAILED entry for the first failure of a run and one
+// ACCOUNT_LOCKED entry per lockout (amount: the lock in seconds) instead of an entry per attempt.
+// SecurityEventIndex still gets every failed attempt, so failed-login queries count attempts; the
+// ones not in the history are not journaled, so after a restart it holds one per run.
+// Lockouts are journaled with the rest of the history, so restoring it re-applies any lock that
+// has not run out yet (see restoreLock).
+//
+//   java LoginGuard [attempts]   simulates a brute-force attack and reports memory and check cost
+final class LoginGuard {
+    private static final LoginGuard GLOBAL = new LoginGuard(
+            Integer.getInteger("bank.login.maxFailures", 3),
+            Long.getLong("bank.login.windowSeconds", 900L),
+            Long.getLong("bank.login.lockSeconds", 60L),
+            Long.getLong("bank.login.maxLockSeconds", 86_400L),
+            Integer.getInteger("bank.login.sourceMaxFailures", 20),
+            Integer.getInteger("bank.login.sourceSlots", 1 << 14),
+            System::currentTimeMillis);
+
+    private static final int WINDOW_BUCKETS = 16;
+    private static final int COUNT_BITS = 20; // a bucket's count saturates at 2^20 - 1
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final int SOURCE_STRIPES = 64;
+
+    enum Decision {
+        ALLOWED,
+        ACCOUNT_LOCKED,
+        SOURCE_LIMITED,
+        ATTEMPTS_PENDING // attempts still being verified could use up the failures the account has left
+    }
+
+    // Per account; guarded by itself. Only accounts that have failed a login or have one in
+    // progress have one.
+    private static final class AccountState {
+        final long[] failures = new long[WINDOW_BUCKETS];
+        long lockedUntilMillis;
+        int lockouts; // in a row, for the doubling
+        boolean failing; // the current run of failures already has its LOGIN_FAILED entry
+        int inFlight; // allowed attempts whose outcome has not been reported yet
+        boolean discarded; // removed from the map; whoever finds it must look again
+    }
+
+    private final int maxFailures;
+    private final long bucketMillis;
+    private final long lockMillis;
+    private final long maxLockMillis;
+    private final int sourceMaxFailures;
+    private final int sourceMask;
+    private final long sourceSeed = new SecureRandom().nextLong();
+    private final long[] sourceBuckets; // sourceSlots windows of WINDOW_BUCKETS
+    private final Object[] sourceLocks = new Object[SOURCE_STRIPES];
+    private final Map<Long, AccountState> accounts = new ConcurrentHashMap<>();
+    private final LongSupplier clock; // epoch milliseconds
+
+    LoginGuard(int maxFailures, long windowSeconds, long lockSeconds, long maxLockSeconds,
+               int sourceMaxFailures, int sourceSlots, LongSupplier clock) {
+        if (maxFailures <= 0 || windowSeconds <= 0 || lockSeconds <= 0 || sourceMaxFailures <= 0 || sourceSlots <= 0) {
+            throw new IllegalArgumentException("login guard limits must be positive");
+        }
+        this.maxFailures = maxFailures;
+        this.bucketMillis = Math.max(1, TimeUnit.SECONDS.toMillis(windowSeconds) / WINDOW_BUCKETS);
+        this.lockMillis = TimeUnit.SECONDS.toMillis(lockSeconds);
+        this.maxLockMillis = TimeUnit.SECONDS.toMillis(Math.max(lockSeconds, maxLockSeconds));
+        this.sourceMaxFailures = sourceMaxFailures;
+        int slots = Integer.highestOneBit(sourceSlots);
+        this.sourceMask = slots - 1;
+        this.sourceBuckets = new long[slots * WINDOW_BUCKETS];
+        for (int i = 0; i < SOURCE_STRIPES; i++) {
+            sourceLocks[i] = new Object();
+        }
+        this.clock = clock;
+    }
+
+    public static LoginGuard global() {
+        return GLOBAL;
+    }
+
+    // Whether an attempt may go ahead; source may be null when there is none (console, scripts).
+    // ALLOWED reserves a failure, so the caller must then call failed, succeeded or cancelled.
+    public Decision check(BankAccount account, String source) {
+        long now = clock.getAsLong();
+        boolean sourceLimited = source != null && sourceFailures(source, now) >= sourceMaxFailures;
+        long accountNumber = account.getAccountNumber();
+        Decision decision;
+        while (true) {
+            AccountState state = accounts.computeIfAbsent(accountNumber, k -> new AccountState());
+            synchronized (state) {
+                if (state.discarded) continue;
+                if (now < state.lockedUntilMillis) {
+                    decision = Decision.ACCOUNT_LOCKED;
+                } else if (sourceLimited) {
+                    decision = Decision.SOURCE_LIMITED;
+                } else if (sum(state.failures, 0, now / bucketMillis) + state.inFlight >= maxFailures) {
+                    decision = Decision.ATTEMPTS_PENDING;
+                } else {
+                    state.inFlight++;
+                    decision = Decision.ALLOWED;
+                }
+                discardIfIdle(accountNumber, state, now);
+            }
+            break;
+        }
+        if (decision != Decision.ALLOWED) Metrics.global().increment(Metrics.Counter.LOGIN_REFUSED, account);
+        return decision;
+    }
+
+    // Seconds until check could allow the attempt again, 0 if it already would
+    public long retryAfterSeconds(long accountNumber, String source) {
+        long now = clock.getAsLong();
+        long wait = 0;
+        AccountState state = accounts.get(accountNumber);
+        if (state != null) {
+            synchronized (state) {
+                wait = state.lockedUntilMillis - now;
+                // pending attempts finish in well under a second
+                if (state.inFlight > 0 && wait <= 0) wait = 1;
+            }
+        }
+        // a source's count drops as its oldest bucket leaves the window
+        if (source != null && sourceFailures(source, now) >= sourceMaxFailures) {
+            wait = Math.max(wait, bucketMillis - now % bucketMillis);
+        }
+        return wait <= 0 ? 0 : (wait + 999) / 1000;
+    }
+
+    // Failed attempts left before the account is locked
+    public int attemptsLeft(long accountNumber) {
+        AccountState state = accounts.get(accountNumber);
+        if (state == null) return maxFailures;
+        long now = clock.getAsLong();
+        synchronized (state) {
+            if (now < state.lockedUntilMillis) return 0;
+            return Math.max(0, maxFailures - sum(state.failures, 0, now / bucketMillis));
+        }
+    }
+
+    public void failed(BankAccount account, String source) {
+        long now = clock.getAsLong();
+        long bucket = now / bucketMillis;
+        if (source != null) {
+            int base = sourceSlot(source) * WINDOW_BUCKETS;
+            synchronized (sourceLocks[base / WINDOW_BUCKETS & (SOURCE_STRIPES - 1)]) {
+                add(sourceBuckets, base, bucket);
+            }
+        }
+        Metrics.global().increment(Metrics.Counter.LOGIN_FAILED, account);
+        boolean first;
+        int failures;
+        long lockedFor = 0;
+        while (true) {
+            AccountState state = accounts.computeIfAbsent(account.getAccountNumber(), k -> new AccountState());
+            synchronized (state) {
+                if (state.discarded) continue;
+                if (state.inFlight > 0) state.inFlight--;
+                if (now < state.lockedUntilMillis) {
+                    // raced with the lockout; nothing more to record in the history
+                    first = false;
+                    failures = 0;
+                    break;
+                }
+                if (state.lockouts > 0 && now - state.lockedUntilMillis >= maxLockMillis) state.lockouts = 0;
+                failures = add(state.failures, 0, bucket);
+                first = !state.failing;
+                state.failing = true;
+                if (failures >= maxFailures) {
+                    lockedFor = lockMillis << Math.min(state.lockouts, 30);
+                    if (lockedFor <= 0 || lockedFor > maxLockMillis) lockedFor = maxLockMillis;
+                    state.lockouts++;
+                    state.lockedUntilMillis = now + lockedFor;
+                    Arrays.fill(state.failures, 0L); // the next run starts when the lock ends
+                    state.failing = false;
+                }
+            }
+            break;
+        }
+        // recorded outside the state's lock, which is never held while taking an account's
+        if (first) {
+            account.record(TransactionType.LOGIN_FAILED); // also indexes it
+        } else {
+            SecurityEventIndex.global().record(account.getAccountNumber(), TransactionType.LOGIN_FAILED,
+                    TransactionLog.nowNanos());
+        }
+        if (lockedFor > 0) {
+            long seconds = lockedFor / 1000;
+            account.record(TransactionType.ACCOUNT_LOCKED, seconds,
+                    "after " + failures + " failed attempts, for " + seconds + " s");
+        }
+    }
+
+    public void succeeded(BankAccount account, String source) {
+        AccountState state = accounts.get(account.getAccountNumber());
+        if (state != null) {
+            long now = clock.getAsLong();
+            synchronized (state) {
+                if (state.inFlight > 0) state.inFlight--;
+                // a lockout that raced in after the check still applies
+                if (now >= state.lockedUntilMillis) {
+                    Arrays.fill(state.failures, 0L);
+                    state.lockouts = 0;
+                    state.failing = false;
+                }
+                discardIfIdle(account.getAccountNumber(), state, now);
+            }
+        }
+        account.record(TransactionType.LOGIN_SUCCESS);
+    }
+
+    // Gives back the failure an allowed check reserved, for an attempt that ended without a verdict
+    // (e.g. the verifier threw or the user went away)
+    public void cancelled(BankAccount account) {
+        AccountState state = accounts.get(account.getAccountNumber());
+        if (state == null) return;
+        synchronized (state) {
+            if (state.inFlight > 0) state.inFlight--;
+            discardIfIdle(account.getAccountNumber(), state, clock.getAsLong());
+        }
+    }
+
+    // Drops state that no longer holds anything: no attempt in progress, lock or counted failure.
+    // Caller holds the state's lock.
+    private void discardIfIdle(long accountNumber, AccountState state, long now) {
+        if (state.inFlight > 0 || state.lockouts > 0 || now < state.lockedUntilMillis
+                || sum(state.failures, 0, now / bucketMillis) > 0) {
+            return;
+        }
+        state.discarded = true;
+        accounts.remove(accountNumber, state);
+    }
+
+    // Re-applies a journaled lockout (timestamp and length of an ACCOUNT_LOCKED entry) while restoring
+    void restoreLock(long accountNumber, long timestampNanos, long lockSeconds) {
+        if (lockSeconds <= 0) return; // written before lockouts were enforced
+        long until = TimeUnit.NANOSECONDS.toMillis(timestampNanos) + TimeUnit.SECONDS.toMillis(lockSeconds);
+        if (clock.getAsLong() - until >= maxLockMillis) return; // long over; the doubling has reset too
+        AccountState state = accounts.computeIfAbsent(accountNumber, k -> new AccountState());
+        synchronized (state) {
+            if (until <= state.lockedUntilMillis) return;
+            state.lockedUntilMillis = until;
+            int lockouts = 1;
+            while (lockouts < 31 && lockMillis << lockouts <= TimeUnit.SECONDS.toMillis(lockSeconds)) lockouts++;
+            state.lockouts = lockouts;
+            state.failing = false;
+        }
+    }
+
+    // Accounts currently holding guard state
+    int trackedAccounts() {
+        return accounts.size();
+    }
+
+    private int sourceFailures(String source, long now) {
+        int base = sourceSlot(source) * WINDOW_BUCKETS;
+        synchronized (sourceLocks[base / WINDOW_BUCKETS & (SOURCE_STRIPES - 1)]) {
+            return sum(sourceBuckets, base, now / bucketMillis);
+        }
+    }
+
+    private int sourceSlot(String source) {
+        long h = sourceSeed;
+        for (int i = 0; i < source.length(); i++) {
+            h = (h ^ source.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & sourceMask;
+    }
+
+    // ---- sliding windows: WINDOW_BUCKETS longs of (bucket number << COUNT_BITS | count) ----
+
+    // Counts one failure in the bucket for now and returns the window's total
+    private static int add(long[] buckets, int base, long bucket) {
+        int slot = base + (int) (bucket % WINDOW_BUCKETS);
+        long packed = buckets[slot];
+        long count = packed >>> COUNT_BITS == bucket ? packed & COUNT_MASK : 0;
+        if (count < COUNT_MASK) count++;
+        buckets[slot] = bucket << COUNT_BITS | count;
+        return sum(buckets, base, bucket);
+    }
+
+    private static int sum(long[] buckets, int base, long bucket) {
+        int total = 0;
+        for (int i = base; i < base + WINDOW_BUCKETS; i++) {
+            long packed = buckets[i];
+            if (bucket - (packed >>> COUNT_BITS) < WINDOW_BUCKETS) total += (int) (packed & COUNT_MASK);
+        }
+        return total;
+    }
+
+    // Drives a simulated attack through a private guard on a simulated clock: every attempt uses a
+    // wrong password from a fresh address against one of a few accounts, at 1000 attempts a second.
+    // Memory, history entries and the cost of a check should not depend on the number of attempts.
+    public static void main(String[] args) {
+        int attempts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long[] now = {System.currentTimeMillis()};
+        LoginGuard guard = new LoginGuard(3, 900, 60, 86_400, 20, 1 << 14, () -> now[0]);
+        BankAccount[] targets = new BankAccount[8];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = new SavingsAccount("Target " + i, "01/01/1990");
+        }
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long refused = 0;
+        long checkNanos = 0;
+        for (int i = 0; i < attempts; i++) {
+            now[0]++;
+            BankAccount account = targets[i & (targets.length - 1)];
+            String source = "10." + (i >>> 16 & 255) + "." + (i >>> 8 & 255) + "." + (i & 255);
+            long start = System.nanoTime();
+            Decision decision = guard.check(account, source);
+            checkNanos += System.nanoTime() - start;
+            if (decision == Decision.ALLOWED) {
+                guard.failed(account, source);
+            } else {
+                refused++;
+            }
+        }
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        int entries = 0;
+        for (BankAccount account : targets) {
+            entries += account.getTransactions().size();
+        }
+        System.out.printf("%d attempts over %d simulated s: %d refused, %d verified and failed%n",
+                attempts, attempts / 1000, refused, attempts - refused);
+        System.out.printf("history entries across %d accounts: %d, guard state: %d accounts + %d KB source table%n",
+                targets.length, entries, guard.trackedAccounts(), guard.sourceBuckets.length * 8 / 1024);
+        System.out.printf("heap growth: %d KB, mean check: %.0f ns%n",
+                (heapAfter - heapBefore) / 1024, (double) checkNanos / attempts);
+    }
+}
@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Operation counts, latencies and failure counts, per operation and account type. Counters are
+// LongAdders and latencies go to LatencyHistograms, so recording takes no lock and allocates nothing.
+// Every call is counted, but only one call in bank.metrics.sampleEvery is timed: a pair of
+// System.nanoTime() calls costs more than an in-memory deposit's lookup, and a uniform sample gives
+// the same percentiles for the operations that run often enough to need them.
+//
+// Configured with system properties:
+//   bank.metrics                  false turns recording off (default true)
+//   bank.metrics.sampleEvery      time one call in this many, rounded up to a power of two (default 16)
+//   bank.metrics.file             where periodic snapshots are written (default: none)
+//   bank.metrics.snapshotSeconds  snapshot interval (default 60)
+// The same text is shown by the console menu and served at GET /metrics by BankHttpServer.
+final class Metrics {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("bank.metrics", "true"));
+    static final long NOT_TIMED = Long.MIN_VALUE;
+    private static final int SAMPLE_MASK =
+            Integer.highestOneBit(Math.max(1, Integer.getInteger("bank.metrics.sampleEvery", 16)) * 2 - 1) - 1;
+
+    enum Operation {
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER,
+        INTEREST,
+        AUTHENTICATE,
+        LOOKUP
+    }
+
+    enum Counter {
+        MIN_BALANCE_DENIED, // savings withdrawal or transfer below the minimum balance
+        OVERDRAFT_DENIED, // current account withdrawal or transfer past the overdraft limit
+        LOGIN_SUCCESS,
+        LOGIN_FAILED, // every failed attempt, though the history records only the first of a run
+        ACCOUNT_LOCKED,
+        LOGIN_REFUSED, // attempts turned away by LoginGuard without checking the credentials
+        RISK_REVIEW, // let through by RiskScorer but flagged
+        RISK_DECLINED // refused by RiskScorer
+    }
+
+    enum AccountKind {
+        SAVINGS,
+        CURRENT,
+        NONE; // lookups that found nothing
+
+        static AccountKind of(BankAccount account) {
+            if (account instanceof SavingsAccount) return SAVINGS;
+            return account instanceof CurrentAccount ? CURRENT : NONE;
+        }
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final AccountKind[] KINDS = AccountKind.values();
+    private static final Metrics GLOBAL = new Metrics(); // after the arrays its constructor uses
+
+    private final LongAdder[][] calls = new LongAdder[OPERATIONS.length][KINDS.length];
+    private final LatencyHistogram[][] latencies = new LatencyHistogram[OPERATIONS.length][KINDS.length];
+    private final LongAdder[][] counters = new LongAdder[COUNTERS.length][KINDS.length];
+    private final long startedNanos = System.nanoTime();
+
+    Metrics() {
+        for (int o = 0; o < OPERATIONS.length; o++) {
+            for (int k = 0; k < KINDS.length; k++) {
+                calls[o][k] = new LongAdder();
+                latencies[o][k] = new LatencyHistogram();
+            }
+        }
+        for (int c = 0; c < COUNTERS.length; c++) {
+            for (int k = 0; k < KINDS.length; k++) {
+                counters[c][k] = new LongAdder();
+            }
+        }
+    }
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    // Start time for record(), or NOT_TIMED when this call is not sampled or metrics are off
+    static long start() {
+        if (!ENABLED || (ThreadLocalRandom.current().nextInt() & SAMPLE_MASK) != 0) return NOT_TIMED;
+        return System.nanoTime();
+    }
+
+    // Counts the call and records its latency if it was sampled; account may be null (a lookup
+    // that found nothing)
+    public void record(Operation operation, BankAccount account, long startNanos) {
+        if (!ENABLED) return;
+        int kind = AccountKind.of(account).ordinal();
+        calls[operation.ordinal()][kind].increment();
+        if (startNanos != NOT_TIMED) latencies[operation.ordinal()][kind].record(System.nanoTime() - startNanos);
+    }
+
+    // record() for each call made by one batch: accounts[i] is call i's account, null for a call
+    // that is not counted. A sampled batch's latency is shared equally between its calls.
+    public void recordBatch(Operation operation, BankAccount[] accounts, long startNanos) {
+        if (!ENABLED || accounts.length == 0) return;
+        long share = startNanos == NOT_TIMED ? 0 : (System.nanoTime() - startNanos) / accounts.length;
+        for (BankAccount account : accounts) {
+            if (account == null) continue;
+            int kind = AccountKind.of(account).ordinal();
+            calls[operation.ordinal()][kind].increment();
+            if (startNanos != NOT_TIMED) latencies[operation.ordinal()][kind].record(share);
+        }
+    }
+
+    public void increment(Counter counter, BankAccount account) {
+        if (!ENABLED) return;
+        counters[counter.ordinal()][AccountKind.of(account).ordinal()].increment();
+    }
+
+    // Counts logins and lockouts as they are recorded in an account's history; failures are counted
+    // by LoginGuard, since they are not all recorded
+    void transactionRecorded(TransactionType type, BankAccount account) {
+        switch (type) {
+            case LOGIN_SUCCESS:
+                increment(Counter.LOGIN_SUCCESS, account);
+                break;
+            case ACCOUNT_LOCKED:
+                increment(Counter.ACCOUNT_LOCKED, account);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // A debit refused by the account's balance floor
+    void debitDenied(BankAccount account) {
+        increment(account instanceof SavingsAccount ? Counter.MIN_BALANCE_DENIED : Counter.OVERDRAFT_DENIED, account);
+    }
+
+    public LatencyHistogram.Snapshot latency(Operation operation, AccountKind kind) {
+        return latencies[operation.ordinal()][kind.ordinal()].snapshot();
+    }
+
+    public long calls(Operation operation, AccountKind kind) {
+        return calls[operation.ordinal()][kind.ordinal()].sum();
+    }
+
+    public long count(Counter counter, AccountKind kind) {
+        return counters[counter.ordinal()][kind.ordinal()].sum();
+    }
+
+    // Human-readable dump of everything recorded so far
+    public String dump() {
+        StringBuilder sb = new StringBuilder(2048);
+        sb.append("Metrics at ").append(LocalDateTime.now()).append(", uptime ")
+                .append(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startedNanos)).append(" s")
+                .append(ENABLED ? ", latencies (us) from 1 in " + (SAMPLE_MASK + 1) + " calls" : " (recording disabled)")
+                .append('\n');
+        sb.append(String.format("%-13s %-8s %10s %9s %9s %9s %9s %9s %10s%n",
+                "operation", "account", "calls", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        for (Operation operation : OPERATIONS) {
+            for (AccountKind kind : KINDS) {
+                long count = calls(operation, kind);
+                if (count == 0) continue;
+                LatencyHistogram.Snapshot s = latency(operation, kind);
+                sb.append(String.format("%-13s %-8s %10d %9.1f %9.1f %9.1f %9.1f %9.1f %10.1f%n",
+                        operation, kind, count, s.meanNanos() / 1e3, s.percentile(0.50) / 1e3,
+                        s.percentile(0.90) / 1e3, s.percentile(0.99) / 1e3, s.percentile(0.999) / 1e3,
+                        s.maxNanos / 1e3));
+            }
+        }
+        for (Counter counter : COUNTERS) {
+            for (AccountKind kind : KINDS) {
+                long value = count(counter, kind);
+                if (value > 0) sb.append(String.format("%-19s %-8s %10d%n", counter, kind, value));
+            }
+        }
+        return sb.toString();
+    }
+
+    // Writes dump() to the file every periodSeconds, replacing the previous snapshot atomically
+    public ScheduledExecutorService startSnapshots(Path file, long periodSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                writeSnapshot(file);
+            } catch (IOException ex) {
+                System.err.println("Could not write metrics snapshot: " + ex.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        return scheduler;
+    }
+
+    void writeSnapshot(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write(dump());
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Starts periodic snapshots if bank.metrics.file is set
+    static void startSnapshotsFromSystemProperties() {
+        String file = System.getProperty("bank.metrics.file");
+        if (file == null || file.trim().isEmpty() || !ENABLED) return;
+        GLOBAL.startSnapshots(Paths.get(file.trim()), Math.max(1L, Long.getLong("bank.metrics.snapshotSeconds", 60L)));
+    }
+}
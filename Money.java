@@ -0,0 +1,73 @@
+// Money is held as long paise (1 rupee = 100 paise) so balance arithmetic is exact.
+// These helpers convert between paise and the "123.45" text shown to users.
+final class Money {
+    public static final long PAISE_PER_RUPEE = 100L;
+
+    private Money() {
+    }
+
+    public static long ofRupees(long rupees) {
+        return Math.multiplyExact(rupees, PAISE_PER_RUPEE);
+    }
+
+    // Parses "123", "123.4" or "123.45" (optionally signed) into paise.
+    // Throws NumberFormatException for anything else, including more than 2 decimal places.
+    public static long parse(String text) {
+        if (text == null) throw new NumberFormatException("null amount");
+        String s = text.trim();
+        int len = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (len > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+            negative = s.charAt(0) == '-';
+            i++;
+        }
+        if (i == len) throw new NumberFormatException("Invalid amount: " + text);
+        long rupees = 0;
+        int digits = 0;
+        while (i < len && s.charAt(i) != '.') {
+            rupees = rupees * 10 + digit(s, i, text);
+            if (++digits > 16) throw new NumberFormatException("Amount out of range: " + text);
+            i++;
+        }
+        long paise = 0;
+        int decimals = 0;
+        if (i < len) {
+            i++; // skip '.'
+            while (i < len) {
+                if (++decimals > 2) throw new NumberFormatException("At most 2 decimal places allowed: " + text);
+                paise = paise * 10 + digit(s, i, text);
+                i++;
+            }
+            if (decimals == 1) paise *= 10;
+        }
+        if (digits == 0 && decimals == 0) throw new NumberFormatException("Invalid amount: " + text);
+        long total = rupees * PAISE_PER_RUPEE + paise; // 16 digits of rupees cannot overflow
+        return negative ? -total : total;
+    }
+
+    private static int digit(String s, int i, String text) {
+        char c = s.charAt(i);
+        if (c < '0' || c > '9') throw new NumberFormatException("Invalid amount: " + text);
+        return c - '0';
+    }
+
+    public static String format(long paise) {
+        return appendTo(new StringBuilder(24), paise).toString();
+    }
+
+    // Appends paise as "-1234.05" without going through String.format or floating point.
+    public static StringBuilder appendTo(StringBuilder sb, long paise) {
+        long rupees = paise / PAISE_PER_RUPEE;
+        long fraction = paise % PAISE_PER_RUPEE;
+        if (paise < 0) {
+            // negate the parts rather than paise itself so Long.MIN_VALUE does not overflow
+            sb.append('-');
+            rupees = -rupees;
+            fraction = -fraction;
+        }
+        sb.append(rupees).append('.');
+        if (fraction < 10) sb.append('0');
+        return sb.append(fraction);
+    }
+}
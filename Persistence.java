@@ -0,0 +1,243 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Keeps the account registry durable: recovery loads the latest snapshot and replays only the
+// journal tail written after it; while running, every account event goes to the Journal and a
+// compact snapshot is taken periodically so old journal segments can be deleted.
+//
+// In fast-start mode a snapshot is split in two: the .snap file holds only account headers and
+// the transaction histories go to a HistoryFile beside it. Recovery then builds the accounts from
+// the headers alone and each history is read the first time it is asked for. A history still
+// unread at the next snapshot is copied byte for byte into the new file. Recovery reads either
+// kind of snapshot, so the mode can be switched between restarts.
+//
+// Configured with system properties:
+//   bank.dataDir                  directory for journal and snapshots (default "bank-data", "" disables)
+//   bank.fsync                    EVERY_WRITE, GROUP_COMMIT (default) or OS_MANAGED
+//   bank.fsync.windowMillis       extra group commit batching delay, or OS_MANAGED write interval (default 0; min 1 for OS_MANAGED)
+//   bank.snapshot.intervalSeconds time between snapshots (default 300, 0 disables periodic snapshots)
+//   bank.fastStart                write fast-start snapshots (default false)
+class Persistence implements Closeable {
+    static final boolean FAST_START = Boolean.getBoolean("bank.fastStart");
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final String HISTORY_SUFFIX = ".hist";
+
+    private final Path dir;
+    private final AccountRegistry registry;
+    private final Journal journal;
+    private final ScheduledExecutorService scheduler;
+    private final Object snapshotLock = new Object();
+    private HistoryFile history; // where unread histories are, guarded by snapshotLock
+    private boolean closed;
+
+    private Persistence(Path dir, AccountRegistry registry, Journal journal, HistoryFile history,
+                        long snapshotIntervalSeconds) {
+        this.dir = dir;
+        this.registry = registry;
+        this.journal = journal;
+        this.history = history;
+        if (snapshotIntervalSeconds > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "snapshot-writer");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::periodicSnapshot, snapshotIntervalSeconds,
+                    snapshotIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    // Returns null when persistence is disabled with -Dbank.dataDir=
+    public static Persistence fromSystemProperties(AccountRegistry registry) throws IOException {
+        String dataDir = System.getProperty("bank.dataDir", "bank-data");
+        if (dataDir.trim().isEmpty()) return null;
+        Journal.FsyncPolicy policy = Journal.FsyncPolicy.valueOf(
+                System.getProperty("bank.fsync", Journal.FsyncPolicy.GROUP_COMMIT.name()).trim().toUpperCase());
+        return open(Paths.get(dataDir), registry, policy, Long.getLong("bank.fsync.windowMillis", 0L),
+                Long.getLong("bank.snapshot.intervalSeconds", 300L));
+    }
+
+    public static Persistence open(Path dir, AccountRegistry registry, Journal.FsyncPolicy policy,
+                                   long windowMillis, long snapshotIntervalSeconds) throws IOException {
+        Files.createDirectories(dir);
+        HistoryFile[] history = new HistoryFile[1];
+        long lastSequence = recover(dir, registry, history);
+        AccountNumberAllocator.global().useLeaseFile(dir.resolve("allocator.lease"));
+        Journal journal = new Journal(dir, policy, windowMillis, lastSequence);
+        AccountEvents.addListener(journal);
+        return new Persistence(dir, registry, journal, history[0], snapshotIntervalSeconds);
+    }
+
+    // Loads the latest snapshot and replays the journal after it, without opening the journal for
+    // writing. Returns the last journal sequence; history[0] is set to the snapshot's HistoryFile
+    // if it has one.
+    static long recover(Path dir, AccountRegistry registry, HistoryFile[] history) throws IOException {
+        long start = System.nanoTime();
+        Path snapshot = latestSnapshot(dir);
+        long snapshotSequence = 0;
+        if (snapshot != null) {
+            snapshotSequence = snapshotSequence(snapshot);
+            Path historyPath = historyPath(snapshot);
+            if (Files.exists(historyPath)) history[0] = new HistoryFile(historyPath);
+            loadSnapshot(snapshot, registry, history[0]);
+        }
+        int fromSnapshot = registry.size();
+        long[] replayed = Journal.replay(dir, snapshotSequence, registry);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (registry.size() > 0 || replayed[1] > 0) {
+            System.out.println("Recovered " + registry.size() + " accounts (" + fromSnapshot + " from snapshot, "
+                    + replayed[1] + " journal records replayed) in " + millis + " ms.");
+        }
+        return replayed[0];
+    }
+
+    // Writes a snapshot of every account and drops the journal segments it covers
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            if (closed) return;
+            long boundary = journal.roll();
+            // Every event up to boundary is already applied to the in-memory accounts, so each account
+            // copied below reflects at least that much; later events stay in the journal tail and
+            // replay skips the ones an account already contains via its journal sequence.
+            Path target = dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, boundary, SNAPSHOT_SUFFIX));
+            // nothing was journaled since that snapshot, so it is current; rewriting it would also
+            // truncate the history file unread histories are still being read from
+            if (Files.exists(target)) return;
+            Path tmp = dir.resolve(target.getFileName() + ".tmp");
+            CRC32 crc = new CRC32();
+            ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+            BankAccount[] accounts = registry.toArray();
+            // fast start: unread histories as they were and their copies in the new HistoryFile
+            HistoryFile.Region[] unread = FAST_START ? new HistoryFile.Region[accounts.length] : null;
+            HistoryFile.Region[] copies = FAST_START ? new HistoryFile.Region[accounts.length] : null;
+            HistoryFile written = null;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 HistoryFile.Writer histories = FAST_START ? new HistoryFile.Writer(historyPath(target)) : null) {
+                for (int i = 0; i < accounts.length; i++) {
+                    BankAccount account = accounts[i];
+                    account.balanceLock().lock();
+                    try {
+                        if (histories == null) {
+                            buf = JournalCodec.writeSnapshotAccount(buf, crc, account);
+                        } else {
+                            HistoryFile.Region region;
+                            unread[i] = account.untouchedHistory();
+                            if (unread[i] != null) {
+                                region = copies[i] = histories.copy(unread[i]);
+                            } else {
+                                region = histories.write(account.getTransactions());
+                            }
+                            buf = JournalCodec.writeSnapshotHeader(buf, crc, account, region);
+                        }
+                    } finally {
+                        account.balanceLock().unlock();
+                    }
+                    if (buf.position() >= (1 << 19)) drain(out, buf);
+                }
+                drain(out, buf);
+                if (histories != null) written = histories.finish();
+                out.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // histories still unread are read from the new file from now on, so the old one can go
+            for (int i = 0; copies != null && i < accounts.length; i++) {
+                if (copies[i] != null) accounts[i].movePendingHistory(unread[i], copies[i]);
+            }
+            if (history != null) history.close();
+            history = written;
+            try (DirectoryStream<Path> old = Files.newDirectoryStream(dir, SNAPSHOT_PREFIX + "*")) {
+                for (Path p : old) {
+                    String name = p.getFileName().toString();
+                    if (!p.equals(target) && !p.equals(historyPath(target))
+                            && (name.endsWith(SNAPSHOT_SUFFIX) || name.endsWith(HISTORY_SUFFIX))) {
+                        Files.deleteIfExists(p);
+                    }
+                }
+            }
+            journal.deleteSegmentsThrough(boundary);
+        }
+    }
+
+    private void periodicSnapshot() {
+        try {
+            snapshot();
+        } catch (IOException | UncheckedIOException ex) {
+            System.err.println("Snapshot failed: " + ex.getMessage());
+        }
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    private static Path latestSnapshot(Path dir) throws IOException {
+        Path latest = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path p : stream) {
+                if (latest == null || snapshotSequence(p) > snapshotSequence(latest)) latest = p;
+            }
+        }
+        return latest;
+    }
+
+    private static long snapshotSequence(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    private static Path historyPath(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return snapshot.resolveSibling(name.substring(0, name.length() - SNAPSHOT_SUFFIX.length()) + HISTORY_SUFFIX);
+    }
+
+    private static void loadSnapshot(Path snapshot, AccountRegistry registry, HistoryFile history) throws IOException {
+        try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            JournalCodec.Reader reader = new JournalCodec.Reader(in);
+            ByteBuffer payload;
+            long[] progress = new long[2];
+            while ((payload = reader.next()) != null) {
+                JournalCodec.apply(payload, registry, 0, progress, history);
+            }
+            if (!reader.reachedEnd()) {
+                throw new IOException("Snapshot " + snapshot + " is corrupt");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) scheduler.shutdownNow();
+        synchronized (snapshotLock) {
+            if (closed) return;
+            try {
+                snapshot();
+            } finally {
+                closed = true;
+                AccountEvents.removeListener(journal);
+                journal.close();
+                if (history != null) history.close();
+            }
+        }
+    }
+}
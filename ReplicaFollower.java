@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+// Hot standby: keeps a copy of a primary's accounts by applying the events its Replicator streams.
+// It starts from the snapshot the primary sends on connect and then applies events as they arrive,
+// acknowledging each heartbeat once everything sent before it has been applied. Each account keeps
+// the sequence of the last event applied to it, so events the snapshot already contains are skipped.
+//
+// When the primary goes away the copy is kept as it is. Given a directory, the follower then writes
+// its accounts there as a snapshot, so a new primary started with -Dbank.dataDir=<dir> takes over
+// with them; accounts are only as current as the last event received.
+//
+//   java ReplicaFollower host:port [promoteDir]
+final class ReplicaFollower {
+    private static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final AccountRegistry registry;
+    private final long[] progress = new long[2]; // highest sequence applied, records applied
+    private long appliedSequence;
+    private boolean caughtUp;
+    private long heartbeats;
+
+    ReplicaFollower(AccountRegistry registry) {
+        this.registry = registry;
+    }
+
+    // Applies the stream until the primary closes it; returns false if it ended before catch-up
+    // finished, in which case the copy is incomplete
+    boolean follow(InetSocketAddress primary) throws IOException {
+        long start = System.nanoTime();
+        long nextReport = start + REPORT_NANOS;
+        try (SocketChannel channel = SocketChannel.open(primary)) {
+            channel.socket().setTcpNoDelay(true);
+            System.out.println("Following " + primary);
+            JournalCodec.Reader reader = new JournalCodec.Reader(channel);
+            ByteBuffer ack = ByteBuffer.allocate(16);
+            ByteBuffer payload;
+            while ((payload = reader.next()) != null) {
+                byte kind = payload.get(payload.position());
+                if (kind == JournalCodec.HEARTBEAT) {
+                    long sequence = payload.getLong(payload.position() + 1);
+                    appliedSequence = Math.max(appliedSequence, sequence);
+                    heartbeats++;
+                    ack.clear();
+                    ack.putLong(appliedSequence).putLong(payload.getLong(payload.position() + 9)).flip();
+                    while (ack.hasRemaining()) {
+                        channel.write(ack);
+                    }
+                    long now = System.nanoTime();
+                    if (now >= nextReport) {
+                        System.out.println(status());
+                        nextReport = now + REPORT_NANOS;
+                    }
+                } else if (kind == JournalCodec.CAUGHT_UP) {
+                    appliedSequence = payload.getLong(payload.position() + 1);
+                    caughtUp = true;
+                    System.out.printf("Caught up: %d accounts at sequence %d in %d ms%n", registry.size(),
+                            appliedSequence, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                } else {
+                    JournalCodec.apply(payload, registry, 0, progress);
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("Replication stream failed: " + ex.getMessage());
+        }
+        System.out.println("Primary gone. " + status());
+        return caughtUp;
+    }
+
+    String status() {
+        return "Replica at sequence " + appliedSequence + ": " + registry.size() + " accounts, "
+                + progress[1] + " events applied, " + heartbeats + " heartbeats"
+                + (caughtUp ? "" : " (catching up)");
+    }
+
+    // Writes the accounts to dir as a snapshot a new primary recovers from
+    void promote(Path dir) throws IOException {
+        // the sequences held so far are the primary's replication sequences; the new journal starts from 0
+        for (BankAccount account : registry.toArray()) {
+            account.balanceLock().lock();
+            try {
+                account.setJournalSequence(0);
+            } finally {
+                account.balanceLock().unlock();
+            }
+        }
+        Persistence.open(dir, registry, Journal.FsyncPolicy.GROUP_COMMIT, 0, 0).close();
+        System.out.println("Wrote " + registry.size() + " accounts to " + dir.toAbsolutePath()
+                + "; start the new primary with -Dbank.dataDir=" + dir);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args[0].lastIndexOf(':') < 0) {
+            System.err.println("Usage: java ReplicaFollower host:port [promoteDir]");
+            System.exit(2);
+        }
+        int colon = args[0].lastIndexOf(':');
+        InetSocketAddress primary = new InetSocketAddress(args[0].substring(0, colon),
+                Integer.parseInt(args[0].substring(colon + 1)));
+        ReplicaFollower follower = new ReplicaFollower(AccountRegistry.global());
+        boolean complete = follower.follow(primary);
+        if (args.length > 1) {
+            if (!complete) {
+                System.err.println("Not promoting: the stream ended before the initial snapshot was complete.");
+                System.exit(1);
+            }
+            follower.promote(Paths.get(args[1]));
+        }
+    }
+}
@@ -0,0 +1,464 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Streams every account change to follower processes (see ReplicaFollower), so a hot standby holds
+// the same accounts as this process. Events are encoded by JournalCodec exactly as the journal
+// encodes them, numbered with a replication sequence of their own; an atomic group such as both
+// legs of a transfer goes out as one BATCH record, so a follower never applies half of one.
+//
+// Producers append to a shared buffer while holding the account's lock, as with the journal, and
+// never wait for followers. A publisher thread takes everything that has accumulated as one chunk,
+// ends it with a HEARTBEAT record and queues it for every follower: under load events are batched,
+// and they are pipelined, since nothing waits for an acknowledgement before sending more. Each
+// follower has its own writer thread; one whose backlog passes bank.replication.maxQueuedBytes is
+// disconnected rather than buffered without limit.
+//
+// A follower that connects is first sent a snapshot of every account (catch-up) and then the
+// events queued for it since it connected. A snapshot copy of an account carries the account's
+// replication sequence, so the follower skips queued events the copy already contains, as journal
+// replay does. Followers acknowledge each heartbeat once everything before it is applied; the time
+// from publishing a heartbeat to its acknowledgement is the replication lag status() reports.
+//
+// Configured with system properties:
+//   bank.replication.port            port followers connect to; replication is off unless set
+//   bank.replication.maxQueuedBytes  backlog per follower before it is dropped (default 64 MB)
+//
+//   java Replicator [opsPerSecond] [seconds] [accounts]
+//   defaults:        100000         60        10000
+// runs a primary with no console that applies that rate of deposits and withdrawals, printing the
+// followers' lag every 5 seconds; start followers with java ReplicaFollower localhost:<port>. Run it
+// with -Dbank.risk.enabled=false: at this rate per account RiskScorer declines most withdrawals.
+final class Replicator implements AccountEventListener, Closeable {
+    private static final long HEARTBEAT_MILLIS = 100; // heartbeat interval when there are no events
+
+    private final AccountRegistry registry;
+    private final ServerSocketChannel server;
+    private final long maxQueuedBytes;
+    private final Object lock = new Object(); // guards active, crc and lastSequence
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer active = ByteBuffer.allocate(1 << 16);
+    private long lastSequence;
+    private final List<Follower> followers = new CopyOnWriteArrayList<>(); // changed under lock
+    private final ThreadLocal<Batch> batches = ThreadLocal.withInitial(Batch::new);
+    private final Thread acceptor;
+    private final Thread publisher;
+    private volatile boolean closed;
+
+    Replicator(AccountRegistry registry, int port, long maxQueuedBytes) throws IOException {
+        this.registry = registry;
+        this.maxQueuedBytes = maxQueuedBytes;
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        acceptor = daemon(this::acceptLoop, "replication-acceptor");
+        publisher = daemon(this::publishLoop, "replication-publisher");
+        AccountEvents.addListener(this);
+        acceptor.start();
+        publisher.start();
+    }
+
+    // Returns null unless -Dbank.replication.port is set
+    public static Replicator fromSystemProperties(AccountRegistry registry) throws IOException {
+        Integer port = Integer.getInteger("bank.replication.port");
+        if (port == null) return null;
+        return new Replicator(registry, port, Long.getLong("bank.replication.maxQueuedBytes", 64L << 20));
+    }
+
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    // ---- AccountEventListener: called while the account's balance lock is held ----
+
+    @Override
+    public void onAccountCreated(BankAccount account) {
+        Batch batch = batches.get();
+        synchronized (lock) {
+            long sequence = nextSequence(account);
+            if (followers.isEmpty()) return;
+            ByteBuffer target = room(batch, JournalCodec.HEADER_BYTES + 16 + JournalCodec.accountHeaderSize(account));
+            JournalCodec.writeCreated(target, crc, sequence, account);
+            added(batch);
+        }
+    }
+
+    @Override
+    public void onTransaction(BankAccount account, TransactionType type, long amount, long balanceAfter,
+                              long timestampNanos, String description) {
+        Batch batch = batches.get();
+        synchronized (lock) {
+            long sequence = nextSequence(account);
+            if (followers.isEmpty()) return;
+            ByteBuffer target = room(batch, JournalCodec.HEADER_BYTES + 64 + JournalCodec.maxSize(description));
+            JournalCodec.writeTransaction(target, crc, sequence, account.getAccountNumber(), type, amount,
+                    balanceAfter, timestampNanos, description);
+            added(batch);
+        }
+    }
+
+    @Override
+    public void onCredentialsChanged(BankAccount account) {
+        Batch batch = batches.get();
+        synchronized (lock) {
+            long sequence = nextSequence(account);
+            if (followers.isEmpty()) return;
+            ByteBuffer target = room(batch, JournalCodec.HEADER_BYTES + 32
+                    + JournalCodec.maxSize(account.getPasswordHash()) + JournalCodec.maxSize(account.getPinHash()));
+            JournalCodec.writeCredentials(target, crc, sequence, account);
+            added(batch);
+        }
+    }
+
+    @Override
+    public void onAtomicBegin() {
+        batches.get().depth++;
+    }
+
+    @Override
+    public void onAtomicEnd() {
+        Batch batch = batches.get();
+        if (batch.depth == 0) return; // listener was added while a group was already open
+        if (--batch.depth > 0 || batch.count == 0) return;
+        synchronized (lock) {
+            // a group whose followers all left is dropped; a follower arriving later gets it in the snapshot
+            if (!followers.isEmpty()) {
+                wakePublisher();
+                active = JournalCodec.ensureRoom(active, JournalCodec.HEADER_BYTES + 16 + batch.buf.position());
+                JournalCodec.writeBatch(active, crc, lastSequence, batch.count, batch.buf);
+            }
+        }
+        batch.buf.clear();
+        batch.count = 0;
+    }
+
+    private long nextSequence(BankAccount account) {
+        long sequence = ++lastSequence;
+        account.setReplicationSequence(sequence);
+        return sequence;
+    }
+
+    // Buffer the next record goes to: the caller's open batch, or the shared active buffer
+    private ByteBuffer room(Batch batch, int maxBytes) {
+        if (batch.depth > 0) {
+            return batch.buf = JournalCodec.ensureRoom(batch.buf, maxBytes);
+        }
+        wakePublisher();
+        return active = JournalCodec.ensureRoom(active, maxBytes);
+    }
+
+    // Called under lock before writing to active; only the first record of a chunk needs to wake it
+    private void wakePublisher() {
+        if (active.position() == 0) lock.notify();
+    }
+
+    private static void added(Batch batch) {
+        if (batch.depth > 0) batch.count++;
+    }
+
+    // Events of one atomic group on the current thread, held back until the group ends
+    private static final class Batch {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+        int depth;
+        int count;
+    }
+
+    // ---- publishing ----
+
+    private void publishLoop() {
+        while (!closed) {
+            byte[] chunk;
+            synchronized (lock) {
+                if (active.position() == 0) {
+                    try {
+                        lock.wait(HEARTBEAT_MILLIS);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (followers.isEmpty()) {
+                    active.clear();
+                    continue;
+                }
+                active = JournalCodec.ensureRoom(active, JournalCodec.HEADER_BYTES + 17);
+                JournalCodec.writeHeartbeat(active, crc, lastSequence, System.nanoTime());
+                chunk = Arrays.copyOf(active.array(), active.position());
+                active.clear();
+            }
+            for (Follower follower : followers) {
+                follower.enqueue(chunk);
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+                channel.socket().setTcpNoDelay(true);
+            } catch (IOException ex) {
+                if (!closed) System.err.println("Replication accept failed: " + ex.getMessage());
+                return;
+            }
+            Follower follower;
+            synchronized (lock) {
+                // events after lastSequence are queued for it; the snapshot covers the rest
+                follower = new Follower(channel, lastSequence);
+                followers.add(follower);
+            }
+            follower.start();
+        }
+    }
+
+    // One connected follower, as seen from here
+    private final class Follower {
+        private final SocketChannel channel;
+        private final String name;
+        private final long boundary;
+        private final ArrayDeque<byte[]> queue = new ArrayDeque<>(); // guarded by this
+        private long queuedBytes; // guarded by this
+        private boolean gone; // guarded by this
+        private final LatencyHistogram lag = new LatencyHistogram();
+        private volatile long ackedSequence;
+        private volatile long lastLagNanos;
+        private volatile boolean caughtUp;
+        private volatile long snapshotNanos;
+        private volatile long caughtUpAt; // nanoTime the snapshot was sent; earlier heartbeats include its backlog
+
+        Follower(SocketChannel channel, long boundary) {
+            this.channel = channel;
+            this.boundary = boundary;
+            String address;
+            try {
+                address = String.valueOf(channel.getRemoteAddress());
+            } catch (IOException ex) {
+                address = "unknown";
+            }
+            this.name = address;
+        }
+
+        void start() {
+            daemon(this::writeLoop, "replication-writer " + name).start();
+            daemon(this::ackLoop, "replication-acks " + name).start();
+        }
+
+        synchronized void enqueue(byte[] chunk) {
+            if (gone) return;
+            if (queuedBytes + chunk.length > maxQueuedBytes) {
+                disconnect("more than " + maxQueuedBytes + " bytes behind");
+                return;
+            }
+            queue.add(chunk);
+            queuedBytes += chunk.length;
+            notifyAll();
+        }
+
+        private void writeLoop() {
+            ByteBuffer[] batch = new ByteBuffer[64];
+            try {
+                sendSnapshot();
+                while (true) {
+                    int count = 0;
+                    long bytes = 0;
+                    synchronized (this) {
+                        while (queue.isEmpty() && !gone) wait();
+                        if (gone) return;
+                        while (count < batch.length && !queue.isEmpty()) {
+                            byte[] chunk = queue.poll();
+                            queuedBytes -= chunk.length;
+                            bytes += chunk.length;
+                            batch[count++] = ByteBuffer.wrap(chunk);
+                        }
+                    }
+                    while (bytes > 0) {
+                        bytes -= channel.write(batch, 0, count);
+                    }
+                }
+            } catch (IOException ex) {
+                disconnect(ex.getMessage());
+            } catch (InterruptedException ex) {
+                disconnect("interrupted");
+            }
+        }
+
+        // Every account as it is now, then the catch-up marker; queued events follow it
+        private void sendSnapshot() throws IOException {
+            long start = System.nanoTime();
+            CRC32 snapshotCrc = new CRC32();
+            ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+            for (BankAccount account : registry.toArray()) {
+                account.balanceLock().lock();
+                try {
+                    buf = JournalCodec.writeSnapshotAccount(buf, snapshotCrc, account, account.getReplicationSequence());
+                } finally {
+                    account.balanceLock().unlock();
+                }
+                if (buf.position() >= (1 << 19)) drain(buf);
+            }
+            JournalCodec.writeCaughtUp(buf, snapshotCrc, boundary);
+            drain(buf);
+            caughtUpAt = System.nanoTime();
+            snapshotNanos = caughtUpAt - start;
+            caughtUp = true;
+        }
+
+        private void drain(ByteBuffer buf) throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+
+        // Acknowledgements: [applied sequence][echoed heartbeat nanoTime], one per heartbeat
+        private void ackLoop() {
+            ByteBuffer ack = ByteBuffer.allocate(16);
+            try {
+                while (true) {
+                    ack.clear();
+                    while (ack.hasRemaining()) {
+                        if (channel.read(ack) < 0) {
+                            disconnect("closed by follower");
+                            return;
+                        }
+                    }
+                    ackedSequence = ack.getLong(0);
+                    long sent = ack.getLong(8);
+                    long nanos = System.nanoTime() - sent;
+                    lastLagNanos = nanos;
+                    if (caughtUp && sent - caughtUpAt >= 0) lag.record(nanos);
+                }
+            } catch (IOException ex) {
+                disconnect(ex.getMessage());
+            }
+        }
+
+        void disconnect(String reason) {
+            synchronized (this) {
+                if (gone) return;
+                gone = true;
+                queue.clear();
+                queuedBytes = 0;
+                notifyAll();
+            }
+            synchronized (lock) {
+                followers.remove(this);
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already failed
+            }
+            if (!closed) System.err.println("Replication follower " + name + " disconnected: " + reason);
+        }
+
+        String status(long sequence) {
+            if (!caughtUp) return name + ": catching up from sequence " + boundary;
+            LatencyHistogram.Snapshot s = lag.snapshot();
+            return String.format("%s: acked %d (%d behind), lag last %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms"
+                            + " (snapshot took %d ms)",
+                    name, ackedSequence, Math.max(0, sequence - ackedSequence), lastLagNanos / 1e6,
+                    s.percentile(0.50) / 1e6, s.percentile(0.99) / 1e6, s.maxNanos / 1e6,
+                    TimeUnit.NANOSECONDS.toMillis(snapshotNanos));
+        }
+    }
+
+    // One line per connected follower
+    public String status() {
+        long sequence;
+        synchronized (lock) {
+            sequence = lastSequence;
+        }
+        StringBuilder sb = new StringBuilder("Replication sequence ").append(sequence).append(", ")
+                .append(followers.size()).append(" follower(s)").append(System.lineSeparator());
+        for (Follower follower : followers) {
+            sb.append("  ").append(follower.status(sequence)).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        AccountEvents.removeListener(this);
+        server.close();
+        publisher.interrupt();
+        for (Follower follower : followers) {
+            follower.disconnect("primary closing");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int opsPerSecond = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        int accountCount = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        AccountRegistry registry = AccountRegistry.global();
+        Persistence persistence = Persistence.fromSystemProperties(registry);
+        Replicator replicator = new Replicator(registry, Integer.getInteger("bank.replication.port", 7070),
+                Long.getLong("bank.replication.maxQueuedBytes", 64L << 20));
+        try {
+            CommandEngine engine = new CommandEngine();
+            long[] accounts = new long[accountCount];
+            // one real hash shared by every account: hashing is not what this measures
+            String passwordHash = Credentials.hash("Replica@1234");
+            String pinHash = Credentials.hash("4821");
+            for (int i = 0; i < accountCount; i++) {
+                BankAccount account = i % 2 == 0 ? new SavingsAccount("Replica User " + i, "01/01/1990")
+                        : new CurrentAccount("Replica User " + i, "01/01/1990");
+                account.setCredentialHashes(passwordHash, pinHash);
+                registry.register(account);
+                account.record(TransactionType.ACCOUNT_CREATED);
+                engine.deposit(account.getAccountNumber(), Money.ofRupees(100_000), null);
+                accounts[i] = account.getAccountNumber();
+            }
+            System.out.println("Replication primary on port " + replicator.port() + " with " + accountCount
+                    + " accounts; running " + opsPerSecond + " ops/s for " + seconds + " s");
+            // paced in 1 ms slices: 70% deposits, 30% withdrawals on random accounts
+            long perSlice = Math.max(1, opsPerSecond / 1000);
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            long nextReport = start + TimeUnit.SECONDS.toNanos(5);
+            long done = 0;
+            SplittableRandom random = new SplittableRandom(1);
+            for (long slice = 0; System.nanoTime() < end; slice++) {
+                for (long i = 0; i < perSlice; i++) {
+                    long account = accounts[random.nextInt(accountCount)];
+                    if (random.nextInt(10) < 7) {
+                        engine.deposit(account, 100 + random.nextInt(10_000), null);
+                    } else {
+                        engine.withdraw(account, 100 + random.nextInt(10_000), null);
+                    }
+                }
+                done += perSlice;
+                long due = start + (slice + 1) * 1_000_000L;
+                long now = System.nanoTime();
+                if (due > now) TimeUnit.NANOSECONDS.sleep(due - now);
+                if (now >= nextReport) {
+                    System.out.printf("%.0f ops/s so far. %s", done / ((now - start) / 1e9), replicator.status());
+                    nextReport += TimeUnit.SECONDS.toNanos(5);
+                }
+            }
+            Thread.sleep(500); // let the followers acknowledge the tail
+            System.out.print("Done: " + done + " ops. " + replicator.status());
+        } finally {
+            replicator.close();
+            if (persistence != null) persistence.close();
+        }
+    }
+}
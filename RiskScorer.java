@@ -0,0 +1,326 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+
+// Inline fraud and velocity checks on money the customer moves: deposits, withdrawals and outgoing
+// transfers (interest and incoming transfers are not scored). Each operation is scored by a list
+// of rules while the account's balance lock is held, before the balance changes. A total at or
+// above the decline score refuses it; one at or above the review score lets it through but counts
+// it (Metrics.Counter.RISK_REVIEW) so it can be looked at afterwards.
+//
+// Rules read a Profile of rolling statistics kept in a few primitive fields per account, so a score
+// costs the same however long the account's history is and never scans its TransactionLog. Counts
+// and sums over the recent window are exponentially decayed with time constant
+// bank.risk.windowSeconds, so a steady r operations per window reads as about r, and a burst is
+// forgotten gradually rather than all at once. The typical amount is an exponentially weighted
+// mean and variance of ln(amount), kept separately for money in and money out. Profiles live in
+// memory only and start empty after a restart.
+//
+// Configured with system properties:
+//   bank.risk.enabled             false turns scoring off (default true)
+//   bank.risk.rules               rules with their points (default "velocity:100,amount:60,overdraft:100")
+//   bank.risk.reviewScore         total that flags an operation (default 50)
+//   bank.risk.declineScore        total that refuses it (default 100)
+//   bank.risk.windowSeconds       time constant of the rolling counts (default 600)
+//   bank.risk.maxDebits           velocity: withdrawals and transfers out per window (default 20)
+//   bank.risk.maxDebitRupees      velocity: money out per window (default 200000)
+//   bank.risk.amountSigma         amount: standard deviations above the typical ln(amount) (default 4.0)
+//   bank.risk.minHistory          amount: operations seen before the rule applies (default 10)
+//   bank.risk.maxOverdraftDebits  overdraft: debits leaving the balance negative, per window (default 3)
+//
+// Further rules plug in by implementing Rule and passing them to the constructor.
+//
+//   java RiskScorer [operations] [accounts]   scores synthetic traffic with injected attacks and
+//                                             reports what was caught and the cost per operation
+final class RiskScorer {
+    private static final RiskScorer GLOBAL = Boolean.parseBoolean(System.getProperty("bank.risk.enabled", "true"))
+            ? fromSystemProperties() : null;
+
+    // Smallest spread assumed for ln(amount): an account that always moves the same amount is not
+    // flagged for a slightly larger one
+    private static final double MIN_SPREAD = 0.5;
+    private static final double AMOUNT_WEIGHT = 0.05; // weight of the newest amount: roughly the last 20 count
+    private static final int MAX_SAMPLES = 1 << 20; // samples are counted only while the weight is still settling
+
+    enum Verdict {
+        ALLOW,
+        REVIEW,
+        DECLINE
+    }
+
+    // Rolling statistics for one account, guarded by the account's balance lock
+    static final class Profile {
+        long updatedNanos;
+        double debits; // decayed count of withdrawals and transfers out
+        double debitPaise; // decayed sum of their amounts
+        double overdraftDebits; // decayed count of debits that left the balance negative
+        int creditSamples;
+        double creditMean; // of ln(amount)
+        double creditVariance;
+        int debitSamples;
+        double debitMean;
+        double debitVariance;
+
+        int samples(boolean debit) {
+            return debit ? debitSamples : creditSamples;
+        }
+
+        double mean(boolean debit) {
+            return debit ? debitMean : creditMean;
+        }
+
+        double spread(boolean debit) {
+            return Math.max(MIN_SPREAD, Math.sqrt(debit ? debitVariance : creditVariance));
+        }
+    }
+
+    interface Rule {
+        // Points for an operation; profile covers the operations before it, decayed to now
+        int score(Profile profile, boolean debit, long amount, long balanceAfter);
+    }
+
+    // Too many debits, or too much money out, within the window
+    static final class Velocity implements Rule {
+        private final int points;
+        private final long maxDebits;
+        private final long maxDebitPaise;
+
+        Velocity(int points, long maxDebits, long maxDebitPaise) {
+            this.points = points;
+            this.maxDebits = maxDebits;
+            this.maxDebitPaise = maxDebitPaise;
+        }
+
+        @Override
+        public int score(Profile profile, boolean debit, long amount, long balanceAfter) {
+            if (!debit) return 0;
+            return profile.debits + 1 > maxDebits || profile.debitPaise + amount > maxDebitPaise ? points : 0;
+        }
+    }
+
+    // An amount far above what the account usually moves in that direction
+    static final class UnusualAmount implements Rule {
+        private final int points;
+        private final double sigma;
+        private final int minHistory;
+
+        UnusualAmount(int points, double sigma, int minHistory) {
+            this.points = points;
+            this.sigma = sigma;
+            this.minHistory = minHistory;
+        }
+
+        @Override
+        public int score(Profile profile, boolean debit, long amount, long balanceAfter) {
+            if (profile.samples(debit) < minHistory) return 0;
+            return Math.log(amount) > profile.mean(debit) + sigma * profile.spread(debit) ? points : 0;
+        }
+    }
+
+    // A run of debits into overdraft, as when a compromised current account is being drained
+    static final class OverdraftBurst implements Rule {
+        private final int points;
+        private final long maxOverdraftDebits;
+
+        OverdraftBurst(int points, long maxOverdraftDebits) {
+            this.points = points;
+            this.maxOverdraftDebits = maxOverdraftDebits;
+        }
+
+        @Override
+        public int score(Profile profile, boolean debit, long amount, long balanceAfter) {
+            if (!debit || balanceAfter >= 0) return 0;
+            return profile.overdraftDebits + 1 > maxOverdraftDebits ? points : 0;
+        }
+    }
+
+    private final Rule[] rules;
+    private final int reviewScore;
+    private final int declineScore;
+    private final double windowNanos;
+    private final LongSupplier clock; // nanoTime
+
+    RiskScorer(List<Rule> rules, int reviewScore, int declineScore, long windowSeconds, LongSupplier clock) {
+        if (reviewScore <= 0 || declineScore <= 0 || windowSeconds <= 0) {
+            throw new IllegalArgumentException("risk scores and window must be positive");
+        }
+        this.rules = rules.toArray(new Rule[0]);
+        this.reviewScore = reviewScore;
+        this.declineScore = declineScore;
+        this.windowNanos = windowSeconds * 1e9;
+        this.clock = clock;
+    }
+
+    // Null when scoring is turned off with -Dbank.risk.enabled=false
+    public static RiskScorer global() {
+        return GLOBAL;
+    }
+
+    static RiskScorer fromSystemProperties() {
+        return fromSystemProperties(System::nanoTime);
+    }
+
+    static RiskScorer fromSystemProperties(LongSupplier clock) {
+        List<Rule> rules = new ArrayList<>();
+        for (String entry : System.getProperty("bank.risk.rules", "velocity:100,amount:60,overdraft:100").split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            int colon = entry.indexOf(':');
+            String name = colon < 0 ? entry : entry.substring(0, colon).trim();
+            int points = colon < 0 ? 100 : Integer.parseInt(entry.substring(colon + 1).trim());
+            switch (name) {
+                case "velocity":
+                    rules.add(new Velocity(points, Long.getLong("bank.risk.maxDebits", 20L),
+                            Money.ofRupees(Long.getLong("bank.risk.maxDebitRupees", 200_000L))));
+                    break;
+                case "amount":
+                    rules.add(new UnusualAmount(points,
+                            Double.parseDouble(System.getProperty("bank.risk.amountSigma", "4.0")),
+                            Integer.getInteger("bank.risk.minHistory", 10)));
+                    break;
+                case "overdraft":
+                    rules.add(new OverdraftBurst(points, Long.getLong("bank.risk.maxOverdraftDebits", 3L)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown risk rule: " + name);
+            }
+        }
+        return new RiskScorer(rules, Integer.getInteger("bank.risk.reviewScore", 50),
+                Integer.getInteger("bank.risk.declineScore", 100), Long.getLong("bank.risk.windowSeconds", 600L), clock);
+    }
+
+    // Scores one operation and, unless it is declined, adds it to the profile; caller holds the
+    // account's balance lock. amount is positive; balanceAfter is the balance if it goes ahead.
+    Verdict screen(BankAccount account, Profile profile, boolean debit, long amount, long balanceAfter) {
+        long now = clock.getAsLong();
+        decay(profile, now);
+        int score = 0;
+        for (Rule rule : rules) {
+            score += rule.score(profile, debit, amount, balanceAfter);
+        }
+        if (score >= declineScore) {
+            Metrics.global().increment(Metrics.Counter.RISK_DECLINED, account);
+            return Verdict.DECLINE;
+        }
+        add(profile, debit, amount, balanceAfter);
+        if (score >= reviewScore) {
+            Metrics.global().increment(Metrics.Counter.RISK_REVIEW, account);
+            return Verdict.REVIEW;
+        }
+        return Verdict.ALLOW;
+    }
+
+    private void decay(Profile profile, long now) {
+        long elapsed = now - profile.updatedNanos;
+        profile.updatedNanos = now;
+        // nothing to decay yet, or a clock reading from before the profile's last update
+        if (elapsed <= 0 || profile.debits == 0 && profile.overdraftDebits == 0) return;
+        double factor = Math.exp(-elapsed / windowNanos);
+        profile.debits *= factor;
+        profile.debitPaise *= factor;
+        profile.overdraftDebits *= factor;
+    }
+
+    private static void add(Profile profile, boolean debit, long amount, long balanceAfter) {
+        double x = Math.log(amount);
+        if (debit) {
+            profile.debits += 1;
+            profile.debitPaise += amount;
+            if (balanceAfter < 0) profile.overdraftDebits += 1;
+            // plain mean and variance over the first samples, exponentially weighted after that
+            if (profile.debitSamples < MAX_SAMPLES) profile.debitSamples++;
+            double weight = Math.max(AMOUNT_WEIGHT, 1.0 / profile.debitSamples);
+            double delta = x - profile.debitMean;
+            profile.debitMean += weight * delta;
+            profile.debitVariance = (1 - weight) * (profile.debitVariance + weight * delta * delta);
+        } else {
+            if (profile.creditSamples < MAX_SAMPLES) profile.creditSamples++;
+            double weight = Math.max(AMOUNT_WEIGHT, 1.0 / profile.creditSamples);
+            double delta = x - profile.creditMean;
+            profile.creditMean += weight * delta;
+            profile.creditVariance = (1 - weight) * (profile.creditVariance + weight * delta * delta);
+        }
+    }
+
+    // Two days of synthetic traffic in simulated time. Each account makes an operation about every
+    // half hour around an amount of its own; on the second day one operation in a hundred instead
+    // starts an attack on its account: a burst of 30 withdrawals, one withdrawal fifty times the
+    // usual amount, or a run of 12 debits of ₹500 on a current account already nearly empty, which
+    // walks it into overdraft.
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        long[] clock = new long[1];
+        RiskScorer scorer = fromSystemProperties(() -> clock[0]);
+        SplittableRandom random = new SplittableRandom(7);
+        Profile[] profiles = new Profile[accountCount];
+        long[] balances = new long[accountCount];
+        double[] typical = new double[accountCount]; // ln(usual amount in paise)
+        for (int i = 0; i < accountCount; i++) {
+            profiles[i] = new Profile();
+            balances[i] = Money.ofRupees(5_000 + random.nextInt(50_000));
+            typical[i] = Math.log(Money.ofRupees(200 + random.nextInt(2_000)));
+        }
+        String[] kinds = {"normal", "burst", "outsized", "overdraft run"};
+        long[][] verdicts = new long[kinds.length][Verdict.values().length];
+        long[] sequences = new long[kinds.length];
+        long[] scoredSequences = new long[kinds.length]; // that got past the balance floor at least once
+        long[] flagged = new long[kinds.length]; // with at least one operation reviewed or declined
+        long[] attempted = new long[kinds.length]; // paise the sequences tried to move
+        long[] stopped = new long[kinds.length]; // of which declined
+        long scoringNanos = 0;
+        long scored = 0;
+        long step = 2 * 86_400_000_000_000L / operations; // two simulated days in all
+        for (long done = 0; done < operations; ) {
+            clock[0] += step;
+            int i = random.nextInt(accountCount);
+            boolean current = (i & 1) == 1;
+            int kind = done > operations / 2 && random.nextInt(100) == 0 ? 1 + random.nextInt(current ? 3 : 2) : 0;
+            int length = kind == 1 ? 30 : kind == 3 ? 12 : 1;
+            if (kind == 3) balances[i] = Money.ofRupees(random.nextInt(2_000));
+            boolean caught = false;
+            boolean reached = false;
+            for (int n = 0; n < length; n++) {
+                boolean debit = kind != 0 || random.nextInt(10) < 4;
+                double scale = kind == 2 ? Math.log(50) : random.nextGaussian() * 0.4;
+                long amount = kind == 3 ? Money.ofRupees(500) : Math.max(100, (long) Math.exp(typical[i] + scale));
+                long after = debit ? balances[i] - amount : balances[i] + amount;
+                long floor = current ? -CurrentAccount.OVERDRAFT_LIMIT : SavingsAccount.MIN_BALANCE;
+                if (debit && after < floor) {
+                    if (kind != 0) break; // the balance floor stops the attack before scoring does
+                    debit = false; // a customer who cannot withdraw deposits instead
+                    after = balances[i] + amount;
+                }
+                long start = System.nanoTime();
+                Verdict verdict = scorer.screen(null, profiles[i], debit, amount, after);
+                scoringNanos += System.nanoTime() - start;
+                scored++;
+                reached = true;
+                verdicts[kind][verdict.ordinal()]++;
+                attempted[kind] += amount;
+                if (verdict == Verdict.DECLINE) {
+                    stopped[kind] += amount;
+                } else {
+                    balances[i] = after;
+                }
+                caught |= verdict != Verdict.ALLOW;
+                if (kind != 0) clock[0] += 2_000_000_000L + random.nextLong(3_000_000_000L);
+                done++;
+            }
+            sequences[kind]++;
+            if (reached) scoredSequences[kind]++;
+            if (caught) flagged[kind]++;
+        }
+        System.out.printf("%d operations on %d accounts over two simulated days%n", scored, accountCount);
+        for (int k = 0; k < kinds.length; k++) {
+            long total = verdicts[k][0] + verdicts[k][1] + verdicts[k][2];
+            System.out.printf("  %-13s %8d sequences, %6.2f%% of those scored flagged; operations %.3f%% reviewed, %.3f%% declined;"
+                            + " %5.1f%% of the money stopped%n", kinds[k], sequences[k],
+                    100.0 * flagged[k] / Math.max(1, scoredSequences[k]), 100.0 * verdicts[k][1] / Math.max(1, total),
+                    100.0 * verdicts[k][2] / Math.max(1, total), 100.0 * stopped[k] / Math.max(1, attempted[k]));
+        }
+        System.out.printf("scoring: %.0f ns per operation, including two nanoTime calls%n",
+                (double) scoringNanos / scored);
+    }
+}
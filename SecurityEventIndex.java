@@ -0,0 +1,90 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bank-wide index of security events (logins, lockouts, credential changes), so questions like
+// "all failed logins in the last hour" are answered without visiting every account's history.
+// Each event type has its own concurrent skip list ordered by time: events recorded by different
+// threads, or restored account by account at startup, arrive out of order and are simply inserted
+// in place, and a time range is a sub-set view. Each type retains at most bank.security.maxRetained
+// events (default 1M), the oldest dropped first.
+final class SecurityEventIndex {
+    private static final SecurityEventIndex GLOBAL =
+            new SecurityEventIndex(Integer.getInteger("bank.security.maxRetained", 1 << 20));
+
+    private final int maxRetained;
+    private final Map<TransactionType, ConcurrentSkipListSet<Event>> byType = new EnumMap<>(TransactionType.class);
+    private final Map<TransactionType, AtomicInteger> counts = new EnumMap<>(TransactionType.class);
+    private final AtomicLong arrivals = new AtomicLong();
+
+    static final class Event implements Comparable<Event> {
+        final long timestampNanos;
+        final long accountNumber;
+        final TransactionType type;
+        private final long arrival; // orders events with equal timestamps
+
+        Event(long timestampNanos, long accountNumber, TransactionType type, long arrival) {
+            this.timestampNanos = timestampNanos;
+            this.accountNumber = accountNumber;
+            this.type = type;
+            this.arrival = arrival;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int c = Long.compare(timestampNanos, other.timestampNanos);
+            return c != 0 ? c : Long.compare(arrival, other.arrival);
+        }
+
+        @Override
+        public String toString() {
+            return TransactionLog.toDateTime(timestampNanos) + " " + accountNumber + " " + type.getLabel();
+        }
+    }
+
+    SecurityEventIndex(int maxRetained) {
+        this.maxRetained = maxRetained;
+        // the map is filled here and only read afterwards, so lookups need no locking
+        for (TransactionType type : TransactionType.values()) {
+            if (type.isSecurityEvent()) {
+                byType.put(type, new ConcurrentSkipListSet<>());
+                counts.put(type, new AtomicInteger());
+            }
+        }
+    }
+
+    public static SecurityEventIndex global() {
+        return GLOBAL;
+    }
+
+    // Ignores types that are not security events
+    public void record(long accountNumber, TransactionType type, long timestampNanos) {
+        ConcurrentSkipListSet<Event> events = byType.get(type);
+        if (events == null) return;
+        events.add(new Event(timestampNanos, accountNumber, type, arrivals.incrementAndGet()));
+        AtomicInteger count = counts.get(type);
+        if (count.incrementAndGet() > maxRetained && events.pollFirst() != null) {
+            count.decrementAndGet();
+        }
+    }
+
+    // Events of the type with fromNanos <= timestamp < toNanos, oldest first
+    public List<Event> find(TransactionType type, long fromNanos, long toNanos) {
+        List<Event> found = new ArrayList<>();
+        ConcurrentSkipListSet<Event> events = byType.get(type);
+        if (events == null || fromNanos >= toNanos) return found;
+        // arrival Long.MIN_VALUE sorts before every real event with the same timestamp
+        found.addAll(events.subSet(new Event(fromNanos, 0, type, Long.MIN_VALUE), true,
+                new Event(toNanos, 0, type, Long.MIN_VALUE), false));
+        return found;
+    }
+
+    public List<Event> findSince(TransactionType type, LocalDateTime since) {
+        return find(type, TransactionLog.toEpochNanos(since), Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,405 @@
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Alternative execution model to per-account locks: accounts are partitioned by account number
+// into shards, and each shard's accounts are read and written only by that shard's writer thread.
+// Deposits, withdrawals, interest and balance inquiries are messages routed to the owning shard;
+// the writer applies them one after another with no locks or atomics on account state, keeping
+// balances in primitive arrays and each account's history in its own TransactionLog.
+//
+// Each shard is fed by a bounded ring of preallocated slots shared by any number of producers, in
+// the style of the LMAX disruptor: a producer claims a sequence with one getAndIncrement, fills
+// the slot's fields and publishes the sequence in the slot; the writer reads published slots in
+// order, up to bank.shard.batch at a time, and frees the whole batch with one write of its cursor.
+// A full ring makes producers wait, so memory is bounded whatever the load. A writer with nothing
+// to do spins briefly, then parks until a producer wakes it.
+//
+// Accounts opened here live only in this engine (their numbers come from AccountNumberAllocator,
+// so they never collide with registry accounts); they are not journaled, replicated or scored by
+// RiskScorer. Results use CommandEngine's Status and Result.
+//
+// Configured with system properties:
+//   bank.shards       shard writer threads (default: available processors)
+//   bank.shard.ring   slots per shard ring, a power of two (default 4096)
+//   bank.shard.batch  most messages a writer applies before freeing their slots (default 256)
+//
+//   java ShardedEngine [seconds] [accounts] [maxShards]
+//   defaults:           5         100000     available processors
+// runs a uniform random mix (45% deposits, 45% withdrawals, 10% interest) with 1, 2, 4... shards
+// up to maxShards, one producer thread per shard, and reports throughput and scaling.
+final class ShardedEngine implements Closeable {
+    private static final int SPINS = 1 << 10; // empty polls before a writer parks
+
+    enum Op {
+        OPEN_SAVINGS,
+        OPEN_CURRENT,
+        DEPOSIT,
+        WITHDRAW,
+        INTEREST, // amount is the number of years
+        BALANCE
+    }
+
+    private static final Op[] OPS = Op.values();
+
+    // Called on the shard's writer thread once a message is applied; must not block
+    interface Completion {
+        void completed(long token, CommandEngine.Status status, long accountNumber, long balance);
+    }
+
+    private final Shard[] shards;
+    private final int shardMask; // shard count is a power of two
+
+    ShardedEngine(int shardCount, int ringSize, int batchSize) {
+        if (shardCount <= 0 || ringSize <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("shards, ring size and batch size must be positive");
+        }
+        int count = Integer.highestOneBit(shardCount);
+        shards = new Shard[count];
+        shardMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i, Integer.highestOneBit(ringSize), batchSize);
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    static ShardedEngine fromSystemProperties() {
+        return new ShardedEngine(Integer.getInteger("bank.shards", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("bank.shard.ring", 4096), Integer.getInteger("bank.shard.batch", 256));
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    // The router: the shard that owns an account number
+    int shardOf(long accountNumber) {
+        // account numbers are a permuted counter, but mix anyway so the low bits are never patterned
+        long h = accountNumber * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & shardMask;
+    }
+
+    // Opens an account with an opening deposit; returns its number, usable as soon as this returns
+    // because later messages for it queue behind the open on the same shard
+    public long open(boolean savings, long openingBalance, long token, Completion completion) {
+        long accountNumber = AccountNumberAllocator.global().allocate();
+        submit(savings ? Op.OPEN_SAVINGS : Op.OPEN_CURRENT, accountNumber, openingBalance, token, completion);
+        return accountNumber;
+    }
+
+    // Queues a message for the owning shard; completion (may be null) runs on that shard's writer
+    public void submit(Op op, long accountNumber, long amount, long token, Completion completion) {
+        shards[shardOf(accountNumber)].publish(op, accountNumber, amount, token, completion);
+    }
+
+    public CompletableFuture<CommandEngine.Result> submit(Op op, long accountNumber, long amount) {
+        CompletableFuture<CommandEngine.Result> future = new CompletableFuture<>();
+        submit(op, accountNumber, amount, 0, (token, status, account, balance) ->
+                future.complete(new CommandEngine.Result(status, account, balance)));
+        return future;
+    }
+
+    // Messages applied so far by all shards
+    public long processed() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.processed;
+        }
+        return total;
+    }
+
+    // Applies everything already queued, then stops the writers; submit must not be called after
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static final class Shard implements Runnable {
+        // ---- the ring: written by producers, read by the writer ----
+        private final int mask;
+        private final int batchSize;
+        private final byte[] ops;
+        private final long[] accounts;
+        private final long[] amounts;
+        private final long[] tokens;
+        private final Completion[] completions;
+        private final AtomicLongArray published; // sequence last published in each slot
+        private final AtomicLong claimed = new AtomicLong(); // next sequence to hand to a producer
+        private final AtomicLong consumed = new AtomicLong(); // slots of sequences below this are free
+        private final Thread thread;
+        private volatile boolean sleeping;
+        private volatile boolean running = true;
+        private volatile long processed;
+
+        // ---- account state: touched only by the writer thread ----
+        private long[] keys = new long[1024]; // open addressing over account numbers, 0 = empty
+        private int[] slots = new int[1024];
+        private long[] balances = new long[512];
+        private boolean[] savings = new boolean[512];
+        private TransactionLog[] logs = new TransactionLog[512];
+        private int count;
+
+        Shard(int index, int ringSize, int batchSize) {
+            this.mask = ringSize - 1;
+            this.batchSize = batchSize;
+            ops = new byte[ringSize];
+            accounts = new long[ringSize];
+            amounts = new long[ringSize];
+            tokens = new long[ringSize];
+            completions = new Completion[ringSize];
+            published = new AtomicLongArray(ringSize);
+            for (int i = 0; i < ringSize; i++) {
+                published.set(i, -1);
+            }
+            thread = new Thread(this, "shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        void publish(Op op, long accountNumber, long amount, long token, Completion completion) {
+            long sequence = claimed.getAndIncrement();
+            // wait for the writer to free the slot this sequence wraps onto
+            while (sequence - consumed.get() > mask) {
+                if (sleeping) LockSupport.unpark(thread);
+                Thread.onSpinWait();
+                Thread.yield();
+            }
+            int i = (int) sequence & mask;
+            ops[i] = (byte) op.ordinal();
+            accounts[i] = accountNumber;
+            amounts[i] = amount;
+            tokens[i] = token;
+            completions[i] = completion;
+            published.set(i, sequence); // volatile: the fields above are visible to whoever reads this
+            if (sleeping) LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            long next = 0;
+            int idle = 0;
+            while (true) {
+                int n = 0;
+                long now = 0;
+                while (n < batchSize && published.get((int) (next + n) & mask) == next + n) {
+                    if (n == 0) now = TransactionLog.nowNanos(); // one clock read per batch
+                    apply((int) (next + n) & mask, now);
+                    n++;
+                }
+                if (n > 0) {
+                    next += n;
+                    processed += n;
+                    consumed.set(next);
+                    idle = 0;
+                    continue;
+                }
+                if (!running) return; // close() waits until everything published has been applied
+                if (++idle < SPINS) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                // re-check after announcing sleep: a producer publishes, then reads sleeping
+                sleeping = true;
+                if (published.get((int) next & mask) != next && running) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+                sleeping = false;
+                idle = 0;
+            }
+        }
+
+        private void apply(int i, long now) {
+            Op op = OPS[ops[i]];
+            long accountNumber = accounts[i];
+            long amount = amounts[i];
+            Completion completion = completions[i];
+            completions[i] = null;
+            CommandEngine.Status status;
+            long balance = 0;
+            if (op == Op.OPEN_SAVINGS || op == Op.OPEN_CURRENT) {
+                status = amount < 0 || find(accountNumber) >= 0 ? CommandEngine.Status.INVALID_INPUT
+                        : openAccount(accountNumber, op == Op.OPEN_SAVINGS, amount, now);
+                balance = status == CommandEngine.Status.OK ? amount : 0;
+            } else {
+                int slot = find(accountNumber);
+                if (slot < 0) {
+                    status = CommandEngine.Status.UNKNOWN_ACCOUNT;
+                    accountNumber = 0;
+                } else {
+                    status = apply(op, slot, amount, now);
+                    balance = balances[slot];
+                }
+            }
+            if (completion != null) completion.completed(tokens[i], status, accountNumber, balance);
+        }
+
+        private CommandEngine.Status apply(Op op, int slot, long amount, long now) {
+            switch (op) {
+                case DEPOSIT:
+                    if (amount <= 0) return CommandEngine.Status.INVALID_AMOUNT;
+                    try {
+                        balances[slot] = Math.addExact(balances[slot], amount);
+                    } catch (ArithmeticException ex) {
+                        return CommandEngine.Status.INVALID_AMOUNT;
+                    }
+                    logs[slot].append(TransactionType.DEPOSIT, amount, now, null);
+                    return CommandEngine.Status.OK;
+                case WITHDRAW:
+                    if (amount <= 0) return CommandEngine.Status.INVALID_AMOUNT;
+                    long floor = savings[slot] ? SavingsAccount.MIN_BALANCE : -CurrentAccount.OVERDRAFT_LIMIT;
+                    long after;
+                    try {
+                        after = Math.subtractExact(balances[slot], amount);
+                    } catch (ArithmeticException ex) {
+                        return CommandEngine.Status.INSUFFICIENT_FUNDS; // below Long.MIN_VALUE, so below any floor
+                    }
+                    if (after < floor) return CommandEngine.Status.INSUFFICIENT_FUNDS;
+                    balances[slot] = after;
+                    logs[slot].append(TransactionType.WITHDRAW, amount, now, null);
+                    return CommandEngine.Status.OK;
+                case INTEREST:
+                    if (!savings[slot]) return CommandEngine.Status.NOT_SAVINGS;
+                    if (amount <= 0 || amount > Integer.MAX_VALUE) return CommandEngine.Status.INVALID_INPUT;
+                    long interest;
+                    try {
+                        interest = SavingsAccount.simpleInterest(balances[slot], SavingsAccount.INTEREST_RATE_BASIS_POINTS,
+                                (int) amount);
+                        balances[slot] = Math.addExact(balances[slot], interest);
+                    } catch (ArithmeticException ex) {
+                        return CommandEngine.Status.INVALID_AMOUNT;
+                    }
+                    logs[slot].append(TransactionType.INTEREST, interest, now, null);
+                    return CommandEngine.Status.OK;
+                default:
+                    logs[slot].append(TransactionType.BALANCE_INQUIRY, 0, now, null);
+                    return CommandEngine.Status.OK;
+            }
+        }
+
+        private CommandEngine.Status openAccount(long accountNumber, boolean isSavings, long balance, long now) {
+            if (isSavings && balance < SavingsAccount.MIN_BALANCE) return CommandEngine.Status.INVALID_AMOUNT;
+            if (count == balances.length) {
+                balances = Arrays.copyOf(balances, count * 2);
+                savings = Arrays.copyOf(savings, count * 2);
+                logs = Arrays.copyOf(logs, count * 2);
+            }
+            if ((count + 1) * 2 > keys.length) rehash(keys.length * 2);
+            int slot = count++;
+            balances[slot] = balance;
+            savings[slot] = isSavings;
+            TransactionLog log = new TransactionLog();
+            log.append(TransactionType.ACCOUNT_CREATED, 0, now, null);
+            if (balance > 0) log.append(TransactionType.DEPOSIT, balance, now, null);
+            logs[slot] = log;
+            insert(keys, slots, accountNumber, slot);
+            return CommandEngine.Status.OK;
+        }
+
+        private int find(long accountNumber) {
+            int m = keys.length - 1;
+            for (int i = mix(accountNumber) & m; ; i = (i + 1) & m) {
+                long key = keys[i];
+                if (key == accountNumber) return slots[i];
+                if (key == 0) return -1;
+            }
+        }
+
+        private void rehash(int capacity) {
+            long[] newKeys = new long[capacity];
+            int[] newSlots = new int[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) insert(newKeys, newSlots, keys[i], slots[i]);
+            }
+            keys = newKeys;
+            slots = newSlots;
+        }
+
+        private static void insert(long[] keys, int[] slots, long accountNumber, int slot) {
+            int m = keys.length - 1;
+            int i = mix(accountNumber) & m;
+            while (keys[i] != 0) i = (i + 1) & m;
+            keys[i] = accountNumber;
+            slots[i] = slot;
+        }
+
+        private static int mix(long accountNumber) {
+            long h = accountNumber * 0xC2B2AE3D27D4EB4FL;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int maxShards = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors, " + accountCount
+                + " accounts, " + seconds + " s per run");
+        double single = 0;
+        for (int shardCount = 1; shardCount <= maxShards; shardCount *= 2) {
+            double rate = run(shardCount, seconds, accountCount);
+            if (shardCount == 1) single = rate;
+            System.out.printf("%3d shards: %,12.0f ops/s  %5.2fx%n", shardCount, rate, rate / single);
+        }
+    }
+
+    // ops/s with the given number of shards and as many producer threads
+    private static double run(int shardCount, int seconds, int accountCount) throws InterruptedException {
+        ShardedEngine engine = new ShardedEngine(shardCount, Integer.getInteger("bank.shard.ring", 4096),
+                Integer.getInteger("bank.shard.batch", 256));
+        long[] accounts = new long[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            accounts[i] = engine.open(i % 2 == 0, Money.ofRupees(100_000), 0, null);
+        }
+        while (engine.processed() < accountCount) Thread.sleep(1);
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] producers = new Thread[shardCount];
+        for (int p = 0; p < shardCount; p++) {
+            SplittableRandom random = new SplittableRandom(p);
+            producers[p] = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    for (int k = 0; k < 1024; k++) {
+                        long account = accounts[random.nextInt(accountCount)];
+                        int kind = random.nextInt(20);
+                        if (kind < 9) {
+                            engine.submit(Op.DEPOSIT, account, 100 + random.nextInt(10_000), 0, null);
+                        } else if (kind < 18) {
+                            engine.submit(Op.WITHDRAW, account, 100 + random.nextInt(10_000), 0, null);
+                        } else {
+                            engine.submit(Op.INTEREST, account, 1, 0, null);
+                        }
+                    }
+                }
+            }, "producer-" + p);
+            producers[p].start();
+        }
+        TimeUnit.NANOSECONDS.sleep(warmupEnd - System.nanoTime());
+        long before = engine.processed();
+        long start = System.nanoTime();
+        TimeUnit.NANOSECONDS.sleep(end - start);
+        long after = engine.processed();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        engine.close();
+        return (after - before) / elapsed;
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Measures what fast-start mode (see Persistence and HistoryFile) buys on a restart: the time from
+// launching the JVM to the first successful login, and the time until throughput reaches its
+// warmed-up level, against an eager load of the same accounts. Every trial is a fresh JVM that
+// recovers the accounts read-only (no journal is written, so trials can be repeated), logs in once
+// and then runs a mix of 45% deposits, 35% withdrawals and 20% history reads on random accounts.
+//
+//   java StartupBenchmark prepare <dir> [accounts] [transactionsPerAccount]
+//   defaults:                               5000000    10
+// writes <dir>/eager (full snapshot records) and <dir>/fast (headers plus a HistoryFile) one
+// account at a time, so preparing needs far less memory than loading; every account's password
+// is Bench@1234 and its PIN 4821.
+//
+//   java StartupBenchmark run <dir> [seconds] [heap] [archive]
+//   defaults:                        30        2g     none
+// runs eager and fast trials, and both again with -XX:SharedArchiveFile=<archive> if one is given.
+// Trials count as warm from the first of four consecutive 250 ms intervals at 90% of the
+// throughput of their last quarter.
+//
+//   java StartupBenchmark train <dir>
+// a two-second fast-start trial on a prepared <dir>, which the build records its AppCDS archive
+// from (see pom.xml); the eager path uses a subset of the same classes
+final class StartupBenchmark {
+    private static final String PASSWORD = "Bench@1234";
+    private static final String PIN = "4821";
+    private static final long FIRST_ACCOUNT = 10_000_000L;
+    private static final long INTERVAL_MILLIS = 250;
+
+    private StartupBenchmark() {
+    }
+
+    // ---- prepare ----
+
+    // Writes one snapshot of count accounts numbered from first, in both formats
+    static void prepare(Path dir, long first, int count, int transactions) throws IOException {
+        Path eagerDir = dir.resolve("eager");
+        Path fastDir = dir.resolve("fast");
+        Files.createDirectories(eagerDir);
+        Files.createDirectories(fastDir);
+        String name = String.format("snapshot-%020d", 0);
+        String passwordHash = Credentials.hash(PASSWORD);
+        String pinHash = Credentials.hash(PIN);
+        SplittableRandom random = new SplittableRandom(first);
+        long now = TransactionLog.nowNanos();
+        CRC32 crc = new CRC32();
+        ByteBuffer eager = ByteBuffer.allocate(1 << 20);
+        ByteBuffer fast = ByteBuffer.allocate(1 << 20);
+        try (FileChannel eagerOut = FileChannel.open(eagerDir.resolve(name + ".snap"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel fastOut = FileChannel.open(fastDir.resolve(name + ".snap"), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             HistoryFile.Writer histories = new HistoryFile.Writer(fastDir.resolve(name + ".hist"))) {
+            for (int i = 0; i < count; i++) {
+                long number = first + i;
+                BankAccount account = i % 3 == 0
+                        ? new CurrentAccount(number, "Bench User " + i, "15/06/1985")
+                        : new SavingsAccount(number, "Bench User " + i, "15/06/1985");
+                account.restoreCredentials(0, passwordHash, pinHash);
+                long balance = 0;
+                long at = now - TimeUnit.DAYS.toNanos(365);
+                for (int t = 0; t < transactions; t++) {
+                    boolean deposit = t == 0 || random.nextInt(3) != 0;
+                    long amount = Money.ofRupees(1 + random.nextInt(deposit ? 20_000 : 2_000));
+                    balance += deposit ? amount : -amount;
+                    at += random.nextLong(TimeUnit.DAYS.toNanos(30));
+                    account.restoreTransaction(0, deposit ? TransactionType.DEPOSIT : TransactionType.WITHDRAW,
+                            amount, balance, at, deposit ? "Salary" : null);
+                }
+                eager = JournalCodec.writeSnapshotAccount(eager, crc, account);
+                fast = JournalCodec.writeSnapshotHeader(fast, crc, account, histories.write(account.getTransactions()));
+                if (eager.position() >= (1 << 19)) drain(eagerOut, eager);
+                if (fast.position() >= (1 << 19)) drain(fastOut, fast);
+            }
+            drain(eagerOut, eager);
+            drain(fastOut, fast);
+            histories.finish();
+        }
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
+    // ---- one trial, in its own JVM ----
+
+    // Recovers dataDir, logs in, then runs the workload for the given time, printing "LOGIN",
+    // "HEAP <MB>" and one "OPS <count>" line per interval on out
+    static void trial(Path dataDir, long seconds, PrintStream out) throws IOException {
+        AccountRegistry registry = AccountRegistry.global();
+        Persistence.recover(dataDir, registry, new HistoryFile[1]);
+        BankAccount[] accounts = registry.toArray();
+        BankAccount account = accounts[accounts.length / 2];
+        if (!CredentialVerifier.global().verify(account, PASSWORD, PIN)) {
+            throw new IllegalStateException("Login to " + account.getAccountNumber() + " failed");
+        }
+        out.println("LOGIN");
+        out.flush();
+        Runtime runtime = Runtime.getRuntime();
+        System.gc(); // live heap only
+        out.println("HEAP " + (runtime.totalMemory() - runtime.freeMemory()) / (1 << 20));
+
+        SplittableRandom random = new SplittableRandom(7);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long intervalEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS);
+        long ops = 0;
+        long sink = 0;
+        while (true) {
+            for (int n = 0; n < 256; n++) {
+                BankAccount target = accounts[random.nextInt(accounts.length)];
+                int kind = random.nextInt(20);
+                if (kind < 9) {
+                    target.deposit(Money.ofRupees(1 + random.nextInt(500)), "load");
+                } else if (kind < 16) {
+                    target.withdraw(Money.ofRupees(1 + random.nextInt(500)), null);
+                } else if (kind < 18) {
+                    target.showLastNTransactions(5);
+                } else {
+                    sink += target.getTransactions().size();
+                }
+            }
+            ops += 256;
+            long now = System.nanoTime();
+            if (now - intervalEnd >= 0) {
+                out.println("OPS " + ops);
+                out.flush();
+                ops = 0;
+                intervalEnd += TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS);
+                if (now - end >= 0) break;
+            }
+        }
+        if (sink < 0) out.println(sink);
+    }
+
+    // ---- run: one JVM per trial ----
+
+    private static final class Outcome {
+        long loginMillis = -1;
+        long heapMb;
+        final List<long[]> intervals = new ArrayList<>(); // {millis since launch, ops}
+    }
+
+    // Null if the trial failed, e.g. ran out of heap
+    private static Outcome launch(Path dataDir, boolean fastStart, long seconds, String heap, String archive)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx" + heap, "-XX:+ExitOnOutOfMemoryError", "-Dbank.fastStart=" + fastStart,
+                "-Dbank.risk.enabled=false"));
+        if (archive != null) command.add("-XX:SharedArchiveFile=" + archive);
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+                "StartupBenchmark", "trial", dataDir.toString(), Long.toString(seconds)));
+        Outcome outcome = new Outcome();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (line.equals("LOGIN")) {
+                    outcome.loginMillis = millis;
+                } else if (line.startsWith("HEAP ")) {
+                    outcome.heapMb = Long.parseLong(line.substring(5));
+                } else if (line.startsWith("OPS ")) {
+                    outcome.intervals.add(new long[]{millis, Long.parseLong(line.substring(4))});
+                } else {
+                    System.out.println("  " + line);
+                }
+            }
+        }
+        if (process.waitFor() != 0 || outcome.loginMillis < 0) {
+            System.out.println("  exit code " + process.exitValue());
+            return null;
+        }
+        return outcome;
+    }
+
+    private static String row(String mode, Outcome outcome) {
+        List<long[]> intervals = outcome.intervals;
+        int quarter = Math.max(1, intervals.size() / 4);
+        long[] tail = new long[quarter];
+        for (int i = 0; i < quarter; i++) {
+            tail[i] = intervals.get(intervals.size() - quarter + i)[1];
+        }
+        Arrays.sort(tail);
+        long steady = tail[quarter / 2]; // median interval of the last quarter
+        long warmMillis = -1;
+        for (int i = 0; i + 3 < intervals.size() && warmMillis < 0; i++) {
+            boolean warm = true;
+            for (int j = i; j <= i + 3; j++) {
+                warm &= intervals.get(j)[1] >= steady * 9 / 10;
+            }
+            // the interval started INTERVAL_MILLIS before its line arrived
+            if (warm) warmMillis = intervals.get(i)[0] - INTERVAL_MILLIS;
+        }
+        return String.format("%-10s %12d %10d %14d %14.0f", mode, outcome.loginMillis, outcome.heapMb,
+                warmMillis, steady * 1000.0 / INTERVAL_MILLIS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "";
+        if (mode.equals("prepare") && args.length > 1) {
+            int count = args.length > 2 ? Integer.parseInt(args[2]) : 5_000_000;
+            int transactions = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+            long start = System.nanoTime();
+            prepare(Paths.get(args[1]), FIRST_ACCOUNT, count, transactions);
+            System.out.printf("Prepared %d accounts with %d transactions each in %.1f s%n", count, transactions,
+                    (System.nanoTime() - start) / 1e9);
+        } else if (mode.equals("trial") && args.length > 2) {
+            PrintStream out = System.out;
+            // history reads print; keep that out of the report
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            trial(Paths.get(args[1]), Long.parseLong(args[2]), out);
+        } else if (mode.equals("run") && args.length > 1) {
+            Path dir = Paths.get(args[1]);
+            long seconds = args.length > 2 ? Long.parseLong(args[2]) : 30;
+            String heap = args.length > 3 ? args[3] : "2g";
+            String archive = args.length > 4 ? args[4] : null;
+            System.out.printf("%-10s %12s %10s %14s %14s%n",
+                    "mode", "login (ms)", "heap (MB)", "warm (ms)", "steady ops/s");
+            for (String trial : archive == null ? new String[]{"eager", "fast"}
+                    : new String[]{"eager", "fast", "eager+cds", "fast+cds"}) {
+                boolean fastStart = trial.startsWith("fast");
+                Outcome outcome = launch(dir.resolve(fastStart ? "fast" : "eager"), fastStart, seconds, heap,
+                        trial.endsWith("cds") ? archive : null);
+                System.out.println(outcome == null ? String.format("%-10s failed", trial) : row(trial, outcome));
+            }
+        } else if (mode.equals("train") && args.length > 1) {
+            PrintStream silent = new PrintStream(OutputStream.nullOutputStream());
+            System.setOut(silent);
+            trial(Paths.get(args[1]).resolve("fast"), 2, silent);
+        } else {
+            System.out.println("usage: java StartupBenchmark prepare <dir> [accounts] [transactionsPerAccount]");
+            System.out.println("       java StartupBenchmark run <dir> [seconds] [heap] [archive]");
+            System.out.println("       java StartupBenchmark train <dir>");
+        }
+    }
+}
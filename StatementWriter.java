@@ -0,0 +1,422 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Monthly statements for every account: details, opening balance, the month's monetary entries
+// with a running balance, totals and closing balance. Accounts are sorted by number and split into
+// ranges rendered in parallel on a fork-join pool, like InterestBatch. Each rendering thread
+// encodes text straight into a few reused direct ByteBuffers and hands them to FileChannel as one
+// gathering write, so no String or byte[] per statement is built and the heap does not grow with
+// the number of statements.
+//
+// Layouts:
+//   FILES     one file per account, <target>/<last two digits>/<account>-<yyyy-MM>.txt
+//   COMBINED  every statement in the single file <target>; statements are whole but in no
+//             particular order
+// Balances come from the retained history (see TransactionLog): the closing balance is the
+// current balance less everything after the month, so statements for recent months are exact.
+//
+//   java StatementWriter <yyyy-MM> <target> [files|combined] [parallelism]
+final class StatementWriter {
+    enum Layout {
+        FILES,
+        COMBINED
+    }
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int BUFFERS = 4; // written together by one gathering write
+    private static final int RANGES_PER_THREAD = 4;
+    private static final int MIN_RANGE = 64;
+    private static final DateTimeFormatter TITLE_FORMAT = DateTimeFormatter.ofPattern("MMMM yyyy", Locale.ENGLISH);
+
+    static final class Summary {
+        final long statements;
+        final long bytes;
+        final long elapsedNanos;
+        final int parallelism;
+
+        Summary(long statements, long bytes, long elapsedNanos, int parallelism) {
+            this.statements = statements;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.parallelism = parallelism;
+        }
+
+        double statementsPerSecond() {
+            return elapsedNanos == 0 ? 0 : statements * 1e9 / elapsedNanos;
+        }
+
+        double bytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Wrote " + statements + " statements (" + bytes / 1024 + " KB) in "
+                    + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms on " + parallelism + " threads ("
+                    + Math.round(statementsPerSecond()) + " statements/s, "
+                    + String.format("%.1f", bytesPerSecond() / (1024 * 1024)) + " MB/s)";
+        }
+    }
+
+    private final YearMonth month;
+    private final String title;
+    private final String period;
+    private final long fromNanos;
+    private final long toNanos;
+    private final Layout layout;
+    private final Path target;
+    private final FileChannel combined; // COMBINED only
+    private final ReentrantLock combinedLock = new ReentrantLock();
+    private final String generated = "Generated: " + LocalDateTime.now().withNano(0);
+    private final ConcurrentLinkedQueue<Renderer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private StatementWriter(YearMonth month, Path target, Layout layout, FileChannel combined) {
+        this.month = month;
+        this.title = "=== Statement for " + month.format(TITLE_FORMAT) + " ===";
+        this.period = "Period: " + month.atDay(1).format(Validation.DOB_FORMAT) + " to "
+                + month.atEndOfMonth().format(Validation.DOB_FORMAT);
+        this.fromNanos = TransactionLog.toEpochNanos(month.atDay(1).atStartOfDay());
+        this.toNanos = TransactionLog.toEpochNanos(month.plusMonths(1).atDay(1).atStartOfDay());
+        this.layout = layout;
+        this.target = target;
+        this.combined = combined;
+    }
+
+    public static Summary run(AccountRegistry registry, YearMonth month, Path target, Layout layout, int parallelism)
+            throws IOException {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+        long start = System.nanoTime();
+        BankAccount[] accounts = registry.toArray();
+        Arrays.sort(accounts, (a, b) -> Long.compare(a.getAccountNumber(), b.getAccountNumber()));
+        FileChannel combined = null;
+        if (layout == Layout.COMBINED) {
+            if (target.getParent() != null) Files.createDirectories(target.getParent());
+            combined = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            for (int i = 0; i < 100; i++) {
+                Files.createDirectories(target.resolve(String.format("%02d", i)));
+            }
+        }
+        StatementWriter writer = new StatementWriter(month, target, layout, combined);
+        int rangeSize = Math.max(MIN_RANGE, (accounts.length + parallelism * RANGES_PER_THREAD - 1)
+                / (parallelism * RANGES_PER_THREAD));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(writer.new Range(accounts, 0, accounts.length, rangeSize));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            pool.shutdown();
+            if (combined != null) combined.close();
+        }
+        return new Summary(writer.statements.get(), writer.bytes.get(), System.nanoTime() - start, parallelism);
+    }
+
+    // Splits the sorted accounts in halves until a range is small enough for one rendering pass
+    private final class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BankAccount[] accounts;
+        private final int from;
+        private final int to;
+        private final int rangeSize;
+
+        Range(BankAccount[] accounts, int from, int to, int rangeSize) {
+            this.accounts = accounts;
+            this.from = from;
+            this.to = to;
+            this.rangeSize = rangeSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= rangeSize) {
+                try {
+                    render(accounts, from, to);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Range(accounts, from, mid, rangeSize), new Range(accounts, mid, to, rangeSize));
+        }
+    }
+
+    private void render(BankAccount[] accounts, int from, int to) throws IOException {
+        Renderer renderer = idle.poll();
+        if (renderer == null) renderer = new Renderer();
+        try {
+            for (int i = from; i < to; i++) {
+                renderer.statement(accounts[i]);
+            }
+            renderer.finish();
+        } finally {
+            renderer.abandonStatement();
+            idle.add(renderer);
+        }
+    }
+
+    // Per-thread rendering state; the direct buffers live as long as the run and are reused for
+    // every statement
+    private final class Renderer {
+        private final ByteBuffer[] buffers = new ByteBuffer[BUFFERS];
+        private final StringBuilder line = new StringBuilder(256);
+        private int current; // buffer being filled
+        private FileChannel file; // FILES: the statement's file once opened
+        private long accountNumber;
+        private boolean holdingCombined; // COMBINED: a statement bigger than the buffers is being written
+
+        Renderer() {
+            for (int i = 0; i < BUFFERS; i++) {
+                buffers[i] = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            }
+        }
+
+        void statement(BankAccount account) throws IOException {
+            accountNumber = account.getAccountNumber();
+            account.balanceLock().lock();
+            try {
+                renderLocked(account);
+            } finally {
+                account.balanceLock().unlock();
+            }
+            endStatement();
+            statements.incrementAndGet();
+        }
+
+        private void renderLocked(BankAccount account) throws IOException {
+            TransactionLog log = account.getTransactions();
+            int[] during = log.find(null, fromNanos, toNanos, Long.MIN_VALUE);
+            int[] after = log.find(null, toNanos, Long.MAX_VALUE, Long.MIN_VALUE);
+            long closing = account.getBalance() - net(log, after);
+            long opening = closing - net(log, during);
+
+            text(title).newLine();
+            text("Account Number: ").number(account.getAccountNumber()).newLine();
+            text("Account Type: ").text(account.toString()).newLine();
+            text("Name: ").text(account.getFirstName()).newLine(); // first name only, as on screen
+            text(period).newLine();
+            text("Opening balance: ₹").money(opening).newLine();
+            long balance = opening;
+            long credits = 0;
+            long debits = 0;
+            int shown = 0;
+            for (int index : during) {
+                TransactionType type = log.typeAt(index);
+                int sign = type.balanceSign();
+                if (sign == 0) continue;
+                long amount = log.amountAt(index);
+                balance += sign * amount;
+                if (sign > 0) {
+                    credits += amount;
+                } else {
+                    debits += amount;
+                }
+                line.setLength(0);
+                log.renderTo(line.append("  "), index).append(" | Balance: ₹");
+                Money.appendTo(line, balance);
+                text(line).newLine();
+                shown++;
+            }
+            if (shown == 0) text("  No transactions in this period.").newLine();
+            text("Total credits: ₹").money(credits).text(" | Total debits: ₹").money(debits).newLine();
+            text("Closing balance: ₹").money(closing).newLine();
+            if (log.totalRecorded() > log.size() && log.size() > 0 && log.timestampAt(0) > fromNanos) {
+                text("Note: entries before ").text(TransactionLog.toDateTime(log.timestampAt(0)).toString())
+                        .text(" are no longer retained and are not listed.").newLine();
+            }
+            text(generated).newLine().newLine();
+        }
+
+        private long net(TransactionLog log, int[] indexes) {
+            long net = 0;
+            for (int index : indexes) {
+                net += log.typeAt(index).balanceSign() * log.amountAt(index);
+            }
+            return net;
+        }
+
+        // ---- encoding ----
+
+        private Renderer text(CharSequence s) throws IOException {
+            int length = s.length();
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                ByteBuffer b = room();
+                if (c < 0x80) {
+                    b.put((byte) c);
+                } else if (c < 0x800) {
+                    b.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    b.put((byte) (0xF0 | cp >> 18)).put((byte) (0x80 | ((cp >> 12) & 0x3F)))
+                            .put((byte) (0x80 | ((cp >> 6) & 0x3F))).put((byte) (0x80 | (cp & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    b.put((byte) '?'); // unpaired surrogate, as String.getBytes would
+                } else {
+                    b.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | ((c >> 6) & 0x3F))).put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+            return this;
+        }
+
+        private Renderer number(long value) throws IOException {
+            line.setLength(0);
+            return text(line.append(value));
+        }
+
+        private Renderer money(long paise) throws IOException {
+            line.setLength(0);
+            return text(Money.appendTo(line, paise));
+        }
+
+        private Renderer newLine() throws IOException {
+            room().put((byte) '\n');
+            return this;
+        }
+
+        // Current buffer with room for one encoded character; spills when all buffers are full
+        private ByteBuffer room() throws IOException {
+            if (buffers[current].remaining() < 4) {
+                if (current + 1 < BUFFERS) {
+                    current++;
+                } else {
+                    spill();
+                }
+            }
+            return buffers[current];
+        }
+
+        // The statement does not fit in the buffers: write what there is and keep going
+        private void spill() throws IOException {
+            if (layout == Layout.FILES) {
+                write(statementFile());
+            } else {
+                if (!holdingCombined) {
+                    combinedLock.lock(); // keeps the rest of this statement contiguous
+                    holdingCombined = true;
+                }
+                write(combined);
+            }
+        }
+
+        private void endStatement() throws IOException {
+            if (layout == Layout.FILES) {
+                FileChannel out = statementFile();
+                try {
+                    write(out);
+                } finally {
+                    file = null;
+                    out.close();
+                }
+            } else if (holdingCombined) {
+                try {
+                    write(combined);
+                } finally {
+                    holdingCombined = false;
+                    combinedLock.unlock();
+                }
+            } else if (current == BUFFERS - 1) {
+                writeCombined(); // batch several small statements per write
+            }
+        }
+
+        // Writes statements still buffered at the end of a range
+        void finish() throws IOException {
+            if (layout == Layout.COMBINED) writeCombined();
+        }
+
+        // After a failure: drop the partial statement and release what it held
+        void abandonStatement() throws IOException {
+            for (ByteBuffer b : buffers) {
+                b.clear();
+            }
+            current = 0;
+            if (holdingCombined) {
+                holdingCombined = false;
+                combinedLock.unlock();
+            }
+            if (file != null) {
+                FileChannel out = file;
+                file = null;
+                out.close();
+            }
+        }
+
+        private void writeCombined() throws IOException {
+            combinedLock.lock();
+            try {
+                write(combined);
+            } finally {
+                combinedLock.unlock();
+            }
+        }
+
+        private FileChannel statementFile() throws IOException {
+            if (file == null) {
+                Path path = target.resolve(String.format("%02d", accountNumber % 100))
+                        .resolve(accountNumber + "-" + month + ".txt");
+                file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            return file;
+        }
+
+        // One gathering write of every filled buffer (repeated if the channel takes only part)
+        private void write(FileChannel out) throws IOException {
+            int count = current + 1;
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                buffers[i].flip();
+                total += buffers[i].remaining();
+            }
+            long written = 0;
+            while (written < total) {
+                written += out.write(buffers, 0, count);
+            }
+            for (int i = 0; i < count; i++) {
+                buffers[i].clear();
+            }
+            current = 0;
+            bytes.addAndGet(total);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java StatementWriter <yyyy-MM> <target> [files|combined] [parallelism]");
+            return;
+        }
+        YearMonth month = YearMonth.parse(args[0]);
+        Layout layout = args.length > 2 ? Layout.valueOf(args[2].toUpperCase()) : Layout.FILES;
+        int parallelism = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        AccountRegistry registry = AccountRegistry.global();
+        Persistence persistence = Persistence.fromSystemProperties(registry);
+        try {
+            System.out.println(run(registry, month, Paths.get(args[1]), layout, parallelism));
+        } finally {
+            if (persistence != null) persistence.close();
+        }
+    }
+}
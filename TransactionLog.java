@@ -0,0 +1,325 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+// Per-account transaction history stored column by column (type, amount, timestamp, description)
+// instead of one String per event. Text is only built when an entry is rendered.
+// Once maxRetained entries are held, the oldest entry is overwritten (ring buffer).
+// Not thread-safe: BankAccount guards it with the account's balance lock.
+//
+// Queries by time range and type avoid full scans: the timestamp column never decreases, so a time
+// range is found by binary search over it, and each type keeps a sorted list of the positions of
+// its entries, which is binary searched the same way. An entry older than the one before it (clock
+// step back) is indexed at the previous entry's time; its own time is kept for display.
+class TransactionLog {
+    public static final int DEFAULT_MAX_RETAINED = Integer.getInteger("bank.txn.maxRetained", 1 << 20);
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int TYPE_COUNT = TransactionType.values().length;
+
+    private final int maxRetained;
+    private byte[] types;
+    private long[] amounts;
+    private long[] timestamps; // epoch nanoseconds, never decreasing; what queries by time go by
+    private long[] recordedTimestamps; // as appended; null until the first clock step back
+    private String[] descriptions; // allocated on first entry that has a description
+    private int head; // physical index of the oldest retained entry
+    private int size;
+    private long totalRecorded;
+    // Per type: positions (entry number since creation, minus typeBases) of its entries in append
+    // order. Positions of overwritten entries are dropped lazily when the array needs room.
+    private final int[][] typePositions = new int[TYPE_COUNT][];
+    private final int[] typeCounts = new int[TYPE_COUNT];
+    private final long[] typeBases = new long[TYPE_COUNT];
+
+    public TransactionLog() {
+        this(DEFAULT_MAX_RETAINED);
+    }
+
+    public TransactionLog(int maxRetained) {
+        if (maxRetained <= 0) throw new IllegalArgumentException("maxRetained must be positive");
+        this.maxRetained = maxRetained;
+        int capacity = Math.min(INITIAL_CAPACITY, maxRetained);
+        types = new byte[capacity];
+        amounts = new long[capacity];
+        timestamps = new long[capacity];
+    }
+
+    public static long nowNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    public void append(TransactionType type, long amount, long timestampNanos, String description) {
+        long ordered = size > 0 ? Math.max(timestampNanos, timestamps[physical(size - 1)]) : timestampNanos;
+        if (size == types.length && size < maxRetained) {
+            grow(Math.min(maxRetained, Math.max(INITIAL_CAPACITY, size << 1)));
+        }
+        int slot;
+        if (size < types.length) {
+            slot = physical(size);
+            size++;
+        } else {
+            // full at maxRetained: overwrite the oldest entry
+            slot = head;
+            head = (head + 1) % types.length;
+        }
+        types[slot] = (byte) type.ordinal();
+        amounts[slot] = amount;
+        if (ordered != timestampNanos && recordedTimestamps == null) {
+            recordedTimestamps = timestamps.clone();
+        }
+        timestamps[slot] = ordered;
+        if (recordedTimestamps != null) {
+            recordedTimestamps[slot] = timestampNanos;
+        }
+        if (description != null && descriptions == null) {
+            descriptions = new String[types.length];
+        }
+        if (descriptions != null) {
+            descriptions[slot] = description;
+        }
+        totalRecorded++;
+        indexType(type.ordinal(), totalRecorded - 1);
+    }
+
+    // Appends every retained entry of other, oldest first
+    public void appendAll(TransactionLog other) {
+        for (int i = 0; i < other.size(); i++) {
+            append(other.typeAt(i), other.amountAt(i), other.timestampAt(i), other.descriptionAt(i));
+        }
+    }
+
+    // Number of entries currently retained; index 0 is the oldest
+    public int size() {
+        return size;
+    }
+
+    // Number of entries ever appended, including ones already overwritten
+    public long totalRecorded() {
+        return totalRecorded;
+    }
+
+    public TransactionType typeAt(int index) {
+        return TransactionType.fromCode(types[checkedPhysical(index)]);
+    }
+
+    public long amountAt(int index) {
+        return amounts[checkedPhysical(index)];
+    }
+
+    // The time the entry was appended with, even if the clock had stepped back
+    public long timestampAt(int index) {
+        return recordedAt(checkedPhysical(index));
+    }
+
+    public String descriptionAt(int index) {
+        int slot = checkedPhysical(index);
+        return descriptions == null ? null : descriptions[slot];
+    }
+
+    // Logical index of the first retained entry with timestamp >= nanos (size() if none). Here and
+    // in find, an entry appended after a clock step back counts as being at the previous entry's time.
+    public int firstAtOrAfter(long nanos) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[physical(mid)] < nanos) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Logical indexes, oldest first, of the retained entries with fromNanos <= timestamp < toNanos,
+    // of the given type (null for any) and with amount >= minAmount (Long.MIN_VALUE for any)
+    public int[] find(TransactionType type, long fromNanos, long toNanos, long minAmount) {
+        int[] found = new int[16];
+        int count = 0;
+        if (type == null) {
+            int end = firstAtOrAfter(toNanos);
+            for (int i = firstAtOrAfter(fromNanos); i < end; i++) {
+                int slot = physical(i);
+                if (timestamps[slot] < fromNanos || timestamps[slot] >= toNanos || amounts[slot] < minAmount) continue;
+                if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                found[count++] = i;
+            }
+            return Arrays.copyOf(found, count);
+        }
+        int t = type.ordinal();
+        int[] positions = typePositions[t];
+        if (positions == null) return new int[0];
+        long firstRetained = totalRecorded - size;
+        int start = lowerBoundPosition(t, firstRetained);
+        int end = typeCounts[t];
+        start = lowerBoundTime(t, start, end, fromNanos);
+        end = lowerBoundTime(t, start, end, toNanos);
+        for (int k = start; k < end; k++) {
+            int index = (int) (typeBases[t] + positions[k] - firstRetained);
+            int slot = physical(index);
+            if (timestamps[slot] < fromNanos || timestamps[slot] >= toNanos || amounts[slot] < minAmount) continue;
+            if (count == found.length) found = Arrays.copyOf(found, count * 2);
+            found[count++] = index;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    public String render(int index) {
+        return renderTo(new StringBuilder(64), index).toString();
+    }
+
+    // Renders one entry in the same wording the console has always shown
+    public StringBuilder renderTo(StringBuilder sb, int index) {
+        int slot = checkedPhysical(index);
+        TransactionType type = TransactionType.fromCode(types[slot]);
+        String description = descriptions == null ? null : descriptions[slot];
+        sb.append(type.getLabel());
+        if (type.isMonetary()) {
+            Money.appendTo(sb.append(": "), amounts[slot]);
+            if (description != null) {
+                switch (type) {
+                    case WITHDRAW:
+                        sb.append(" | Purpose: ").append(description);
+                        break;
+                    case INTEREST:
+                        sb.append(" for ").append(description);
+                        break;
+                    default:
+                        sb.append(' ').append(description);
+                }
+            }
+            sb.append(" | Date: ");
+        } else {
+            if (description != null) sb.append(' ').append(description);
+            sb.append(" on ");
+        }
+        return sb.append(toDateTime(recordedAt(slot)));
+    }
+
+    static LocalDateTime toDateTime(long epochNanos) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(epochNanos, 1_000_000_000L),
+                Math.floorMod(epochNanos, 1_000_000_000L));
+        return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+    }
+
+    // Converts a LocalDateTime in the system zone back to the epoch nanoseconds stored here
+    static long toEpochNanos(LocalDateTime dateTime) {
+        Instant instant = dateTime.atZone(ZoneId.systemDefault()).toInstant();
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    private void indexType(int t, long position) {
+        int[] positions = typePositions[t];
+        if (positions == null) {
+            positions = typePositions[t] = new int[INITIAL_CAPACITY];
+            typeBases[t] = position;
+        } else if (typeCounts[t] == positions.length || position - typeBases[t] > Integer.MAX_VALUE) {
+            positions = compactType(t);
+        }
+        positions[typeCounts[t]++] = (int) (position - typeBases[t]);
+    }
+
+    // Drops positions of overwritten entries and rebases the rest; grows the array if still over half full
+    private int[] compactType(int t) {
+        int[] positions = typePositions[t];
+        long firstRetained = totalRecorded - size;
+        int dead = lowerBoundPosition(t, firstRetained);
+        int live = typeCounts[t] - dead;
+        int[] target = live + 1 > positions.length / 2 ? new int[positions.length * 2] : positions;
+        long shift = firstRetained - typeBases[t];
+        for (int i = 0; i < live; i++) {
+            target[i] = (int) (positions[dead + i] - shift);
+        }
+        typePositions[t] = target;
+        typeBases[t] = firstRetained;
+        typeCounts[t] = live;
+        return target;
+    }
+
+    // First k with typeBases[t] + typePositions[t][k] >= position
+    private int lowerBoundPosition(int t, long position) {
+        int[] positions = typePositions[t];
+        long relative = position - typeBases[t];
+        int lo = 0;
+        int hi = typeCounts[t];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (positions[mid] < relative) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // First k in [lo, hi) whose entry has timestamp >= nanos; positions in [lo, hi) must be retained
+    private int lowerBoundTime(int t, int lo, int hi, long nanos) {
+        int[] positions = typePositions[t];
+        long offset = typeBases[t] - (totalRecorded - size);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[physical((int) (offset + positions[mid]))] < nanos) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private long recordedAt(int slot) {
+        return recordedTimestamps == null ? timestamps[slot] : recordedTimestamps[slot];
+    }
+
+    private int physical(int index) {
+        int slot = head + index;
+        return slot < types.length ? slot : slot - types.length;
+    }
+
+    private int checkedPhysical(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return physical(index);
+    }
+
+    // Reallocates the columns in logical order so head returns to 0
+    private void grow(int capacity) {
+        int oldCapacity = types.length;
+        byte[] grownTypes = new byte[capacity];
+        long[] grownAmounts = new long[capacity];
+        long[] grownTimestamps = new long[capacity];
+        copyOrdered(types, grownTypes, oldCapacity);
+        copyOrdered(amounts, grownAmounts, oldCapacity);
+        copyOrdered(timestamps, grownTimestamps, oldCapacity);
+        types = grownTypes;
+        amounts = grownAmounts;
+        timestamps = grownTimestamps;
+        if (descriptions != null) {
+            String[] grownDescriptions = new String[capacity];
+            copyOrdered(descriptions, grownDescriptions, oldCapacity);
+            descriptions = grownDescriptions;
+        }
+        if (recordedTimestamps != null) {
+            long[] grownRecorded = new long[capacity];
+            copyOrdered(recordedTimestamps, grownRecorded, oldCapacity);
+            recordedTimestamps = grownRecorded;
+        }
+        head = 0;
+    }
+
+    private void copyOrdered(Object from, Object to, int oldCapacity) {
+        int firstPart = Math.min(size, oldCapacity - head);
+        System.arraycopy(from, head, to, 0, firstPart);
+        System.arraycopy(from, 0, to, firstPart, size - firstPart);
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionLog[size=" + size + ", totalRecorded=" + totalRecorded + "]";
+    }
+}
@@ -0,0 +1,66 @@
+// Kinds of entries kept in an account's TransactionLog. Monetary entries carry an amount in paise.
+enum TransactionType {
+    DEPOSIT("Deposit", true),
+    WITHDRAW("Withdraw", true),
+    INTEREST("Interest applied", true),
+    BALANCE_INQUIRY("Balance inquiry", false),
+    PASSWORD_CHANGED("Password changed", false),
+    PIN_CHANGED("PIN changed", false),
+    LOGIN_SUCCESS("Successful login", false),
+    LOGIN_FAILED("Failed login attempt", false),
+    ACCOUNT_LOCKED("Account locked", false), // amount: lock length in seconds (0 before LoginGuard)
+    ACCOUNT_CREATED("Account created", false),
+    TRANSFER_OUT("Transfer out", true),
+    TRANSFER_IN("Transfer in", true);
+
+    private static final TransactionType[] VALUES = values();
+
+    private final String label;
+    private final boolean monetary;
+
+    TransactionType(String label, boolean monetary) {
+        this.label = label;
+        this.monetary = monetary;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isMonetary() {
+        return monetary;
+    }
+
+    // +1 if the entry adds its amount to the balance, -1 if it takes it away, 0 if it has no amount
+    public int balanceSign() {
+        switch (this) {
+            case DEPOSIT:
+            case INTEREST:
+            case TRANSFER_IN:
+                return 1;
+            case WITHDRAW:
+            case TRANSFER_OUT:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    // Kept in the bank-wide SecurityEventIndex as well as in the account's own history
+    public boolean isSecurityEvent() {
+        switch (this) {
+            case LOGIN_SUCCESS:
+            case LOGIN_FAILED:
+            case ACCOUNT_LOCKED:
+            case PASSWORD_CHANGED:
+            case PIN_CHANGED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public static TransactionType fromCode(int code) {
+        return VALUES[code];
+    }
+}
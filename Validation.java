@@ -0,0 +1,162 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// Password, PIN and date-of-birth checks used by account onboarding and credential changes.
+// Bulk imports call these millions of times, so the common inputs are checked without allocating:
+// no regexes, substrings or char array copies, and a dd/MM/yyyy date is parsed by hand. Anything
+// that is not exactly dd/MM/yyyy goes to one shared formatter, so the results are the same as
+// DateTimeFormatter.ofPattern("dd/MM/yyyy") with LocalDate.parse for every input.
+//
+// Dates are packed into a long as year << 9 | month << 5 | day, which orders like the dates do.
+final class Validation {
+    static final DateTimeFormatter DOB_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    static final long INVALID_DATE = -1L;
+
+    private static volatile Today today = new Today();
+
+    private Validation() {
+    }
+
+    // Today's date, recomputed after the next local midnight
+    private static final class Today {
+        final long packed;
+        final long untilMillis;
+
+        Today() {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate now = LocalDate.now(zone);
+            packed = pack(now.getYear(), now.getMonthValue(), now.getDayOfMonth());
+            untilMillis = now.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+    }
+
+    // Min 8 chars, 1 uppercase, 1 lowercase, 1 digit, 1 special char
+    static boolean isValidPassword(String pwd) {
+        if (pwd == null || pwd.length() < 8) return false;
+        boolean upper = false, lower = false, digit = false, special = false;
+        for (int i = 0; i < pwd.length(); i++) {
+            char c = pwd.charAt(i);
+            if (Character.isUpperCase(c)) upper = true;
+            else if (Character.isLowerCase(c)) lower = true;
+            else if (Character.isDigit(c)) digit = true;
+            else special = true;
+        }
+        return upper && lower && digit && special;
+    }
+
+    // 4 digits, not DDMM, not MMDD, not YYYY from the DOB (only the digits are checked when the
+    // DOB is unknown or not in dd/MM/yyyy shape)
+    static boolean isValidPin(String pin, String dob) {
+        if (pin == null || pin.length() != 4 || !digits(pin, 0, 4)) return false;
+        if (dob == null || !hasDobShape(dob)) return true;
+        boolean ddmm = pin.charAt(0) == dob.charAt(0) && pin.charAt(1) == dob.charAt(1)
+                && pin.charAt(2) == dob.charAt(3) && pin.charAt(3) == dob.charAt(4);
+        boolean mmdd = pin.charAt(0) == dob.charAt(3) && pin.charAt(1) == dob.charAt(4)
+                && pin.charAt(2) == dob.charAt(0) && pin.charAt(3) == dob.charAt(1);
+        return !ddmm && !mmdd && !pin.regionMatches(0, dob, 6, 4);
+    }
+
+    // Parses a DOB in dd/MM/yyyy, or INVALID_DATE. As with the formatter's default (smart)
+    // resolving, a day past the end of the month (31/02) becomes the month's last day.
+    static long parseDob(String dob) {
+        if (dob != null && hasDobShape(dob)) {
+            int day = number(dob, 0, 2);
+            int month = number(dob, 3, 5);
+            int year = number(dob, 6, 10);
+            if (day < 1 || day > 31 || month < 1 || month > 12 || year < 1) return INVALID_DATE;
+            return pack(year, month, Math.min(day, monthLength(year, month)));
+        }
+        try {
+            LocalDate date = LocalDate.parse(dob, DOB_FORMAT);
+            return pack(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+        } catch (RuntimeException ex) {
+            return INVALID_DATE;
+        }
+    }
+
+    // Why a new account with these details would be refused, or null if it is acceptable.
+    // Minors (under 18) need a guardian name and relation.
+    static String accountProblem(String fullName, String dob, String password, String pin,
+                                 String guardianName, String guardianRelation) {
+        if (fullName == null || fullName.trim().isEmpty()) return "missing full name";
+        if (!isValidDob(dob)) return "invalid DOB (dd/MM/yyyy, after 1900, not in the future)";
+        if (!isValidPassword(password)) return "weak password";
+        if (!isValidPin(pin, dob)) return "invalid PIN";
+        if (age(parseDob(dob)) < 18 && (isBlank(guardianName) || isBlank(guardianRelation))) {
+            return "minor without guardian name and relation";
+        }
+        return null;
+    }
+
+    // Not in the future and born after 1900
+    static boolean isValidDob(String dob) {
+        long birth = parseDob(dob);
+        return birth != INVALID_DATE && birth <= today() && (birth >>> 9) > 1900;
+    }
+
+    // Age in whole years today, as ChronoUnit.YEARS.between(birth, today); birth must be a parsed date
+    static int age(long birth) {
+        long now = today();
+        // months between the dates, counting a partial month only once its day is reached
+        long months = (monthIndex(now) * 32 + (now & 31) - (monthIndex(birth) * 32 + (birth & 31))) / 32;
+        return (int) (months / 12);
+    }
+
+    static long today() {
+        Today t = today;
+        if (System.currentTimeMillis() >= t.untilMillis) {
+            t = new Today();
+            today = t;
+        }
+        return t.packed;
+    }
+
+    private static long pack(long year, int month, int day) {
+        return year << 9 | month << 5 | day;
+    }
+
+    private static long monthIndex(long packed) {
+        return (packed >>> 9) * 12 + ((packed >>> 5) & 15) - 1;
+    }
+
+    private static int monthLength(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    // dd/dd/dddd with ASCII digits
+    private static boolean hasDobShape(String s) {
+        return s.length() == 10 && s.charAt(2) == '/' && s.charAt(5) == '/'
+                && digits(s, 0, 2) && digits(s, 3, 5) && digits(s, 6, 10);
+    }
+
+    private static boolean digits(String s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    private static int number(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,288 @@
+import bench.Bank;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+// bench.Bank over the application classes; see there for why it exists. Deposits, withdrawals and
+// statements print their outcome as the console menu expects, so System.out is swapped for a stream
+// that discards it: the formatting is measured, the terminal is not.
+public final class BenchmarkBank implements Bank {
+    static {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    private final AccountRegistry registry = new AccountRegistry(1024);
+    private final List<BankAccount> list = new ArrayList<>(); // for findByScan
+    private final TransactionLog log = new TransactionLog(1 << 16);
+    private TransactionLog history = new TransactionLog(1);
+    private final SecurityEventIndex securityEvents = new SecurityEventIndex(1 << 21);
+    private CommandEngine engine; // created on first use; it works on the global registry
+    private BankAccount[] accounts = new BankAccount[16];
+    private int count;
+    private final Set<Long> stalled = ConcurrentHashMap.newKeySet();
+    private volatile long stallNanos;
+    private boolean stalling;
+
+    public BenchmarkBank() {
+    }
+
+    @Override
+    public int open(boolean savings, long balance) {
+        return add(savings ? new SavingsAccount("Bench User", "01/01/1990")
+                : new CurrentAccount("Bench User", "01/01/1990"), balance);
+    }
+
+    @Override
+    public int open(boolean savings, long accountNumber, long balance) {
+        return add(savings ? new SavingsAccount(accountNumber, "Bench User", "01/01/1990")
+                : new CurrentAccount(accountNumber, "Bench User", "01/01/1990"), balance);
+    }
+
+    private int add(BankAccount account, long balance) {
+        account.setBalance(balance);
+        registry.register(account);
+        return hold(account);
+    }
+
+    private int hold(BankAccount account) {
+        list.add(account);
+        if (count == accounts.length) accounts = Arrays.copyOf(accounts, count * 2);
+        accounts[count] = account;
+        return count++;
+    }
+
+    @Override
+    public long accountNumber(int handle) {
+        return accounts[handle].getAccountNumber();
+    }
+
+    @Override
+    public long balance(int handle) {
+        return accounts[handle].getBalance();
+    }
+
+    @Override
+    public void deposit(int handle, long amount) {
+        accounts[handle].deposit(amount);
+    }
+
+    @Override
+    public void withdraw(int handle, long amount) {
+        accounts[handle].withdraw(amount);
+    }
+
+    @Override
+    public boolean credit(int handle, long amount) {
+        return accounts[handle].credit(amount, TransactionType.DEPOSIT, null);
+    }
+
+    @Override
+    public boolean debit(int handle, long amount) {
+        BankAccount account = accounts[handle];
+        return account.debit(amount, account.balanceFloor(), TransactionType.WITHDRAW, null) == BankAccount.DebitResult.DONE;
+    }
+
+    @Override
+    public boolean transfer(int from, int to, long amount) {
+        return FundTransfer.transfer(accounts[from], accounts[to], amount) == FundTransfer.Result.COMPLETED;
+    }
+
+    @Override
+    public int transferBatch(long[] from, long[] to, long[] amounts) {
+        int completed = 0;
+        for (FundTransfer.Result result : FundTransfer.transferBatch(registry, from, to, amounts)) {
+            if (result == FundTransfer.Result.COMPLETED) completed++;
+        }
+        return completed;
+    }
+
+    @Override
+    public int persist(String dir, String fsyncPolicy) {
+        int before = count;
+        try {
+            Persistence.open(Paths.get(dir), registry, Journal.FsyncPolicy.valueOf(fsyncPolicy),
+                    Long.getLong("bank.fsync.windowMillis", 0L), 0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        for (BankAccount account : registry.toArray()) {
+            if (handle(account.getAccountNumber()) < 0) hold(account);
+        }
+        return count - before;
+    }
+
+    @Override
+    public void stallTransfers(int handle, long micros) {
+        stalled.add(accounts[handle].getAccountNumber());
+        stallNanos = micros * 1000;
+        if (stalling) return;
+        stalling = true;
+        // added after any journal, so both legs already hold their sequence numbers
+        AccountEvents.addListener(new AccountEventListener() {
+            @Override
+            public void onTransaction(BankAccount account, TransactionType type, long amount, long balanceAfter,
+                                      long timestampNanos, String description) {
+                if (type == TransactionType.TRANSFER_IN && stalled.contains(account.getAccountNumber())) {
+                    LockSupport.parkNanos(stallNanos);
+                }
+            }
+        });
+    }
+
+    @Override
+    public int handle(long accountNumber) {
+        for (int i = 0; i < count; i++) {
+            if (accounts[i].getAccountNumber() == accountNumber) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public void applySimpleInterest(int handle, int years, long balance) {
+        SavingsAccount account = (SavingsAccount) accounts[handle];
+        account.setBalance(balance);
+        account.applySimpleInterest(years);
+    }
+
+    @Override
+    public void showLastNTransactions(int handle, int n) {
+        accounts[handle].showLastNTransactions(n);
+    }
+
+    @Override
+    public boolean find(long accountNumber) {
+        return registry.find(accountNumber) != null;
+    }
+
+    @Override
+    public boolean findByScan(long accountNumber) {
+        for (BankAccount account : list) {
+            if (account.getAccountNumber() == accountNumber) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void append(long amount, String description) {
+        log.append(TransactionType.DEPOSIT, amount, TransactionLog.nowNanos(), description);
+    }
+
+    @Override
+    public synchronized long createAccount(String password, String pin) {
+        if (engine == null) engine = new CommandEngine();
+        return engine.createAccount(true, "Bench User", "01/01/1990", password, pin, null, null).accountNumber;
+    }
+
+    @Override
+    public String authenticate(long accountNumber, String password, String pin) {
+        return engine.authenticate(accountNumber, password, pin).status.name();
+    }
+
+    @Override
+    public long fillHistory(int entries, int withdrawEvery) {
+        history = new TransactionLog(entries);
+        long first = TransactionLog.nowNanos() - entries * 1_000_000_000L;
+        for (int i = 0; i < entries; i++) {
+            history.append(i % withdrawEvery == 0 ? TransactionType.WITHDRAW : TransactionType.DEPOSIT,
+                    Money.ofRupees(1 + i % 1000), first + i * 1_000_000_000L, null);
+        }
+        return first;
+    }
+
+    @Override
+    public int findHistory(String type, long fromNanos, long toNanos, long minAmount) {
+        return history.find(type == null ? null : TransactionType.valueOf(type), fromNanos, toNanos, minAmount).length;
+    }
+
+    @Override
+    public int scanHistory(String type, long fromNanos, long toNanos, long minAmount) {
+        TransactionType wanted = type == null ? null : TransactionType.valueOf(type);
+        int found = 0;
+        for (int i = 0; i < history.size(); i++) {
+            long timestamp = history.timestampAt(i);
+            if (timestamp >= fromNanos && timestamp < toNanos && (wanted == null || history.typeAt(i) == wanted)
+                    && history.amountAt(i) >= minAmount) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void recordSecurityEvent(long accountNumber, String type, long timestampNanos) {
+        securityEvents.record(accountNumber, TransactionType.valueOf(type), timestampNanos);
+    }
+
+    @Override
+    public int findSecurityEvents(String type, long fromNanos, long toNanos) {
+        return securityEvents.find(TransactionType.valueOf(type), fromNanos, toNanos).size();
+    }
+
+    @Override
+    public boolean isValidPin(String pin, String dob) {
+        return Validation.isValidPin(pin, dob);
+    }
+
+    @Override
+    public boolean isValidPassword(String password) {
+        return Validation.isValidPassword(password);
+    }
+
+    @Override
+    public boolean isValidDob(String dob) {
+        return Validation.isValidDob(dob);
+    }
+
+    @Override
+    public boolean legacyIsValidPin(String pin, String dob) {
+        return LegacyValidation.isValidPin(pin, dob);
+    }
+
+    @Override
+    public boolean legacyIsValidPassword(String password) {
+        return LegacyValidation.isValidPassword(password);
+    }
+
+    @Override
+    public boolean legacyIsValidDob(String dob) {
+        return LegacyValidation.isValidDOB(dob);
+    }
+
+    @Override
+    public String formatMoney(long paise) {
+        return Money.format(paise);
+    }
+
+    @Override
+    public long parseMoney(String text) {
+        return Money.parse(text);
+    }
+
+    @Override
+    public String depositMessage(long amount, long balance) {
+        return "₹" + Money.format(amount) + " deposited. New balance: ₹" + Money.format(balance);
+    }
+
+    @Override
+    public String legacyFormatMoney(double rupees) {
+        return LegacyMoney.format(rupees);
+    }
+
+    @Override
+    public double legacyParseMoney(String text) {
+        return LegacyMoney.parse(text);
+    }
+
+    @Override
+    public String legacyDepositMessage(double amount, double balance) {
+        return LegacyMoney.depositMessage(amount, balance);
+    }
+}
@@ -0,0 +1,19 @@
+// Amounts as BankApp handled them before Money: rupees in a double, read with Double.parseDouble
+// and shown with String.format, kept only so the benchmarks can compare against them
+final class LegacyMoney {
+    private LegacyMoney() {
+    }
+
+    static double parse(String text) {
+        return Double.parseDouble(text.trim());
+    }
+
+    static String format(double rupees) {
+        return String.format("%.2f", rupees);
+    }
+
+    // The message a deposit printed once the amount was added to the balance
+    static String depositMessage(double amount, double balance) {
+        return "₹" + amount + " deposited. New balance: ₹" + String.format("%.2f", balance);
+    }
+}
@@ -0,0 +1,46 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+// The password, PIN and date-of-birth checks as BankApp had them before Validation, kept only so
+// the benchmarks can compare against them
+final class LegacyValidation {
+    private LegacyValidation() {
+    }
+
+    static boolean isValidPassword(String pwd) {
+        if (pwd == null || pwd.length() < 8) return false;
+        boolean upper = false, lower = false, digit = false, special = false;
+        for (char c : pwd.toCharArray()) {
+            if (Character.isUpperCase(c)) upper = true;
+            else if (Character.isLowerCase(c)) lower = true;
+            else if (Character.isDigit(c)) digit = true;
+            else special = true;
+        }
+        return upper && lower && digit && special;
+    }
+
+    static boolean isValidPin(String pin, String dob) {
+        if (pin == null || !pin.matches("\\d{4}")) return false;
+        if (dob == null || !dob.matches("\\d{2}/\\d{2}/\\d{4}")) return true; // if DOB not known, only check digits
+        String dd = dob.substring(0, 2);
+        String mm = dob.substring(3, 5);
+        String yyyy = dob.substring(6, 10);
+        String ddmm = dd + mm;
+        String mmdd = mm + dd;
+        if (pin.equals(ddmm) || pin.equals(mmdd) || pin.equals(yyyy)) {
+            return false;
+        }
+        return true;
+    }
+
+    static boolean isValidDOB(String dob) {
+        try {
+            DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+            LocalDate birth = LocalDate.parse(dob, fmt);
+            // reasonable DOB check: not in future and year > 1900
+            return !birth.isAfter(LocalDate.now()) && birth.getYear() > 1900;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+}
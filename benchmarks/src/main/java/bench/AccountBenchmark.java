@@ -0,0 +1,110 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Deposit, withdraw and simple interest through the public account methods, including the console
+// message each prints. Uncontended: every thread has its own accounts. Contended: four threads on
+// one shared account, and four threads spread over SPREAD shared accounts; ContentionSweep runs
+// these from 1 to 64 threads. RiskScorer is off here so the numbers stay comparable across changes
+// to its rules; RiskBenchmark measures it.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = RiskBenchmark.OFF)
+public class AccountBenchmark {
+    // large enough that no run withdraws it all or deposits past Long.MAX_VALUE
+    static final long OPENING = 1L << 56;
+    static final long AMOUNT = 12_345;
+    static final int SPREAD = 64;
+
+    @State(Scope.Thread)
+    public static class Own {
+        Bank bank;
+        int savings;
+        int current;
+
+        @Setup
+        public void setUp() {
+            bank = Bank.create();
+            savings = bank.open(true, OPENING);
+            current = bank.open(false, OPENING);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        Bank bank;
+        int hot;
+        int[] spread = new int[SPREAD];
+
+        @Setup
+        public void setUp() {
+            bank = Bank.create();
+            hot = bank.open(true, OPENING);
+            for (int i = 0; i < SPREAD; i++) {
+                spread[i] = bank.open(i % 2 == 0, OPENING);
+            }
+        }
+    }
+
+    // Where a thread is in Shared.spread
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = (int) Thread.currentThread().getId() * 17;
+    }
+
+    @Benchmark
+    public void savingsDeposit(Own s) {
+        s.bank.deposit(s.savings, AMOUNT);
+    }
+
+    @Benchmark
+    public void savingsWithdraw(Own s) {
+        s.bank.withdraw(s.savings, AMOUNT);
+    }
+
+    @Benchmark
+    public void currentDeposit(Own s) {
+        s.bank.deposit(s.current, AMOUNT);
+    }
+
+    @Benchmark
+    public void currentWithdraw(Own s) {
+        s.bank.withdraw(s.current, AMOUNT);
+    }
+
+    @Benchmark
+    public void applySimpleInterest(Own s) {
+        s.bank.applySimpleInterest(s.savings, 3, 10_000_000L);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void contendedDeposit(Shared s) {
+        s.bank.deposit(s.hot, AMOUNT);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void contendedWithdraw(Shared s) {
+        s.bank.withdraw(s.hot, AMOUNT);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void spreadDeposit(Shared s, Cursor c) {
+        s.bank.deposit(s.spread[c.next++ & (SPREAD - 1)], AMOUNT);
+    }
+}
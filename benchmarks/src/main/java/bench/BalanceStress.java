@@ -0,0 +1,77 @@
+package bench;
+
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+// Lost-update check for the per-account lock: many threads deposit into and withdraw from a few
+// shared accounts at once, each counting what it actually moved, and every final balance must
+// equal the opening balance plus the deposits minus the withdrawals that went through. Exits with
+// status 1 on any difference. Withdrawals can hit the balance floor, so the opening balance is
+// kept small enough that some of them are refused and the refused path is exercised too.
+// RiskScorer is turned off unless bank.risk.enabled is given, since it would decline most of them.
+//
+//   java -cp benchmarks/target/benchmarks.jar bench.BalanceStress [threads] [ops] [accounts]
+//   defaults:                                                      64       200000 4
+public final class BalanceStress {
+    private static final long OPENING = 1_000_000L;
+
+    private BalanceStress() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int accounts = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        if (System.getProperty("bank.risk.enabled") == null) System.setProperty("bank.risk.enabled", "false");
+        PrintStream out = System.out; // BenchmarkBank discards System.out
+        Bank bank = Bank.create();
+        int[] handles = new int[accounts];
+        for (int i = 0; i < accounts; i++) {
+            handles[i] = bank.open(i % 2 == 0, OPENING);
+        }
+        long[][] moved = new long[threads][accounts]; // net amount each thread applied to each account
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long[] mine = moved[t];
+            SplittableRandom random = new SplittableRandom(t);
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < ops; i++) {
+                    int a = random.nextInt(accounts);
+                    long amount = 1 + random.nextInt(10_000);
+                    if (random.nextBoolean()) {
+                        if (bank.credit(handles[a], amount)) mine[a] += amount;
+                    } else {
+                        if (bank.debit(handles[a], amount)) mine[a] -= amount;
+                    }
+                }
+            }, "stress-" + t);
+            workers[t].start();
+        }
+        long began = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long millis = (System.nanoTime() - began) / 1_000_000;
+        boolean lost = false;
+        for (int a = 0; a < accounts; a++) {
+            long expected = OPENING;
+            for (long[] mine : moved) {
+                expected += mine[a];
+            }
+            long actual = bank.balance(handles[a]);
+            out.printf("account %d: expected %d, balance %d%s%n", a, expected, actual,
+                    expected == actual ? "" : "  LOST UPDATES");
+            if (expected != actual) lost = true;
+        }
+        out.printf("%d threads x %d operations in %d ms%n", threads, ops, millis);
+        if (lost) System.exit(1);
+    }
+}
@@ -0,0 +1,116 @@
+package bench;
+
+// The operations the benchmarks measure. The application lives in the unnamed package, which
+// named packages cannot refer to and JMH will not generate benchmarks for, so BenchmarkBank (unnamed
+// package, this module) implements this over the real classes and create() loads it by name.
+// Accounts are addressed by the handle open() returned.
+public interface Bank {
+    static Bank create() {
+        try {
+            return (Bank) Class.forName("BenchmarkBank").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Cannot create BenchmarkBank", ex);
+        }
+    }
+
+    // Creates and registers an account holding balance paise
+    int open(boolean savings, long balance);
+
+    // The same under a given account number, as recovery rebuilds accounts; the number may be
+    // outside the eight digits the allocator hands out
+    int open(boolean savings, long accountNumber, long balance);
+
+    long accountNumber(int handle);
+
+    long balance(int handle);
+
+    void deposit(int handle, long amount);
+
+    void withdraw(int handle, long amount);
+
+    // Deposit and withdrawal the way CommandEngine and the HTTP API make them, with no console
+    // message; false when refused by the balance floor or RiskScorer
+    boolean credit(int handle, long amount);
+
+    boolean debit(int handle, long amount);
+
+    // FundTransfer between two accounts; false unless it completed
+    boolean transfer(int from, int to, long amount);
+
+    // FundTransfer.transferBatch by account number; returns how many transfers completed
+    int transferBatch(long[] from, long[] to, long[] amounts);
+
+    // Recovers the accounts a previous run journaled to dir, then journals every later change
+    // there under the named Journal.FsyncPolicy, with bank.fsync.windowMillis as the window. Returns how many accounts were recovered.
+    int persist(String dir, String fsyncPolicy);
+
+    // Keeps each transfer into the account waiting for micros once both legs are journaled but
+    // before the transfer's group ends, as if the thread had been descheduled there
+    void stallTransfers(int handle, long micros);
+
+    // Handle of an account this bank holds, recovered ones included; -1 if there is none
+    int handle(long accountNumber);
+
+    // Sets the balance back to balance first, so repeated calls measure the same work
+    void applySimpleInterest(int handle, int years, long balance);
+
+    void showLastNTransactions(int handle, int n);
+
+    // AccountRegistry lookup, and the list scan it replaced
+    boolean find(long accountNumber);
+
+    boolean findByScan(long accountNumber);
+
+    // Appends to a standalone TransactionLog that keeps its most recent retained entries
+    void append(long amount, String description);
+
+    // Opens an account through CommandEngine, as onboarding does, and returns its number
+    long createAccount(String password, String pin);
+
+    // CommandEngine.authenticate with no source; returns the status name (OK, AUTH_FAILED, LOCKED...)
+    String authenticate(long accountNumber, String password, String pin);
+
+    // Replaces the query history, a standalone TransactionLog, with entries one second apart:
+    // every withdrawEvery-th a WITHDRAW, the rest DEPOSITs, amounts cycling from 1 to 1000 rupees.
+    // Returns the first entry's timestamp.
+    long fillHistory(int entries, int withdrawEvery);
+
+    // Entries of the query history with fromNanos <= timestamp < toNanos, of the type (a
+    // TransactionType name, null for any) and at least minAmount: through its indexes, and by
+    // looking at every entry
+    int findHistory(String type, long fromNanos, long toNanos, long minAmount);
+
+    int scanHistory(String type, long fromNanos, long toNanos, long minAmount);
+
+    // A standalone SecurityEventIndex, and its time range query
+    void recordSecurityEvent(long accountNumber, String type, long timestampNanos);
+
+    int findSecurityEvents(String type, long fromNanos, long toNanos);
+
+    boolean isValidPin(String pin, String dob);
+
+    boolean isValidPassword(String password);
+
+    boolean isValidDob(String dob);
+
+    // The regex and formatter based checks Validation replaced
+    boolean legacyIsValidPin(String pin, String dob);
+
+    boolean legacyIsValidPassword(String password);
+
+    boolean legacyIsValidDob(String dob);
+
+    String formatMoney(long paise);
+
+    long parseMoney(String text);
+
+    // The message a deposit prints once amount has been added and the balance is balance
+    String depositMessage(long amount, long balance);
+
+    // The double rupees and String.format handling Money replaced
+    String legacyFormatMoney(double rupees);
+
+    double legacyParseMoney(String text);
+
+    String legacyDepositMessage(double amount, double balance);
+}
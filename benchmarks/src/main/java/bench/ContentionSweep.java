@@ -0,0 +1,56 @@
+package bench;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Throughput of AccountBenchmark's contended benchmarks (one hot account, and SPREAD shared
+// accounts) at each thread count, printed as one table. @Threads(4) on the benchmarks is the
+// default for a plain run; the count given here overrides it.
+//
+//   java -cp benchmarks/target/benchmarks.jar bench.ContentionSweep [threads,...]
+//   default:                                                        1,2,4,8,16,32,64
+public final class ContentionSweep {
+    private static final String[] BENCHMARKS = {"contendedDeposit", "contendedWithdraw", "spreadDeposit"};
+
+    private ContentionSweep() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String[] counts = (args.length > 0 ? args[0] : "1,2,4,8,16,32,64").split(",");
+        StringBuilder table = new StringBuilder(String.format("%8s", "threads"));
+        for (String benchmark : BENCHMARKS) {
+            table.append(String.format(" %20s", benchmark));
+        }
+        table.append(String.format("%n%8s", ""));
+        for (int i = 0; i < BENCHMARKS.length; i++) {
+            table.append(String.format(" %20s", "ops/us"));
+        }
+        table.append(System.lineSeparator());
+        for (String count : counts) {
+            int threads = Integer.parseInt(count.trim());
+            Collection<RunResult> results = new Runner(new OptionsBuilder()
+                    .include(AccountBenchmark.class.getName() + "\\.(" + String.join("|", BENCHMARKS) + ")$")
+                    .mode(Mode.Throughput)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .threads(threads)
+                    .build()).run();
+            table.append(String.format("%8d", threads));
+            for (String benchmark : BENCHMARKS) {
+                double score = Double.NaN;
+                for (RunResult result : results) {
+                    if (result.getParams().getBenchmark().endsWith("." + benchmark)) {
+                        score = result.getPrimaryResult().getScore();
+                    }
+                }
+                table.append(String.format(" %20.3f", score));
+            }
+            table.append(System.lineSeparator());
+        }
+        System.out.print(table);
+    }
+}
@@ -0,0 +1,154 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+// Checks that a transfer reported as completed survives a crash. A child JVM journals to a fresh
+// directory and has each thread transfer between its own two accounts, printing each transfer as
+// soon as FundTransfer returns COMPLETED, then halts itself mid-run without closing anything.
+// Every other thread is stalled after the second leg of each transfer, so its group holds journal
+// sequence numbers while the other threads' transfers are written and fsynced. A second child
+// recovers the directory and prints the balances. Every reported transfer must have been
+// recovered (a thread may have one more that made it to disk before the halt), and each pair must
+// still hold its opening money, so no transfer came back half applied. Exits with status 1 on any
+// difference. A halt loses what was still in the process, not what the OS was told to write, so
+// the policy must make operations wait for their write: EVERY_WRITE or GROUP_COMMIT.
+//
+//   java -cp benchmarks/target/benchmarks.jar bench.CrashCheck [policy]     [threads] [rounds] [stall micros]
+//   defaults:                                                  GROUP_COMMIT 8         10       2000
+public final class CrashCheck {
+    private static final long FIRST = 500_000_000L; // thread t moves from account FIRST + 2t to FIRST + 2t + 1
+    private static final long OPENING = 1_000_000_000L;
+
+    private CrashCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("run")) {
+            run(Paths.get(args[1]), args[2], Integer.parseInt(args[3]), Long.parseLong(args[4]), Long.parseLong(args[5]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("recover")) {
+            recover(Paths.get(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        String policy = args.length > 0 ? args[0] : "GROUP_COMMIT";
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        long stallMicros = args.length > 3 ? Long.parseLong(args[3]) : 2000;
+        SplittableRandom random = new SplittableRandom(42);
+        boolean failed = false;
+        for (int round = 1; round <= rounds; round++) {
+            Path dir = Files.createTempDirectory("crash-check");
+            try {
+                long[] reported = new long[threads];
+                List<String> lines = child("run", dir.toString(), policy, String.valueOf(threads),
+                        String.valueOf(200 + random.nextInt(600)), String.valueOf(stallMicros));
+                for (String line : lines) {
+                    String[] parts = line.split(" ");
+                    if (parts.length != 2) continue; // cut short by the halt
+                    int t = Integer.parseInt(parts[0]);
+                    reported[t] = Math.max(reported[t], Long.parseLong(parts[1]));
+                }
+                long[] balances = new long[threads * 2]; // source and destination of each thread
+                for (String line : child("recover", dir.toString(), String.valueOf(threads))) {
+                    String[] parts = line.split(" ");
+                    balances[Integer.parseInt(parts[0])] = Long.parseLong(parts[1]);
+                }
+                long recoveredTotal = 0;
+                long reportedTotal = 0;
+                StringBuilder problems = new StringBuilder();
+                for (int t = 0; t < threads; t++) {
+                    long recovered = OPENING - balances[2 * t];
+                    recoveredTotal += recovered;
+                    reportedTotal += reported[t];
+                    if (recovered < reported[t] || recovered > reported[t] + 1) {
+                        problems.append(String.format("  thread %d: reported %d, recovered %d%n", t, reported[t], recovered));
+                    }
+                    if (balances[2 * t + 1] != OPENING + recovered) {
+                        problems.append(String.format("  thread %d: %d left the source, %d reached the destination%n",
+                                t, recovered, balances[2 * t + 1] - OPENING));
+                    }
+                }
+                System.out.printf("round %d: %d transfers reported, %d recovered%s%n", round, reportedTotal,
+                        recoveredTotal, problems.length() == 0 ? "" : "  LOST");
+                System.out.print(problems);
+                if (problems.length() > 0) failed = true;
+            } finally {
+                try (Stream<Path> files = Files.walk(dir)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+                }
+            }
+        }
+        if (failed) System.exit(1);
+    }
+
+    // Runs this class in a new JVM with the given arguments and returns what it printed
+    private static List<String> child(String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Dbank.risk.enabled=false");
+        command.add("-Dbank.fsync.windowMillis=" + Long.getLong("bank.fsync.windowMillis", 0L));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CrashCheck.class.getName());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        process.waitFor();
+        return lines;
+    }
+
+    private static void run(Path dir, String policy, int threads, long millis, long stallMicros)
+            throws InterruptedException {
+        PrintStream out = System.out; // BenchmarkBank discards System.out
+        Bank bank = Bank.create();
+        bank.persist(dir.toString(), policy);
+        for (int t = 0; t < threads; t++) {
+            int source = bank.open(false, FIRST + 2 * t, OPENING);
+            int destination = bank.open(false, FIRST + 2 * t + 1, OPENING);
+            if (t % 2 == 0 && stallMicros > 0) bank.stallTransfers(destination, stallMicros);
+            int id = t;
+            Thread worker = new Thread(() -> {
+                for (long n = 1; ; n++) {
+                    if (!bank.transfer(source, destination, 1)) throw new IllegalStateException("Transfer refused");
+                    out.println(id + " " + n);
+                }
+            }, "transfer-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Thread.sleep(millis);
+        out.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static void recover(Path dir, int threads) {
+        PrintStream out = System.out;
+        Bank bank = Bank.create();
+        bank.persist(dir.toString(), "GROUP_COMMIT");
+        for (int i = 0; i < threads * 2; i++) {
+            out.println(i + " " + bank.balance(bank.handle(FIRST + i)));
+        }
+        out.flush();
+    }
+}
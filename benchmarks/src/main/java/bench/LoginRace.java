@@ -0,0 +1,74 @@
+package bench;
+
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Concurrent password guessing against LoginGuard: in each round a fresh account gets one wrong
+// login from every thread at once. A login that comes back AUTH_FAILED had its password verified;
+// one refused by the guard did not. Within the guard's window no more than maxFailures guesses may
+// be verified however many arrive together, so every round must stay within it. Exits with status 1
+// otherwise.
+//
+//   java -cp benchmarks/target/benchmarks.jar bench.LoginRace [threads] [rounds]
+//   defaults:                                                  32        20
+public final class LoginRace {
+    private static final String PASSWORD = "Secure@123";
+    private static final String PIN = "4821";
+
+    private LoginRace() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int maxFailures = Integer.getInteger("bank.login.maxFailures", 3);
+        PrintStream out = System.out; // BenchmarkBank discards System.out
+        Bank bank = Bank.create();
+        boolean failed = false;
+        int mostVerified = 0;
+        for (int round = 1; round <= rounds; round++) {
+            long account = bank.createAccount(PASSWORD, PIN);
+            AtomicInteger verified = new AtomicInteger();
+            AtomicInteger refused = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] guessers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                String guess = "Guess@" + (1000 + t);
+                guessers[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    String status = bank.authenticate(account, guess, PIN);
+                    if (status.equals("AUTH_FAILED")) {
+                        verified.incrementAndGet();
+                    } else if (status.equals("LOCKED")) {
+                        refused.incrementAndGet();
+                    } else {
+                        throw new IllegalStateException("Unexpected login result " + status);
+                    }
+                }, "guess-" + t);
+                guessers[t].start();
+            }
+            start.countDown();
+            for (Thread guesser : guessers) {
+                guesser.join();
+            }
+            mostVerified = Math.max(mostVerified, verified.get());
+            if (verified.get() > maxFailures) {
+                out.printf("round %d: %d of %d guesses verified, more than %d%n", round, verified.get(), threads,
+                        maxFailures);
+                failed = true;
+            }
+            if (verified.get() + refused.get() != threads) {
+                out.printf("round %d: %d guesses did not finish%n", round, threads - verified.get() - refused.get());
+                failed = true;
+            }
+        }
+        out.printf("%d rounds of %d concurrent guesses: at most %d verified per round (limit %d)%n", rounds, threads,
+                mostVerified, maxFailures);
+        if (failed) System.exit(1);
+    }
+}
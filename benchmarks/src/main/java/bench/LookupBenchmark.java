@@ -0,0 +1,71 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Finding an account by number in the registry, for numbers that exist and numbers that do not,
+// and the same search done as the list scan the registry replaced. The allocator has only 9,000,000
+// eight-digit numbers, so accounts are opened under nine-digit numbers given here, as recovery
+// opens them. Ten million accounts need a few gigabytes of heap, hence -Xmx.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class LookupBenchmark {
+    static final int PROBES = 1024;
+    static final long FIRST = 100_000_000L;
+
+    @Param({"10000", "1000000", "10000000"})
+    int accounts;
+
+    Bank bank;
+    long[] present = new long[PROBES];
+    long[] absent = new long[PROBES];
+    int next;
+
+    @Setup
+    public void setUp() {
+        bank = Bank.create();
+        long[] numbers = new long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            numbers[i] = FIRST + 7L * i;
+            bank.open(i % 2 == 0, numbers[i], 0);
+        }
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < PROBES; i++) {
+            present[i] = numbers[random.nextInt(accounts)];
+            long number;
+            do {
+                number = FIRST + random.nextInt(7 * accounts);
+            } while (bank.find(number));
+            absent[i] = number;
+        }
+    }
+
+    @Benchmark
+    public boolean find() {
+        return bank.find(present[next++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean findMissing() {
+        return bank.find(absent[next++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean findByScan() {
+        return bank.findByScan(present[next++ & (PROBES - 1)]);
+    }
+}
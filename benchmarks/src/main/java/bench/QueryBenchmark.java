@@ -0,0 +1,102 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// History queries on one account holding ENTRIES entries one second apart (every 100th a
+// withdrawal), through TransactionLog's time and type indexes and, for comparison, by looking at
+// every entry; and "failed logins in a window" over a SecurityEventIndex holding EVENTS login
+// events, one in ten failed. Windows start at a random point of the history on every call.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+    static final long SECOND = 1_000_000_000L;
+    static final long HOUR = 3600 * SECOND;
+    static final long DAY = 24 * HOUR;
+    static final int WITHDRAW_EVERY = 100;
+    static final int EVENTS = 1_000_000;
+    static final int STARTS = 1024; // window starts drawn up front
+
+    @Param({"2000000"})
+    int entries;
+
+    Bank bank;
+    long first;
+    long[] starts = new long[STARTS];
+    int next;
+
+    @Setup
+    public void setUp() {
+        bank = Bank.create();
+        first = bank.fillHistory(entries, WITHDRAW_EVERY);
+        for (int i = 0; i < EVENTS; i++) {
+            bank.recordSecurityEvent(10_000_000L + i % 10_000, i % 10 == 0 ? "LOGIN_FAILED" : "LOGIN_SUCCESS",
+                    first + i * SECOND);
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        long span = Math.min(entries, EVENTS) * SECOND - DAY;
+        for (int i = 0; i < STARTS; i++) {
+            starts[i] = first + random.nextLong(span);
+        }
+    }
+
+    private long start() {
+        return starts[next++ & (STARTS - 1)];
+    }
+
+    @Benchmark
+    public int withdrawalsInHour() {
+        long from = start();
+        return bank.findHistory("WITHDRAW", from, from + HOUR, Long.MIN_VALUE);
+    }
+
+    @Benchmark
+    public int withdrawalsInHourScan() {
+        long from = start();
+        return bank.scanHistory("WITHDRAW", from, from + HOUR, Long.MIN_VALUE);
+    }
+
+    @Benchmark
+    public int anyInHour() {
+        long from = start();
+        return bank.findHistory(null, from, from + HOUR, Long.MIN_VALUE);
+    }
+
+    // "all withdrawals over ₹500 between two dates"
+    @Benchmark
+    public int largeWithdrawalsInDay() {
+        long from = start();
+        return bank.findHistory("WITHDRAW", from, from + DAY, 500_00L);
+    }
+
+    @Benchmark
+    public int allWithdrawals() {
+        return bank.findHistory("WITHDRAW", Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE);
+    }
+
+    @Benchmark
+    public int failedLoginsInHour() {
+        long from = start();
+        return bank.findSecurityEvents("LOGIN_FAILED", from, from + HOUR);
+    }
+
+    @Benchmark
+    public void recordSecurityEvent() {
+        bank.recordSecurityEvent(10_000_000L + (next & 8191), "LOGIN_FAILED", first + (long) next++ * SECOND);
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Deposits and withdrawals as CommandEngine makes them, with RiskScorer off (Unscored), on with
+// every rule evaluated (Scored: the velocity limits are raised so no call is declined), and on with
+// every call declined by the velocity rule (Declined). Latency and throughput of each.
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RiskBenchmark {
+    static final String OFF = "-Dbank.risk.enabled=false";
+    static final String NO_VELOCITY_LIMIT = "-Dbank.risk.maxDebits=1000000000000";
+    static final String NO_AMOUNT_LIMIT = "-Dbank.risk.maxDebitRupees=1000000000000";
+    // a spread of amounts around ₹1000, so the amount rule tracks a realistic distribution
+    static final long[] AMOUNTS = {100_000, 85_000, 120_000, 99_900, 150_000, 70_000, 110_000, 95_000};
+
+    Bank bank;
+    int savings;
+    int current;
+    int next;
+
+    @Setup
+    public void setUp() {
+        bank = Bank.create();
+        savings = bank.open(true, AccountBenchmark.OPENING);
+        current = bank.open(false, AccountBenchmark.OPENING);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = OFF)
+    public boolean depositUnscored() {
+        return bank.credit(savings, AMOUNTS[next++ & 7]);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {NO_VELOCITY_LIMIT, NO_AMOUNT_LIMIT})
+    public boolean depositScored() {
+        return bank.credit(savings, AMOUNTS[next++ & 7]);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = OFF)
+    public boolean withdrawUnscored() {
+        return bank.debit(current, AMOUNTS[next++ & 7]);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {NO_VELOCITY_LIMIT, NO_AMOUNT_LIMIT})
+    public boolean withdrawScored() {
+        return bank.debit(current, AMOUNTS[next++ & 7]);
+    }
+
+    @Benchmark
+    public boolean withdrawDeclined() {
+        return bank.debit(current, AMOUNTS[next++ & 7]);
+    }
+}
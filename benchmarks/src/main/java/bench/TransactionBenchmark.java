@@ -0,0 +1,95 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Appending to a transaction log, rendering the last few entries the way the menu shows them, and
+// the Money formatting and parsing both rely on, next to the double and String.format versions
+// Money replaced. depositMessage adds to a running balance and builds the deposit's console line.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionBenchmark {
+    static final String[] AMOUNTS = {"1500", "99.99", "0.5", "123456.78", "250", "7", "1000.05", "42.10"};
+
+    Bank bank;
+    int account;
+    int next;
+    long balance;
+    double legacyBalance;
+
+    @Setup
+    public void setUp() {
+        bank = Bank.create();
+        account = bank.open(true, AccountBenchmark.OPENING);
+        for (int i = 0; i < 1000; i++) {
+            bank.deposit(account, 100 + i);
+        }
+    }
+
+    @Benchmark
+    public void append() {
+        bank.append(12_345, null);
+    }
+
+    @Benchmark
+    public void appendWithDescription() {
+        bank.append(12_345, "salary");
+    }
+
+    @Benchmark
+    public void showLast5() {
+        bank.showLastNTransactions(account, 5);
+    }
+
+    @Benchmark
+    public void showLast50() {
+        bank.showLastNTransactions(account, 50);
+    }
+
+    @Benchmark
+    public String formatMoney() {
+        return bank.formatMoney(1_234_567L + next++);
+    }
+
+    @Benchmark
+    public String formatMoneyLegacy() {
+        return bank.legacyFormatMoney((1_234_567L + next++) / 100.0);
+    }
+
+    @Benchmark
+    public long parseMoney() {
+        return bank.parseMoney(AMOUNTS[next++ & 7]);
+    }
+
+    @Benchmark
+    public double parseMoneyLegacy() {
+        return bank.legacyParseMoney(AMOUNTS[next++ & 7]);
+    }
+
+    @Benchmark
+    public String depositMessage() {
+        long amount = 12_345 + (next++ & 7);
+        balance += amount;
+        return bank.depositMessage(amount, balance);
+    }
+
+    @Benchmark
+    public String depositMessageLegacy() {
+        double amount = (12_345 + (next++ & 7)) / 100.0;
+        legacyBalance += amount;
+        return bank.legacyDepositMessage(amount, legacyBalance);
+    }
+}
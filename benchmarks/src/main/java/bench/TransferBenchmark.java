@@ -0,0 +1,123 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// FundTransfer under hot-account skew: both ends of each transfer are drawn from a Zipfian
+// distribution over ACCOUNTS accounts, so with skew 0 every account is equally likely and at 1.2
+// the hottest one takes part in about two transfers in five. transfer makes single transfers;
+// transferBatch applies BATCH of them per call, locking each distinct account once, and is scored
+// per transfer. No journal is attached, so this is the locking cost alone. Run with -t to change
+// the thread count, e.g. -t 1 against -t 16 to see whether throughput holds up as contention grows.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = RiskBenchmark.OFF)
+public class TransferBenchmark {
+    static final int ACCOUNTS = 1024;
+    static final int BATCH = 64;
+    static final int PICKS = 1 << 16; // pre-drawn account indexes, so drawing is not measured
+    static final long AMOUNT = 12_345;
+
+    @State(Scope.Benchmark)
+    public static class Accounts {
+        @Param({"0", "0.99", "1.2"})
+        double skew;
+
+        Bank bank;
+        int[] handles = new int[ACCOUNTS];
+        long[] numbers = new long[ACCOUNTS];
+        int[] picks = new int[PICKS];
+
+        @Setup
+        public void setUp() {
+            bank = Bank.create();
+            for (int i = 0; i < ACCOUNTS; i++) {
+                // current accounts, so a run of transfers out of one account does not hit a minimum balance
+                handles[i] = bank.open(false, AccountBenchmark.OPENING);
+                numbers[i] = bank.accountNumber(handles[i]);
+            }
+            // cumulative weights of ranks 1..ACCOUNTS, weight 1 / rank^skew
+            double[] cumulative = new double[ACCOUNTS];
+            double total = 0;
+            for (int i = 0; i < ACCOUNTS; i++) {
+                total += 1 / Math.pow(i + 1, skew);
+                cumulative[i] = total;
+            }
+            SplittableRandom random = new SplittableRandom(42);
+            for (int p = 0; p < PICKS; p++) {
+                double u = random.nextDouble() * total;
+                int lo = 0;
+                int hi = ACCOUNTS - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (cumulative[mid] < u) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                picks[p] = lo;
+            }
+        }
+    }
+
+    // Where a thread is in Accounts.picks, and its batch arrays
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = (int) Thread.currentThread().getId() * 7919;
+        long[] from = new long[BATCH];
+        long[] to = new long[BATCH];
+        long[] amounts = new long[BATCH];
+
+        @Setup
+        public void setUp() {
+            Arrays.fill(amounts, AMOUNT);
+        }
+
+        int source(Accounts a) {
+            return a.picks[next++ & (PICKS - 1)];
+        }
+
+        // Destination for a transfer out of source: the next draw, or the account after source
+        // if the draw is source itself
+        int destination(Accounts a, int source) {
+            int destination = a.picks[next++ & (PICKS - 1)];
+            return destination != source ? destination : (source + 1) % ACCOUNTS;
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean transfer(Accounts a, Cursor c) {
+        int source = c.source(a);
+        return a.bank.transfer(a.handles[source], a.handles[c.destination(a, source)], AMOUNT);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BATCH)
+    public int transferBatch(Accounts a, Cursor c) {
+        for (int i = 0; i < BATCH; i++) {
+            int source = c.source(a);
+            c.from[i] = a.numbers[source];
+            c.to[i] = a.numbers[c.destination(a, source)];
+        }
+        return a.bank.transferBatch(c.from, c.to, c.amounts);
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// PIN, password and date-of-birth checks against the regex and per-call formatter versions they
+// replaced. Each call takes the next of eight inputs, valid and invalid mixed; that both give the
+// same answers on a much wider range of inputs is ValidationEquivalence's job.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidationBenchmark {
+    static final String DOB = "15/08/1985";
+    static final String[] PINS = {"4821", "1508", "0815", "1985", "12a4", "482", "7301", "48210"};
+    static final String[] PASSWORDS = {"Secure@123", "password", "Sh0rt!", "NoDigits!!", "Valid#Pass9",
+            "ALLUPPER1!", "längeres#Pass1", "Another$Good7"};
+    static final String[] DOBS = {"15/08/1985", "31/02/2000", "01/13/1990", "1990-01-01", "29/02/2024",
+            "01/01/1899", "07/11/2011", "15/08/2999"};
+
+    Bank bank;
+    int next;
+
+    @Setup
+    public void setUp() {
+        bank = Bank.create();
+    }
+
+    @Benchmark
+    public boolean pin() {
+        return bank.isValidPin(PINS[next++ & 7], DOB);
+    }
+
+    @Benchmark
+    public boolean pinLegacy() {
+        return bank.legacyIsValidPin(PINS[next++ & 7], DOB);
+    }
+
+    @Benchmark
+    public boolean password() {
+        return bank.isValidPassword(PASSWORDS[next++ & 7]);
+    }
+
+    @Benchmark
+    public boolean passwordLegacy() {
+        return bank.legacyIsValidPassword(PASSWORDS[next++ & 7]);
+    }
+
+    @Benchmark
+    public boolean dob() {
+        return bank.isValidDob(DOBS[next++ & 7]);
+    }
+
+    @Benchmark
+    public boolean dobLegacy() {
+        return bank.legacyIsValidDob(DOBS[next++ & 7]);
+    }
+}
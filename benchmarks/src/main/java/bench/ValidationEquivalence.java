@@ -0,0 +1,160 @@
+package bench;
+
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+
+// Randomized check that Validation accepts exactly what the regex and formatter based checks it
+// replaced (LegacyValidation) accepted. Inputs are mostly near misses of valid ones: dates with
+// out-of-range, leap-day and future parts, wrong separators and lengths; PINs made from the DOB's
+// day, month and year; passwords missing one character class; all with the odd non-ASCII digit,
+// letter or space mixed in. Prints the first differences and exits with status 1 if there are any.
+//
+//   java -cp benchmarks/target/benchmarks.jar bench.ValidationEquivalence [inputs]  [seed]
+//   defaults:                                                             1000000   1
+public final class ValidationEquivalence {
+    // Arabic-Indic and fullwidth digits, letters that are not ASCII, a title-case letter and spaces
+    private static final String ODD = "٣７éÉΩǅ  \t";
+    private static final String SPECIAL = "!@#$%^&*()-_=+[]{};:'\",.<>/?\\|`~";
+    private static final int SHOWN = 20;
+
+    private final SplittableRandom random;
+    private final Bank bank = Bank.create();
+    private final PrintStream out;
+    private int differences;
+
+    private ValidationEquivalence(long seed, PrintStream out) {
+        this.random = new SplittableRandom(seed);
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        int inputs = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        PrintStream out = System.out; // BenchmarkBank discards System.out
+        ValidationEquivalence check = new ValidationEquivalence(seed, out);
+        int validDobs = 0;
+        int validPins = 0;
+        int validPasswords = 0;
+        for (int i = 0; i < inputs; i++) {
+            String dob = check.dob();
+            String pin = check.pin(dob);
+            String password = check.password();
+            boolean dobOk = check.bank.isValidDob(dob);
+            boolean pinOk = check.bank.isValidPin(pin, dob);
+            boolean passwordOk = check.bank.isValidPassword(password);
+            check.compare("dob", dob, dobOk, check.bank.legacyIsValidDob(dob));
+            check.compare("pin", pin + " with dob " + dob, pinOk, check.bank.legacyIsValidPin(pin, dob));
+            check.compare("password", password, passwordOk, check.bank.legacyIsValidPassword(password));
+            if (dobOk) validDobs++;
+            if (pinOk) validPins++;
+            if (passwordOk) validPasswords++;
+        }
+        out.printf("%d inputs of each kind; accepted %d DOBs, %d PINs, %d passwords; %d differences%n",
+                inputs, validDobs, validPins, validPasswords, check.differences);
+        if (check.differences > 0) System.exit(1);
+    }
+
+    private void compare(String kind, String input, boolean now, boolean legacy) {
+        if (now == legacy) return;
+        if (differences++ < SHOWN) {
+            out.printf("%s \"%s\": Validation %b, legacy %b%n", kind, input, now, legacy);
+        }
+    }
+
+    private String dob() {
+        if (random.nextInt(20) == 0) return random.nextInt(4) == 0 ? null : noise(random.nextInt(12));
+        int day = random.nextInt(10) == 0 ? random.nextInt(100) : 1 + random.nextInt(31);
+        int month = random.nextInt(10) == 0 ? random.nextInt(100) : 1 + random.nextInt(12);
+        int year = random.nextInt(10) == 0 ? random.nextInt(10_000) : 1890 + random.nextInt(150);
+        if (random.nextInt(8) == 0) {
+            day = 29;
+            month = 2;
+        }
+        return mangle(String.format("%02d/%02d/%04d", day, month, year));
+    }
+
+    // Mostly 4 digits, often the DOB's DDMM, MMDD or YYYY
+    private String pin(String dob) {
+        String pin;
+        if (dob != null && dob.length() >= 10 && random.nextInt(3) == 0) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    pin = dob.substring(0, 2) + dob.substring(3, 5);
+                    break;
+                case 1:
+                    pin = dob.substring(3, 5) + dob.substring(0, 2);
+                    break;
+                default:
+                    pin = dob.substring(6, 10);
+                    break;
+            }
+        } else {
+            pin = String.format("%04d", random.nextInt(10_000));
+        }
+        return random.nextInt(30) == 0 ? null : mangle(pin);
+    }
+
+    // Characters from each class, each class sometimes left out
+    private String password() {
+        if (random.nextInt(30) == 0) return null;
+        int length = random.nextInt(14);
+        StringBuilder sb = new StringBuilder(length);
+        boolean upper = random.nextInt(6) != 0;
+        boolean lower = random.nextInt(6) != 0;
+        boolean digit = random.nextInt(6) != 0;
+        boolean special = random.nextInt(6) != 0;
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    if (upper) sb.append((char) ('A' + random.nextInt(26)));
+                    break;
+                case 1:
+                    if (lower) sb.append((char) ('a' + random.nextInt(26)));
+                    break;
+                case 2:
+                    if (digit) sb.append((char) ('0' + random.nextInt(10)));
+                    break;
+                case 3:
+                    if (special) sb.append(SPECIAL.charAt(random.nextInt(SPECIAL.length())));
+                    break;
+                default:
+                    if (random.nextInt(4) == 0) sb.append(ODD.charAt(random.nextInt(ODD.length())));
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    // Usually unchanged; otherwise one character replaced, inserted or dropped
+    private String mangle(String s) {
+        if (s.isEmpty() || random.nextInt(4) != 0) return s;
+        int at = random.nextInt(s.length());
+        char c = oddChar();
+        switch (random.nextInt(3)) {
+            case 0:
+                return s.substring(0, at) + c + s.substring(at + 1);
+            case 1:
+                return s.substring(0, at) + c + s.substring(at);
+            default:
+                return s.substring(0, at) + s.substring(at + 1);
+        }
+    }
+
+    private String noise(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(oddChar());
+        }
+        return sb.toString();
+    }
+
+    // A digit, '/', '-', '+' or one of ODD
+    private char oddChar() {
+        int pick = random.nextInt(14);
+        if (pick < 10) return (char) ('0' + pick);
+        if (pick == 10) return '/';
+        if (pick == 11) return '-';
+        if (pick == 12) return '+';
+        return ODD.charAt(random.nextInt(ODD.length()));
+    }
+}